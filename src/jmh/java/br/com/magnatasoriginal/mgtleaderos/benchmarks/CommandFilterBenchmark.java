@@ -0,0 +1,93 @@
+package br.com.magnatasoriginal.mgtleaderos.benchmarks;
+
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.CommandPolicy;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.LeaderOSSocketClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtro de comandos aplicado em LeaderOSSocketClient.executeCommands
+ * Mistura comandos liberados, bloqueados e com prefixo de namespace
+ * - legacy: caminho antigo (Arrays.asList por chamada, split, substring, toLowerCase)
+ * - policy: CommandPolicy compilada, com a mesma blacklist
+ * - classify: só a decisão da política, sem montar a lista de saída
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandFilterBenchmark {
+    private static final String[] SAMPLES = {
+        "give {player} minecraft:diamond 64",
+        "/lp user {player} parent add vip",
+        "minecraft:give {player} minecraft:emerald 16",
+        "eco give {player} 1000",
+        "op {player}",
+        "/bukkit:ban {player}",
+        "say Obrigado pela compra, {player}!",
+        "minecraft:stop"
+    };
+
+    @Param({"1000", "100000"})
+    public int batchSize;
+
+    private List<String> batch;
+    private CommandPolicy policy;
+
+    @Setup
+    public void setup() {
+        policy = CommandPolicy.compile(CommandPolicy.Mode.DENYLIST, CommandPolicy.DEFAULT_DENYLIST);
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(SAMPLES[i % SAMPLES.length].replace("{player}", "Player" + (i % 100)));
+        }
+    }
+
+    @Benchmark
+    public List<String> legacy() {
+        List<String> validated = new ArrayList<>();
+        List<String> blacklist = Arrays.asList("op", "deop", "stop", "restart", "reload", "ban");
+        for (String command : batch) {
+            if (command.startsWith("/")) {
+                command = command.substring(1);
+            }
+            String root = command.split(" ")[0];
+            if (root.startsWith("bukkit:")) {
+                root = root.substring(7);
+            }
+            if (root.startsWith("minecraft:")) {
+                root = root.substring(10);
+            }
+            if (!blacklist.contains(root.toLowerCase())) {
+                validated.add(command);
+            }
+        }
+        return validated;
+    }
+
+    @Benchmark
+    public List<String> policy() {
+        return LeaderOSSocketClient.filterCommands(policy, batch);
+    }
+
+    @Benchmark
+    public int classify() {
+        int allowed = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (policy.isAllowed(batch.get(i))) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,98 @@
+package br.com.magnatasoriginal.mgtleaderos.benchmarks;
+
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.CommandsQueue;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.PendingCommandsIndex;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.QueueSnapshotStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Operações da fila de comandos offline: adição, leitura, retirada e gravação do snapshot
+ * Usa uma pasta temporária; o journal e o fsync em grupo rodam de verdade
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommandsQueueBenchmark {
+
+    @Param({"100", "10000"})
+    public int players;
+
+    private File folder;
+    private CommandsQueue queue;
+    private QueueSnapshotStore snapshotStore;
+    private List<PendingCommandsIndex.Entry> snapshotEntries;
+    private final List<String> commands = List.of("give {player} minecraft:diamond 1", "say obrigado {player}");
+    private long generation = 0;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("mgtleaderos-bench").toFile();
+        queue = new CommandsQueue(folder.getAbsolutePath());
+        for (int i = 0; i < players; i++) {
+            queue.addCommands("Player" + i, commands);
+        }
+
+        PendingCommandsIndex index = new PendingCommandsIndex();
+        for (int i = 0; i < players; i++) {
+            index.add("Player" + i, null, commands);
+        }
+        snapshotEntries = index.entries();
+        snapshotStore = new QueueSnapshotStore(new File(folder, "snapshots"), "bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        queue.shutdown();
+        queue.getExecutor().awaitTermination(10, TimeUnit.SECONDS);
+        try (Stream<Path> files = Files.walk(folder.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private String nextPlayer() {
+        next = next + 1 == players ? 0 : next + 1;
+        return "Player" + next;
+    }
+
+    @Benchmark
+    public List<String> get() {
+        return queue.getCommands(nextPlayer());
+    }
+
+    @Benchmark
+    public List<String> addThenDrain() {
+        String player = nextPlayer();
+        queue.addCommands(player, commands);
+        List<String> drained = queue.drain(player);
+        queue.addCommands(player, commands);
+        return drained;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void saveSnapshot() throws IOException {
+        long current = ++generation;
+        snapshotStore.write(current, snapshotEntries);
+        snapshotStore.prune(current);
+    }
+}
@@ -0,0 +1,71 @@
+package br.com.magnatasoriginal.mgtleaderos.benchmarks;
+
+import br.com.magnatasoriginal.mgtleaderos.delivery.ComponentPatchCompiler;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.component.DataComponentPatch;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Componentes de item da loja: compilar o texto em DataComponentPatch (parse + codec)
+ * contra aplicar um patch já compilado numa cópia do item
+ * - compile: o que toda entrega pagaria sem cache
+ * - apply: o que cada entrega paga com o patch em cache (cópia do item + merge)
+ *
+ * Só usa componentes sem registros dinâmicos (nome, lore, custom model data), que
+ * funcionam com os registros embutidos após o Bootstrap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ComponentPatchBenchmark {
+
+    @Param({"command", "snbt"})
+    public String format;
+
+    private HolderLookup.Provider registries;
+    private ComponentPatchCompiler compiler;
+    private String components;
+    private DataComponentPatch patch;
+    private ItemStack base;
+
+    @Setup
+    public void setup() throws Exception {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        registries = RegistryAccess.fromRegistryOfRegistries(BuiltInRegistries.REGISTRY);
+        compiler = new ComponentPatchCompiler(() -> registries);
+
+        components = format.equals("command")
+            ? "[minecraft:custom_name='\"Espada VIP\"',minecraft:lore=['\"Compra na loja\"','\"Obrigado!\"'],minecraft:custom_model_data=1001]"
+            : "{\"minecraft:custom_name\":'\"Espada VIP\"',\"minecraft:lore\":['\"Compra na loja\"','\"Obrigado!\"'],\"minecraft:custom_model_data\":1001}";
+        patch = compiler.decode(registries, components);
+        base = new ItemStack(Items.DIAMOND_SWORD, 1);
+    }
+
+    @Benchmark
+    public DataComponentPatch compile() throws Exception {
+        return compiler.decode(registries, components);
+    }
+
+    @Benchmark
+    public ItemStack apply() {
+        ItemStack stack = base.copy();
+        stack.applyComponents(patch);
+        return stack;
+    }
+}
@@ -0,0 +1,61 @@
+package br.com.magnatasoriginal.mgtleaderos.benchmarks;
+
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryMetrics;
+import br.com.magnatasoriginal.mgtleaderos.metrics.LatencyHistogram;
+import br.com.magnatasoriginal.mgtleaderos.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo das métricas no caminho das entregas
+ * - record: registrar uma latência (o que cada etapa paga), com 1 e 4 threads disputando o mesmo histograma
+ * - counter: incrementar um contador
+ * - export: montar o texto do Prometheus com todas as métricas (uma coleta)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetricsBenchmark {
+
+    private LatencyHistogram histogram;
+
+    @Setup
+    public void setup() {
+        histogram = DeliveryMetrics.Stage.VALIDATE.histogram();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.recordNanos(ThreadLocalRandom.current().nextLong(100_000, 500_000_000));
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.recordNanos(ThreadLocalRandom.current().nextLong(100_000, 500_000_000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.recordNanos(ThreadLocalRandom.current().nextLong(100_000, 500_000_000));
+    }
+
+    @Benchmark
+    public void counter() {
+        DeliveryMetrics.commandExecuted(true);
+    }
+
+    @Benchmark
+    public int export() {
+        StringBuilder out = new StringBuilder(8192);
+        MetricsRegistry.shared().writePrometheus(out);
+        return out.length();
+    }
+}
@@ -0,0 +1,37 @@
+package br.com.magnatasoriginal.mgtleaderos.benchmarks;
+
+import br.com.magnatasoriginal.mgtleaderos.api.model.Purchase;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construção de Purchase a partir de um JsonObject já parseado
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PurchaseBenchmark {
+    private JsonObject data;
+
+    @Setup
+    public void setup() {
+        data = JsonParser.parseString("{\"id\": 4242, \"player_uuid\": \"0f14d0ab-9605-4a62-a9e4-5ed26688389b\","
+            + " \"player_name\": \"Player42\", \"type\": \"item\","
+            + " \"items\": [{\"item\": \"minecraft:diamond\", \"amount\": 64}],"
+            + " \"commands\": [\"give {player} minecraft:emerald 1\", \"say obrigado {player}\"]}").getAsJsonObject();
+    }
+
+    @Benchmark
+    public Purchase fromJsonObject() {
+        return new Purchase(data);
+    }
+}
@@ -0,0 +1,81 @@
+package br.com.magnatasoriginal.mgtleaderos.benchmarks;
+
+import br.com.magnatasoriginal.mgtleaderos.api.PurchaseDecoder;
+import br.com.magnatasoriginal.mgtleaderos.api.model.Purchase;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara a leitura da fila de entregas (/api/server/queue):
+ * - tree: caminho antigo (linhas num StringBuilder, JsonParser.parseString, Purchase(JsonObject))
+ * - streaming: PurchaseDecoder lendo direto do stream com JsonReader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PurchaseDecodeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int purchases;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        StringBuilder json = new StringBuilder("{\n  \"success\": true,\n  \"data\": [\n");
+        for (int i = 1; i <= purchases; i++) {
+            UUID uuid = new UUID(i, i * 31L);
+            json.append("    {\"id\": ").append(i)
+                .append(", \"player_uuid\": \"").append(uuid)
+                .append("\", \"player_name\": \"Player").append(i % 500)
+                .append("\", \"type\": \"item\", \"items\": [{\"item\": \"minecraft:diamond\", \"amount\": ").append(1 + i % 64)
+                .append("}], \"commands\": [\"give {player} minecraft:emerald 1\", \"say obrigado {player}\"]}");
+            json.append(i < purchases ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+        payload = json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<Purchase> tree() throws IOException {
+        StringBuilder response = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                response.append(line.trim());
+            }
+        }
+        JsonArray data = JsonParser.parseString(response.toString()).getAsJsonObject().getAsJsonArray("data");
+        List<Purchase> result = new ArrayList<>(data.size());
+        for (JsonElement element : data) {
+            result.add(new Purchase(element.getAsJsonObject()));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Purchase> streaming() throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8)) {
+            return PurchaseDecoder.readQueue(reader);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package br.com.magnatasoriginal.mgtleaderos.benchmarks;
+
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.PusherFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse dos frames do Pusher com o mesmo PusherFrame usado pelo SocketClient:
+ * JSON do frame, nome do evento e, em send-commands, os IDs de command-log
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PusherFrameBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int commandIds;
+
+    private String sendCommandsFrame;
+    private String pingFrame;
+
+    @Setup
+    public void setup() {
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < commandIds; i++) {
+            ids.append(i == 0 ? "" : ",").append("\\\"").append(100000 + i).append("\\\"");
+        }
+        sendCommandsFrame = "{\"event\":\"send-commands\",\"channel\":\"private-servers.token\",\"data\":\"{\\\"commands\\\":[" + ids + "]}\"}";
+        pingFrame = "{\"event\":\"ping\",\"channel\":\"private-servers.token\",\"data\":\"{}\"}";
+    }
+
+    @Benchmark
+    public List<String> sendCommands() {
+        PusherFrame frame = PusherFrame.parse(sendCommandsFrame);
+        if (!frame.event().equals("send-commands")) {
+            throw new IllegalStateException();
+        }
+        return frame.commandIds();
+    }
+
+    @Benchmark
+    public String ping() {
+        return PusherFrame.parse(pingFrame).event();
+    }
+}
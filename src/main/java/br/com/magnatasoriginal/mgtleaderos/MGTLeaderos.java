@@ -1,23 +1,42 @@
 package br.com.magnatasoriginal.mgtleaderos;
 
+import br.com.magnatasoriginal.mgtleaderos.api.HttpTransport;
 import br.com.magnatasoriginal.mgtleaderos.api.LeaderOSAPIClient;
 import br.com.magnatasoriginal.mgtleaderos.commands.LeaderOSCommands;
 import br.com.magnatasoriginal.mgtleaderos.config.ConfigManager;
+import br.com.magnatasoriginal.mgtleaderos.config.ConfigSnapshot;
+import br.com.magnatasoriginal.mgtleaderos.config.ConfigWatcher;
+import br.com.magnatasoriginal.mgtleaderos.delivery.DeliveryManager;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTraces;
+import br.com.magnatasoriginal.mgtleaderos.metrics.MetricsHttpServer;
+import br.com.magnatasoriginal.mgtleaderos.metrics.MetricsRegistry;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.CommandsQueue;
 import br.com.magnatasoriginal.mgtleaderos.modules.connect.ConnectModule;
+import br.com.magnatasoriginal.mgtleaderos.scheduler.DeliveryScheduler;
 import com.mojang.logging.LogUtils;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
+import net.neoforged.neoforge.event.TagsUpdatedEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
 import net.neoforged.neoforge.event.server.ServerStartedEvent;
 import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import org.slf4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Classe principal do mod MGT LeaderOS
@@ -46,8 +65,19 @@ public class MGTLeaderos {
     private ConfigManager configManager;
     private LeaderOSAPIClient apiClient;
     private ConnectModule connectModule;
+    private DeliveryManager deliveryManager;
+    private DeliveryScheduler deliveryScheduler;
+    private MetricsHttpServer metricsServer;
+    private ConfigWatcher configWatcher;
     private MinecraftServer server;
     private boolean connected = false;
+    // Espera do login antes de retirar os comandos da fila; dura o mod inteiro, e não o
+    // ConnectModule, para a tarefa sobreviver a uma reconexão no meio da espera
+    private final ScheduledExecutorService loginScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LeaderOS-LoginDelay");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public MGTLeaderos(IEventBus modEventBus, ModContainer modContainer) {
         instance = this;
@@ -71,33 +101,39 @@ public class MGTLeaderos {
 
         // Carregar configurações
         configManager = new ConfigManager(configDir);
+        ConfigSnapshot config = configManager.getSnapshot();
+        updateConfigWatcher();
+        applyHttpTimeouts(config);
 
         // Verificar se o módulo Connect está ativado
-        if (!configManager.isConnectEnabled()) {
+        if (!config.connectEnabled()) {
             LOGGER.warn("Módulo Connect desativado. O mod não funcionará até que seja ativado em modules.json");
             return;
         }
 
         // Verificar se as configurações estão preenchidas
-        if (configManager.getApiKey().isEmpty() || configManager.getServerToken().isEmpty()) {
+        if (config.apiKey().isEmpty() || config.serverToken().isEmpty()) {
             LOGGER.warn("API Key ou Server Token não configurados. Configure em config.json e modules.json");
             return;
         }
 
         // Inicializar cliente da API
         apiClient = new LeaderOSAPIClient(
-            configManager.getUrl(),
-            configManager.getApiKey(),
-            configManager.getServerToken()
+            config.url(),
+            config.apiKey(),
+            config.serverToken()
         );
 
+        // Sincronização de recuperação pela fila HTTP, disparada a cada subscrição do WebSocket
+        deliveryManager = new DeliveryManager(apiClient, server);
+
         // Inicializar módulo Connect (autenticação via WebSocket, igual ao plugin original)
         LOGGER.info("Inicializando módulo Connect via WebSocket...");
         connectModule = new ConnectModule(server, configDir.getAbsolutePath());
         connectModule.enable(
-            configManager.getUrl(), // URL base do site
-            configManager.getApiKey(),
-            configManager.getServerToken(),
+            config.url(), // URL base do site
+            config.apiKey(),
+            config.serverToken(),
             true // onlyOnline - executar comandos apenas quando jogador estiver online
         );
 
@@ -107,9 +143,11 @@ public class MGTLeaderos {
         connected = true;
         LOGGER.info("Conexão com LeaderOS estabelecida com sucesso via WebSocket!");
 
-        // Nota: O plugin original NÃO usa polling HTTP para verificar entregas.
-        // Todas as entregas/comandos são recebidos via WebSocket (evento send-commands do Pusher).
-        // O DeliveryScheduler foi desabilitado para ser fiel ao plugin original.
+        // As entregas chegam pelo WebSocket (evento send-commands do Pusher), como no plugin
+        // original. O DeliveryScheduler só lê a fila HTTP como rede de segurança, e passa a
+        // ler com frequência enquanto o WebSocket estiver fora
+        startDeliveryScheduler();
+        startMetricsServer();
 
         LOGGER.info("Módulo Connect ativo! Aguardando comandos via WebSocket...");
     }
@@ -137,37 +175,188 @@ public class MGTLeaderos {
             connectModule = null;
         }
 
+        if (deliveryScheduler != null) {
+            deliveryScheduler.stop();
+            deliveryScheduler = null;
+        }
+
+        if (deliveryManager != null) {
+            deliveryManager.shutdown();
+            deliveryManager = null;
+        }
+
+        if (metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+
+        if (configWatcher != null) {
+            configWatcher.stop();
+            configWatcher = null;
+        }
+
         connected = false;
         LOGGER.info("[MGT-LeaderOS] Mod desligado com sucesso.");
     }
 
     /**
-     * Recarrega as configurações
-     * Reconecta ao WebSocket se necessário
+     * Recarrega as configurações e aplica apenas o que mudou
+     * Só uma mudança de URL, API Key ou Server Token recria a conexão (e o ConnectModule);
+     * o resto é aplicado nos objetos em uso, sem fechar o WebSocket nem a fila de comandos,
+     * para um reload em horário de pico não abrir uma janela sem entregas
+     * Chamado pelo /leaderos reload e pelo ConfigWatcher, sempre no thread do servidor
      */
     public void reloadConfig() {
-        if (configManager != null) {
-            configManager.reload();
-            LOGGER.info("[MGT-LeaderOS] Configurações recarregadas.");
-
-            // Reconectar se necessário
-            if (connected) {
-                // Desconectar e liberar recursos antigos
-                if (connectModule != null) {
-                    connectModule.disable();
-                    connectModule = null;
-                }
-                // Criar nova instância do ConnectModule para evitar erro de reutilização do WebSocketClient
-                connectModule = new ConnectModule(server, configManager.getConfigDir().getAbsolutePath());
-                connectModule.enable(
-                    configManager.getUrl(), // URL base do site
-                    configManager.getApiKey(),
-                    configManager.getServerToken(),
-                    true
-                );
-                // Não registra no event bus (não possui métodos @SubscribeEvent)
-                LOGGER.info("[MGT-LeaderOS] Reconectado ao LeaderOS com sucesso.");
-            }
+        if (configManager == null) {
+            return;
+        }
+        ConfigSnapshot previous = configManager.getSnapshot();
+        configManager.reload();
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (config.equals(previous)) {
+            LOGGER.info("[MGT-LeaderOS] Configurações recarregadas, nenhuma alteração.");
+            return;
+        }
+        LOGGER.info("[MGT-LeaderOS] Configurações recarregadas.");
+
+        if (config.configWatchEnabled() != previous.configWatchEnabled()) {
+            updateConfigWatcher();
+        }
+        if (config.connectEnabled() != previous.connectEnabled()) {
+            LOGGER.warn("[MGT-LeaderOS] Alteração em Connect.status só é aplicada ao reiniciar o servidor");
+        }
+        if (config.pusherAuthTimeoutMs() != previous.pusherAuthTimeoutMs()
+            || config.commandValidateTimeoutMs() != previous.commandValidateTimeoutMs()
+            || config.serverQueueTimeoutMs() != previous.serverQueueTimeoutMs()
+            || config.serverQueueCompleteTimeoutMs() != previous.serverQueueCompleteTimeoutMs()) {
+            applyHttpTimeouts(config);
+            LOGGER.info("[MGT-LeaderOS] Timeouts HTTP: auth {} ms, validação {} ms, fila {} ms, confirmação {} ms",
+                config.pusherAuthTimeoutMs(), config.commandValidateTimeoutMs(),
+                config.serverQueueTimeoutMs(), config.serverQueueCompleteTimeoutMs());
+        }
+        if (!connected) {
+            return;
+        }
+
+        boolean reconnected = false;
+        if (config.connectionChanged(previous)) {
+            reconnect(config);
+            reconnected = true;
+        } else if (connectModule != null) {
+            // Mesma conexão: política, lotes, reconexão e retenção aplicados no módulo em uso
+            connectModule.applyConfig(previous, config);
+        }
+        // Intervalos de verificação podem ter mudado (e o DeliveryManager é novo após reconectar)
+        if (reconnected || config.deliveryPushPollSeconds() != previous.deliveryPushPollSeconds()
+            || config.deliveryFallbackPollSeconds() != previous.deliveryFallbackPollSeconds()) {
+            startDeliveryScheduler();
+        }
+        // Porta ou endereço das métricas podem ter mudado
+        if (config.metricsHttpEnabled() != previous.metricsHttpEnabled()
+            || !config.metricsHttpBind().equals(previous.metricsHttpBind())
+            || config.metricsHttpPort() != previous.metricsHttpPort()) {
+            startMetricsServer();
+        }
+    }
+
+    /**
+     * Recria a conexão com o LeaderOS com URL, API Key ou Server Token novos
+     * O cliente HTTP e a sincronização de recuperação também usam esses valores
+     */
+    private void reconnect(ConfigSnapshot config) {
+        LOGGER.info("[MGT-LeaderOS] URL, API Key ou Server Token alterados, reconectando...");
+        // Desconectar e liberar recursos antigos
+        if (connectModule != null) {
+            connectModule.disable();
+            connectModule = null;
+        }
+        if (deliveryManager != null) {
+            deliveryManager.shutdown();
+        }
+        apiClient = new LeaderOSAPIClient(config.url(), config.apiKey(), config.serverToken());
+        deliveryManager = new DeliveryManager(apiClient, server);
+
+        // Criar nova instância do ConnectModule para evitar erro de reutilização do WebSocketClient
+        connectModule = new ConnectModule(server, configManager.getConfigDir().getAbsolutePath());
+        connectModule.enable(
+            config.url(), // URL base do site
+            config.apiKey(),
+            config.serverToken(),
+            true
+        );
+        // Não registra no event bus (não possui métodos @SubscribeEvent)
+        LOGGER.info("[MGT-LeaderOS] Reconectado ao LeaderOS com sucesso.");
+    }
+
+    /**
+     * Liga ou desliga o ConfigWatcher conforme configWatchEnabled
+     * O reload disparado pelo observador roda no thread do servidor, como o /leaderos reload
+     */
+    private void updateConfigWatcher() {
+        if (configWatcher != null) {
+            configWatcher.stop();
+            configWatcher = null;
+        }
+        if (!configManager.isConfigWatchEnabled()) {
+            return;
+        }
+        MinecraftServer watchedServer = server;
+        try {
+            configWatcher = ConfigWatcher.start(configManager.getConfigDir(), () -> watchedServer.execute(() -> {
+                LOGGER.info("[MGT-LeaderOS] Arquivos de configuração alterados, recarregando...");
+                reloadConfig();
+            }));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("[MGT-LeaderOS] Não foi possível observar a pasta de configuração, use /leaderos reload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * (Re)inicia a verificação híbrida push/poll da fila de entregas com os intervalos da configuração
+     */
+    private void startDeliveryScheduler() {
+        if (deliveryManager == null) {
+            return;
+        }
+        if (deliveryScheduler != null) {
+            deliveryScheduler.stop();
+        }
+        ConfigSnapshot config = configManager.getSnapshot();
+        deliveryScheduler = new DeliveryScheduler(deliveryManager, this::testConnection,
+            config.deliveryPushPollSeconds(), config.deliveryFallbackPollSeconds());
+        deliveryScheduler.start();
+    }
+
+    /**
+     * Aplica os timeouts por endpoint no transporte HTTP compartilhado
+     * O transporte é o mesmo para toda a vida do mod, então vale também sem reconectar
+     */
+    private void applyHttpTimeouts(ConfigSnapshot config) {
+        HttpTransport transport = HttpTransport.shared();
+        transport.setTimeout(HttpTransport.Endpoint.PUSHER_AUTH, Duration.ofMillis(config.pusherAuthTimeoutMs()));
+        transport.setTimeout(HttpTransport.Endpoint.COMMAND_VALIDATE, Duration.ofMillis(config.commandValidateTimeoutMs()));
+        transport.setTimeout(HttpTransport.Endpoint.SERVER_QUEUE, Duration.ofMillis(config.serverQueueTimeoutMs()));
+        transport.setTimeout(HttpTransport.Endpoint.SERVER_QUEUE_COMPLETE, Duration.ofMillis(config.serverQueueCompleteTimeoutMs()));
+    }
+
+    /**
+     * (Re)abre o endpoint HTTP de métricas conforme a configuração
+     * Falha ao abrir (porta em uso) só desativa o endpoint; o /leaderos metrics continua funcionando
+     */
+    private void startMetricsServer() {
+        if (metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (!config.metricsHttpEnabled()) {
+            return;
+        }
+        try {
+            metricsServer = MetricsHttpServer.start(config.metricsHttpBind(), config.metricsHttpPort(), MetricsRegistry.shared());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("[LeaderOS] Não foi possível abrir o endpoint de métricas em {}:{}: {}",
+                config.metricsHttpBind(), config.metricsHttpPort(), e.getMessage());
         }
     }
 
@@ -186,73 +375,112 @@ public class MGTLeaderos {
      */
     public void checkDeliveries() {
         if (connectModule != null && connectModule.getCommandsQueue() != null && server != null) {
-            // Obtém jogadores com comandos pendentes de forma segura
-            List<String> jogadores = connectModule.getCommandsQueue().getPlayersWithPendingCommands();
-            for (String playerName : jogadores) {
-                List<String> commands = connectModule.getCommandsQueue().getCommands(playerName);
-                if (commands == null || commands.isEmpty()) continue;
+            CommandsQueue queue = connectModule.getCommandsQueue();
+            // Percorre os jogadores com comandos pendentes direto na fila, sem copiar a lista
+            // A retirada acontece no thread do servidor com drain, que é atômico: se outra
+            // verificação ou o login já retirou os comandos, a lista vem vazia e nada é repetido
+            queue.forEachPlayerWithPendingCommands((playerName, pending) -> server.execute(() -> {
+                List<String> commands = queue.drain(playerName);
+                if (commands.isEmpty() || connectModule == null) return;
                 LOGGER.info("[LeaderOS] Executando " + commands.size() + " comandos pendentes para " + playerName);
-                server.execute(() -> {
-                    commands.forEach(cmd -> {
-                        server.getCommands().performPrefixedCommand(
-                            server.createCommandSourceStack(),
-                            cmd
-                        );
-                        LOGGER.info("[LeaderOS] Comando da fila executado: " + cmd);
-                    });
-                    connectModule.getCommandsQueue().removeCommands(playerName);
-                });
-            }
+                // Execução distribuída entre os ticks pelo orçamento do TickCommandExecutor
+                connectModule.getCommandExecutor().submit(playerName, commands,
+                    DeliveryTraces.shared().drained(playerName, commands.size()));
+            }));
         } else {
             LOGGER.warn("[LeaderOS] Não foi possível verificar entregas: módulo Connect ou fila não inicializados.");
         }
     }
 
+    /**
+     * Chamado no fim de cada tick do servidor
+     * Executa os comandos de entrega pendentes dentro do orçamento de tempo do tick
+     */
+    @SubscribeEvent
+    public void onServerTick(ServerTickEvent.Post event) {
+        if (connectModule != null && connectModule.getCommandExecutor() != null) {
+            connectModule.getCommandExecutor().tick();
+        }
+    }
+
     /**
      * Chamado quando um jogador entra no servidor
      * Executa comandos pendentes da fila se houver
      */
     @SubscribeEvent
-    public void onPlayerLogin(net.neoforged.neoforge.event.entity.player.PlayerEvent.PlayerLoggedInEvent event) {
-        if (connectModule == null || ConnectModule.getCommandsQueue() == null) return;
+    public void onPlayerLogin(PlayerEvent.PlayerLoggedInEvent event) {
+        if (connectModule == null) return;
+        if (event.getEntity() instanceof ServerPlayer player) {
+            connectModule.getOnlinePlayers().add(player);
+        }
+        if (ConnectModule.getCommandsQueue() == null) return;
 
-        String playerName = event.getEntity().getName().getString();
-        LOGGER.info("Jogador {} entrou. Verificando entregas pendentes...", playerName);
+        String loginName = event.getEntity().getName().getString();
+        UUID playerUuid = event.getEntity().getUUID();
+        LOGGER.info("Jogador {} entrou. Verificando entregas pendentes...", loginName);
 
-        // Verificar se há comandos pendentes para este jogador de forma assíncrona
-        ConnectModule.getCommandsQueue().getExecutor().execute(() -> {
-            List<String> commands = ConnectModule.getCommandsQueue().getCommands(playerName);
+        // Busca por UUID primeiro e depois pelo nome, sem diferenciar maiúsculas (leitura sem lock)
+        if (ConnectModule.getCommandsQueue().getEntry(playerUuid, loginName) == null) {
+            return;
+        }
 
-            if (commands == null || commands.isEmpty()) {
+        // Aguardar 5 segundos antes de executar (conforme plugin original); a tarefa é apenas
+        // agendada e roda no thread do servidor
+        MinecraftServer loginServer = server;
+        loginScheduler.schedule(() -> loginServer.execute(() -> {
+            // Fila lida de novo: se houve reconexão durante a espera, a anterior já foi fechada
+            // e a retirada nela não seria gravada (os comandos voltariam no próximo login)
+            CommandsQueue queue = ConnectModule.getCommandsQueue();
+            if (connectModule == null || queue == null) {
                 return;
             }
-
-            LOGGER.info("[LeaderOS] Executando {} comandos pendentes para {}", commands.size(), playerName);
-
-            // Aguardar 5 segundos antes de executar (conforme plugin original)
-            try {
-                Thread.sleep(5000);
-            } catch (InterruptedException e) {
-                LOGGER.warn("[LeaderOS Connect] Execução de comandos interrompida para jogador: " + playerName);
-                Thread.currentThread().interrupt();
+            // Retirada atômica: comandos que chegaram durante a espera vêm juntos, e uma
+            // verificação concorrente (/leaderos check) não consegue executá-los de novo
+            List<String> commands = queue.drain(playerUuid, loginName);
+            if (commands.isEmpty()) {
                 return;
             }
 
-            // Executar comandos no thread do servidor (igual ao plugin: dispatchCommand do console)
-            server.execute(() -> {
-                commands.forEach(cmd -> {
-                    server.getCommands().performPrefixedCommand(
-                        server.createCommandSourceStack(),
-                        cmd
-                    );
-                    LOGGER.info("[LeaderOS] Comando da fila executado: {}", cmd);
-                });
-
-                // Remover comandos da fila
-                ConnectModule.getCommandsQueue().removeCommands(playerName);
-                LOGGER.info("[LeaderOS] Comandos de {} removidos da fila", playerName);
-            });
-        });
+            LOGGER.info("[LeaderOS] Executando {} comandos pendentes para {}", commands.size(), loginName);
+
+            // Executar comandos no thread do servidor (igual ao plugin: dispatchCommand do console),
+            // distribuídos entre os ticks pelo orçamento do TickCommandExecutor
+            connectModule.getCommandExecutor().submit(loginName, commands,
+                DeliveryTraces.shared().drained(loginName, commands.size()));
+        }), 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Chamado quando tags/datapacks são (re)carregados (início do servidor e /reload)
+     * Os protótipos de itens em cache podem apontar para registros antigos
+     */
+    @SubscribeEvent
+    public void onTagsUpdated(TagsUpdatedEvent event) {
+        if (deliveryManager != null) {
+            deliveryManager.getItemTemplates().invalidate();
+        }
+    }
+
+    /**
+     * Chamado quando um jogador sai do servidor
+     * Remove o jogador do índice de jogadores online
+     */
+    @SubscribeEvent
+    public void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (connectModule != null && event.getEntity() instanceof ServerPlayer player) {
+            connectModule.getOnlinePlayers().remove(player);
+        }
+    }
+
+    /**
+     * Chamado quando um jogador renasce (ou volta do End)
+     * O servidor cria uma nova instância de ServerPlayer, então o índice é atualizado
+     */
+    @SubscribeEvent
+    public void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        if (connectModule != null && event.getEntity() instanceof ServerPlayer player) {
+            connectModule.getOnlinePlayers().add(player);
+        }
     }
 
     // Getters
@@ -260,6 +488,18 @@ public class MGTLeaderos {
         return configManager;
     }
 
+    public ConnectModule getConnectModule() {
+        return connectModule;
+    }
+
+    public DeliveryManager getDeliveryManager() {
+        return deliveryManager;
+    }
+
+    public DeliveryScheduler getDeliveryScheduler() {
+        return deliveryScheduler;
+    }
+
     public boolean isConnected() {
         return connected;
     }
@@ -0,0 +1,226 @@
+package br.com.magnatasoriginal.mgtleaderos.api;
+
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Camada HTTP compartilhada por todas as chamadas à API do LeaderOS
+ *
+ * Um único HttpClient para o mod inteiro: as conexões ficam abertas (keep-alive) e são
+ * reaproveitadas entre requisições, então o handshake TLS é pago uma vez por host e não
+ * a cada chamada. HTTP/2 é negociado quando o servidor suporta (com fallback automático
+ * para HTTP/1.1), as respostas são pedidas com gzip e descompactadas aqui, e os callbacks
+ * assíncronos rodam num pool limitado de threads daemon
+ *
+ * Cada endpoint tem o próprio timeout, aplicado na criação da requisição: o padrão vem do
+ * Endpoint e o valor do modules.yml é aplicado com setTimeout (na inicialização e a cada
+ * reload). Cada envio é contado nas métricas do endpoint (requisições e erros por motivo)
+ */
+public final class HttpTransport {
+    private static final int WORKER_THREADS = 4;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final String USER_AGENT = "LeaderOS-Minecraft/1.0";
+
+    private static volatile HttpTransport shared;
+
+    private final ExecutorService executor;
+    private final HttpClient client;
+    // Timeout atual de cada endpoint; trocado inteiro a cada alteração
+    private volatile Map<Endpoint, Duration> timeouts;
+
+    /**
+     * Endpoints da API com o timeout padrão de cada um
+     */
+    public enum Endpoint {
+        PUSHER_AUTH(Duration.ofSeconds(10)),
+        COMMAND_VALIDATE(Duration.ofSeconds(10)),
+        SERVER_QUEUE(Duration.ofSeconds(15)),
+        SERVER_QUEUE_COMPLETE(Duration.ofSeconds(15));
+
+        private final Duration timeout;
+
+        Endpoint(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public Duration getDefaultTimeout() {
+            return timeout;
+        }
+    }
+
+    private HttpTransport() {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(WORKER_THREADS, r -> {
+            Thread thread = new Thread(r, "LeaderOS-HTTP-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .executor(executor)
+            .build();
+        Map<Endpoint, Duration> defaults = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            defaults.put(endpoint, endpoint.getDefaultTimeout());
+        }
+        this.timeouts = defaults;
+    }
+
+    /**
+     * Retorna a instância compartilhada, criada no primeiro uso
+     */
+    public static HttpTransport shared() {
+        HttpTransport instance = shared;
+        if (instance == null) {
+            synchronized (HttpTransport.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = new HttpTransport();
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Timeout usado nas próximas requisições ao endpoint
+     */
+    public Duration getTimeout(Endpoint endpoint) {
+        return timeouts.get(endpoint);
+    }
+
+    /**
+     * Altera o timeout do endpoint; vale para as requisições criadas a partir de agora
+     */
+    public synchronized void setTimeout(Endpoint endpoint, Duration timeout) {
+        Map<Endpoint, Duration> updated = new EnumMap<>(timeouts);
+        updated.put(endpoint, timeout);
+        timeouts = updated;
+    }
+
+    /**
+     * Cria uma requisição com o timeout do endpoint e os cabeçalhos comuns
+     * @param endpoint Endpoint chamado (define o timeout)
+     * @param uri URL completa
+     */
+    public HttpRequest.Builder request(Endpoint endpoint, URI uri) {
+        return HttpRequest.newBuilder()
+            .uri(uri)
+            .timeout(getTimeout(endpoint))
+            .header("User-Agent", USER_AGENT)
+            .header("Accept-Encoding", "gzip");
+    }
+
+    /**
+     * Envia a requisição e aguarda a resposta (corpo já descompactado)
+     * @param endpoint Endpoint chamado (contagem de requisições e erros nas métricas)
+     */
+    public HttpResponse<String> send(Endpoint endpoint, HttpRequest request) throws IOException, InterruptedException {
+        try {
+            return track(endpoint, client.send(request, HttpTransport::bodyHandler));
+        } catch (IOException e) {
+            DeliveryMetrics.httpFailure(endpoint, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Envia a requisição sem bloquear; o future completa no pool de threads do transporte
+     */
+    public CompletableFuture<HttpResponse<String>> sendAsync(Endpoint endpoint, HttpRequest request) {
+        return client.sendAsync(request, HttpTransport::bodyHandler).whenComplete((response, error) -> track(endpoint, response, error));
+    }
+
+    /**
+     * Envia a requisição e devolve o corpo como stream, para leitura incremental
+     * Use {@link #body(HttpResponse)} para obter o stream já descompactado
+     */
+    public HttpResponse<InputStream> sendStreaming(Endpoint endpoint, HttpRequest request) throws IOException, InterruptedException {
+        try {
+            return track(endpoint, client.send(request, HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (IOException e) {
+            DeliveryMetrics.httpFailure(endpoint, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Envia sem bloquear; o future só completa com o corpo inteiro já recebido
+     * O stream devolvido por {@link #body(HttpResponse)} lê de um array em memória, então
+     * o parsing pode rodar no callback sem prender uma thread do transporte esperando a rede
+     * (com ofInputStream, callbacks lendo o corpo ocupariam o pool que entrega esse corpo)
+     */
+    public CompletableFuture<HttpResponse<InputStream>> sendBufferedAsync(Endpoint endpoint, HttpRequest request) {
+        HttpResponse.BodyHandler<InputStream> handler = info -> HttpResponse.BodySubscribers.mapping(
+            HttpResponse.BodySubscribers.ofByteArray(), bytes -> new ByteArrayInputStream(bytes));
+        return client.sendAsync(request, handler).whenComplete((response, error) -> track(endpoint, response, error));
+    }
+
+    private static <T> HttpResponse<T> track(Endpoint endpoint, HttpResponse<T> response) {
+        DeliveryMetrics.httpResponse(endpoint, response.statusCode());
+        return response;
+    }
+
+    private static void track(Endpoint endpoint, HttpResponse<?> response, Throwable error) {
+        if (error != null) {
+            DeliveryMetrics.httpFailure(endpoint, error);
+        } else {
+            DeliveryMetrics.httpResponse(endpoint, response.statusCode());
+        }
+    }
+
+    /**
+     * Corpo de uma resposta em streaming, descompactado se veio com gzip
+     * (feito aqui e não no BodySubscriber, que não pode bloquear lendo o cabeçalho gzip)
+     */
+    public static InputStream body(HttpResponse<InputStream> response) throws IOException {
+        return isGzip(response.headers()) ? new GZIPInputStream(response.body(), 8192) : response.body();
+    }
+
+    private static boolean isGzip(HttpHeaders headers) {
+        return headers.firstValue("Content-Encoding")
+            .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+            .orElse(false);
+    }
+
+    /**
+     * Lê o corpo como String UTF-8, descompactando quando o servidor respondeu com gzip
+     */
+    private static HttpResponse.BodySubscriber<String> bodyHandler(HttpResponse.ResponseInfo info) {
+        boolean gzip = isGzip(info.headers());
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+            bytes -> gzip ? gunzip(bytes) : new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static String gunzip(byte[] bytes) {
+        if (bytes.length == 0) {
+            return "";
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -4,13 +4,20 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.api.model.Purchase;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryMetrics;
 
-import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Cliente da API do LeaderOS
@@ -21,6 +28,10 @@ public class LeaderOSAPIClient {
     private final String baseUrl;
     private final String apiKey;
     private final String serverToken;
+    private final HttpTransport transport = HttpTransport.shared();
+    // Validadores da última leitura da fila (requisições condicionais)
+    private volatile String queueETag;
+    private volatile String queueLastModified;
 
     public LeaderOSAPIClient(String baseUrl, String apiKey, String serverToken) {
         this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
@@ -48,23 +59,103 @@ public class LeaderOSAPIClient {
     /**
      * Busca as compras pendentes de entrega
      * Plugin original usa /api/server/queue
+     * A resposta é decodificada em streaming direto do corpo HTTP (PurchaseDecoder), sem
+     * montar a String nem a árvore JSON da fila inteira
      */
-    public JsonArray getPendingDeliveries() {
+    public List<Purchase> getPendingDeliveries() {
+        return getPendingDeliveries(0, 0);
+    }
+
+    /**
+     * Busca uma página da fila de entregas
+     * Os parâmetros page/limit vão no corpo da requisição; se a API não paginar, a fila
+     * inteira volta na primeira página (quem chama deve tratar esse caso)
+     * @param page Página a partir de 1 (0 = sem paginação)
+     * @param limit Compras por página
+     */
+    public List<Purchase> getPendingDeliveries(int page, int limit) {
+        List<Purchase> purchases = fetchQueue(page, limit, false);
+        return purchases != null ? purchases : new ArrayList<>();
+    }
+
+    /**
+     * Busca uma página da fila apenas se ela mudou desde a última leitura
+     * Envia If-None-Match/If-Modified-Since com os validadores da última resposta; sem
+     * validadores (a API não mandou ETag nem Last-Modified) a busca é normal
+     * @return Compras da página, ou null se a API respondeu 304 (nada mudou)
+     */
+    public List<Purchase> getPendingDeliveriesIfModified(int page, int limit) {
+        return fetchQueue(page, limit, true);
+    }
+
+    private List<Purchase> fetchQueue(int page, int limit, boolean conditional) {
+        String fullUrl = baseUrl + "/api/server/queue";
         try {
             JsonObject requestData = new JsonObject();
             requestData.addProperty("serverToken", serverToken);
+            if (page > 0) {
+                requestData.addProperty("page", page);
+                requestData.addProperty("limit", limit);
+            }
 
-            // Endpoint correto do plugin original
-            JsonObject response = makeRequest("/api/server/queue", "POST", requestData);
+            HttpRequest.Builder builder = transport.request(HttpTransport.Endpoint.SERVER_QUEUE, URI.create(fullUrl))
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", "application/json")
+                .header("Authorization", apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString(requestData.toString(), StandardCharsets.UTF_8));
+            // Os validadores descrevem a fila a partir do início, então valem só para a primeira página
+            boolean firstPage = page <= 1;
+            if (conditional && firstPage) {
+                String eTag = queueETag;
+                String lastModified = queueLastModified;
+                if (eTag != null) {
+                    builder.header("If-None-Match", eTag);
+                }
+                if (lastModified != null) {
+                    builder.header("If-Modified-Since", lastModified);
+                }
+            }
+
+            HttpResponse<InputStream> response = transport.sendStreaming(HttpTransport.Endpoint.SERVER_QUEUE, builder.build());
+            try (Reader body = new InputStreamReader(HttpTransport.body(response), StandardCharsets.UTF_8)) {
+                if (response.statusCode() == 304) {
+                    MGTLeaderos.LOGGER.debug("Fila de entregas sem alterações (304)");
+                    return null;
+                }
+                if (response.statusCode() == 200 || response.statusCode() == 201) {
+                    if (firstPage) {
+                        queueETag = response.headers().firstValue("ETag").orElse(null);
+                        queueLastModified = response.headers().firstValue("Last-Modified").orElse(null);
+                    }
+                    List<Purchase> purchases = PurchaseDecoder.readQueue(body);
+                    MGTLeaderos.LOGGER.info("Fila de entregas recebida: " + purchases.size() + " compras");
+                    return purchases;
+                }
 
-            if (response != null && response.has("data")) {
-                return response.getAsJsonArray("data");
+                MGTLeaderos.LOGGER.error("===== ERRO HTTP =====");
+                MGTLeaderos.LOGGER.error("Código: " + response.statusCode());
+                MGTLeaderos.LOGGER.error("URL: " + fullUrl);
+                MGTLeaderos.LOGGER.error("Mensagem: " + readAll(body));
+                MGTLeaderos.LOGGER.error("====================");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            MGTLeaderos.LOGGER.error("Busca de entregas pendentes interrompida: " + e.getMessage());
         } catch (Exception e) {
             MGTLeaderos.LOGGER.error("Erro ao buscar entregas pendentes: " + e.getMessage());
             e.printStackTrace();
         }
-        return new JsonArray();
+        return new ArrayList<>();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[1024];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, read);
+        }
+        return text.length() == 0 ? "Sem mensagem de erro" : text.toString().trim();
     }
 
     /**
@@ -77,7 +168,9 @@ public class LeaderOSAPIClient {
             requestData.addProperty("serverToken", serverToken);
             requestData.addProperty("id", purchaseId);
 
-            JsonObject response = makeRequest("/api/server/queue/complete", "POST", requestData);
+            long start = System.nanoTime();
+            JsonObject response = makeRequest(HttpTransport.Endpoint.SERVER_QUEUE_COMPLETE, "/api/server/queue/complete", "POST", requestData);
+            DeliveryMetrics.record(DeliveryMetrics.Stage.CONFIRM, start);
             return response != null && response.has("success") && response.get("success").getAsBoolean();
         } catch (Exception e) {
             MGTLeaderos.LOGGER.error("Erro ao confirmar entrega: " + e.getMessage());
@@ -85,74 +178,92 @@ public class LeaderOSAPIClient {
         }
     }
 
+    /**
+     * Confirma várias entregas numa única requisição, sem bloquear
+     * Uma compra vai no formato original ({"id": ...}); várias vão em {"ids": [...]}
+     * @return Future com true se a API confirmou (false em erro, sem lançar exceção)
+     */
+    public CompletableFuture<Boolean> confirmDeliveriesAsync(List<Integer> purchaseIds) {
+        JsonObject requestData = new JsonObject();
+        requestData.addProperty("serverToken", serverToken);
+        if (purchaseIds.size() == 1) {
+            requestData.addProperty("id", purchaseIds.get(0));
+        } else {
+            JsonArray ids = new JsonArray(purchaseIds.size());
+            purchaseIds.forEach(ids::add);
+            requestData.add("ids", ids);
+        }
+
+        HttpRequest request;
+        try {
+            request = transport.request(HttpTransport.Endpoint.SERVER_QUEUE_COMPLETE, URI.create(baseUrl + "/api/server/queue/complete"))
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", "application/json")
+                .header("Authorization", apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString(requestData.toString(), StandardCharsets.UTF_8))
+                .build();
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("Erro ao montar confirmação de entregas: " + e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        long start = System.nanoTime();
+        return transport.sendAsync(HttpTransport.Endpoint.SERVER_QUEUE_COMPLETE, request).handle((response, error) -> {
+            DeliveryMetrics.record(DeliveryMetrics.Stage.CONFIRM, start);
+            if (error != null) {
+                MGTLeaderos.LOGGER.error("Erro ao confirmar {} entregas: {}", purchaseIds.size(), error.getMessage());
+                return false;
+            }
+            if (response.statusCode() != 200 && response.statusCode() != 201) {
+                MGTLeaderos.LOGGER.error("Confirmação de {} entregas recusada. Código: {}", purchaseIds.size(), response.statusCode());
+                return false;
+            }
+            try {
+                JsonObject body = JsonParser.parseString(response.body().trim()).getAsJsonObject();
+                return body.has("success") && body.get("success").getAsBoolean();
+            } catch (Exception e) {
+                MGTLeaderos.LOGGER.error("Resposta inválida ao confirmar entregas: " + e.getMessage());
+                return false;
+            }
+        });
+    }
+
     /**
      * Faz uma requisição HTTP para a API
-     * Implementação idêntica ao plugin Bukkit/Spigot
+     * Usa o HttpTransport compartilhado (conexões reaproveitadas, gzip, timeout por endpoint)
      */
-    private JsonObject makeRequest(String endpoint, String method, JsonObject data) {
-        HttpURLConnection connection = null;
+    private JsonObject makeRequest(HttpTransport.Endpoint endpointType, String endpoint, String method, JsonObject data) {
         try {
             String fullUrl = baseUrl + endpoint;
             MGTLeaderos.LOGGER.info("[DEBUG] Endpoint: " + fullUrl);
             MGTLeaderos.LOGGER.info("[DEBUG] Payload: " + (data != null ? data.toString() : "(vazio)"));
             MGTLeaderos.LOGGER.info("[DEBUG] Headers: Authorization=" + apiKey + ", Content-Type=application/json, Accept=application/json, User-Agent=LeaderOS-Minecraft/1.0");
 
-            // ABRIR CONEXÃO PRIMEIRO
-            URL url = new URL(fullUrl);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod(method);
-            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestProperty("User-Agent", "LeaderOS-Minecraft/1.0");
-            connection.setRequestProperty("Authorization", apiKey);
-            connection.setConnectTimeout(15000);
-            connection.setReadTimeout(15000);
-            connection.setDoInput(true);
+            HttpRequest.Builder request = transport.request(endpointType, URI.create(fullUrl))
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", "application/json")
+                .header("Authorization", apiKey);
 
             // Se houver dados para enviar
             if (data != null) {
-                connection.setDoOutput(true);
                 String jsonData = data.toString();
                 MGTLeaderos.LOGGER.info("Enviando dados: " + jsonData);
-
-                try (OutputStream os = connection.getOutputStream()) {
-                    byte[] input = jsonData.getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
-                }
+                request.method(method, HttpRequest.BodyPublishers.ofString(jsonData, StandardCharsets.UTF_8));
+            } else {
+                request.method(method, HttpRequest.BodyPublishers.noBody());
             }
 
             // Ler resposta
-            int responseCode = connection.getResponseCode();
+            HttpResponse<String> response = transport.send(endpointType, request.build());
+            int responseCode = response.statusCode();
             MGTLeaderos.LOGGER.info("Código de resposta: " + responseCode);
 
-            if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_CREATED) {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-                    StringBuilder response = new StringBuilder();
-                    String responseLine;
-                    while ((responseLine = br.readLine()) != null) {
-                        response.append(responseLine.trim());
-                    }
-                    String responseStr = response.toString();
-                    MGTLeaderos.LOGGER.info("Resposta da API: " + responseStr);
-                    return JsonParser.parseString(responseStr).getAsJsonObject();
-                }
+            if (responseCode == 200 || responseCode == 201) {
+                String responseStr = response.body().trim();
+                MGTLeaderos.LOGGER.info("Resposta da API: " + responseStr);
+                return JsonParser.parseString(responseStr).getAsJsonObject();
             } else {
-                // Tentar ler mensagem de erro
-                String errorMessage = "Sem mensagem de erro";
-                try {
-                    if (connection.getErrorStream() != null) {
-                        try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8))) {
-                            StringBuilder error = new StringBuilder();
-                            String errorLine;
-                            while ((errorLine = br.readLine()) != null) {
-                                error.append(errorLine.trim());
-                            }
-                            errorMessage = error.toString();
-                        }
-                    }
-                } catch (Exception e) {
-                    errorMessage = "Erro ao ler mensagem: " + e.getMessage();
-                }
+                String errorMessage = response.body().isEmpty() ? "Sem mensagem de erro" : response.body().trim();
 
                 MGTLeaderos.LOGGER.error("===== ERRO HTTP =====");
                 MGTLeaderos.LOGGER.error("Código: " + responseCode);
@@ -161,12 +272,11 @@ public class LeaderOSAPIClient {
                 MGTLeaderos.LOGGER.error("Mensagem: " + errorMessage);
                 MGTLeaderos.LOGGER.error("====================");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            MGTLeaderos.LOGGER.error("Requisição para API interrompida: " + e.getMessage());
         } catch (Exception e) {
             MGTLeaderos.LOGGER.error("Erro ao fazer requisição para API: " + e.getMessage());
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
         return null;
     }
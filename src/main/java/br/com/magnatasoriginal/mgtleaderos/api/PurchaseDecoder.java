@@ -0,0 +1,110 @@
+package br.com.magnatasoriginal.mgtleaderos.api;
+
+import br.com.magnatasoriginal.mgtleaderos.api.model.Purchase;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodificador em streaming das respostas da fila de entregas (/api/server/queue)
+ *
+ * Lê direto do stream da resposta com JsonReader e monta cada Purchase campo a campo,
+ * sem carregar o corpo inteiro numa String nem montar a árvore JSON da resposta toda.
+ * Só os arrays items e commands de cada compra viram JsonArray, porque é assim que o
+ * modelo os expõe; command_logs vira a lista de IDs de command-log
+ */
+public final class PurchaseDecoder {
+
+    private PurchaseDecoder() {
+    }
+
+    /**
+     * Lê a resposta da fila no formato {"data": [compra, ...], ...}
+     * Campos desconhecidos são ignorados; sem "data" a lista volta vazia
+     */
+    public static List<Purchase> readQueue(Reader source) throws IOException {
+        List<Purchase> purchases = new ArrayList<>();
+        JsonReader reader = new JsonReader(source);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("data") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    purchases.add(readPurchase(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return purchases;
+    }
+
+    /**
+     * Lê uma compra a partir da posição atual do reader (deve estar num objeto)
+     * Mesmos valores padrão de Purchase(JsonObject)
+     */
+    public static Purchase readPurchase(JsonReader reader) throws IOException {
+        int id = 0;
+        String playerUuid = "";
+        String playerName = "";
+        JsonArray items = null;
+        JsonArray commands = null;
+        String type = "item";
+        List<String> commandLogIds = List.of();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextInt();
+                    break;
+                case "player_uuid":
+                    playerUuid = reader.nextString();
+                    break;
+                case "player_name":
+                    playerName = reader.nextString();
+                    break;
+                case "type":
+                    type = reader.nextString();
+                    break;
+                case "items":
+                    items = readArray(reader);
+                    break;
+                case "commands":
+                    commands = readArray(reader);
+                    break;
+                case "command_logs":
+                    commandLogIds = Purchase.readCommandLogIds(readArray(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Purchase(id, playerUuid, playerName,
+            items != null ? items : new JsonArray(),
+            commands != null ? commands : new JsonArray(),
+            type,
+            commandLogIds);
+    }
+
+    private static JsonArray readArray(JsonReader reader) throws IOException {
+        JsonElement element = JsonParser.parseReader(reader);
+        return element.isJsonArray() ? element.getAsJsonArray() : new JsonArray();
+    }
+}
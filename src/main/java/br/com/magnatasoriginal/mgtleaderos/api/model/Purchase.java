@@ -1,11 +1,18 @@
 package br.com.magnatasoriginal.mgtleaderos.api.model;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Modelo de dados para uma compra/entrega
  * Representa um item ou conjunto de itens a serem entregues ao jogador
+ *
+ * commandLogIds são os IDs de command-log gerados para os comandos da compra, os mesmos
+ * que chegam pelo evento send-commands do WebSocket; servem de chave no ledger de entregas
  */
 public class Purchase {
     private final int id;
@@ -14,6 +21,18 @@ public class Purchase {
     private final JsonArray items;
     private final JsonArray commands;
     private final String type;
+    private final List<String> commandLogIds;
+
+    public Purchase(int id, String playerUuid, String playerName, JsonArray items, JsonArray commands, String type,
+                    List<String> commandLogIds) {
+        this.id = id;
+        this.playerUuid = playerUuid;
+        this.playerName = playerName;
+        this.items = items;
+        this.commands = commands;
+        this.type = type;
+        this.commandLogIds = List.copyOf(commandLogIds);
+    }
 
     public Purchase(JsonObject data) {
         this.id = data.has("id") ? data.get("id").getAsInt() : 0;
@@ -22,6 +41,23 @@ public class Purchase {
         this.items = data.has("items") ? data.getAsJsonArray("items") : new JsonArray();
         this.commands = data.has("commands") ? data.getAsJsonArray("commands") : new JsonArray();
         this.type = data.has("type") ? data.get("type").getAsString() : "item";
+        this.commandLogIds = data.has("command_logs") && data.get("command_logs").isJsonArray()
+            ? readCommandLogIds(data.getAsJsonArray("command_logs"))
+            : List.of();
+    }
+
+    /**
+     * Lê os IDs de "command_logs": aceita o ID direto ou um objeto com "id"
+     */
+    public static List<String> readCommandLogIds(JsonArray commandLogs) {
+        List<String> ids = new ArrayList<>(commandLogs.size());
+        for (JsonElement element : commandLogs) {
+            JsonElement id = element.isJsonObject() ? element.getAsJsonObject().get("id") : element;
+            if (id != null && id.isJsonPrimitive()) {
+                ids.add(id.getAsString());
+            }
+        }
+        return List.copyOf(ids);
     }
 
     public int getId() {
@@ -48,6 +84,10 @@ public class Purchase {
         return type;
     }
 
+    public List<String> getCommandLogIds() {
+        return commandLogIds;
+    }
+
     public boolean isValid() {
         return id > 0 && !playerUuid.isEmpty();
     }
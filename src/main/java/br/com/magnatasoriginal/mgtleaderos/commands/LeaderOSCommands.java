@@ -1,18 +1,45 @@
 package br.com.magnatasoriginal.mgtleaderos.commands;
 
 import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.api.HttpTransport;
+import br.com.magnatasoriginal.mgtleaderos.config.ConfigManager;
+import br.com.magnatasoriginal.mgtleaderos.config.ConfigSnapshot;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryMetrics;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTraces;
+import br.com.magnatasoriginal.mgtleaderos.metrics.LatencyHistogram;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.CommandValidator;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.ConnectModule;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.ReconnectController;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.SocketClient;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.TickCommandExecutor;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.DeliveryLedger;
+import br.com.magnatasoriginal.mgtleaderos.scheduler.DeliveryScheduler;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Comandos administrativos do LeaderOS
  * Permite recarregar configurações e verificar status
  */
 public class LeaderOSCommands {
+    // Entregas mostradas por jogador no /leaderos trace
+    private static final int TRACE_LIMIT = 5;
+    // IDs listados por entrega antes de resumir em "+N"
+    private static final int TRACE_KEYS_SHOWN = 5;
+    private static final DateTimeFormatter TRACE_TIME = DateTimeFormatter.ofPattern("dd/MM HH:mm:ss").withZone(ZoneId.systemDefault());
 
     /**
      * Registra os comandos do mod
@@ -29,6 +56,11 @@ public class LeaderOSCommands {
                     .executes(LeaderOSCommands::showStatus))
                 .then(Commands.literal("test")
                     .executes(LeaderOSCommands::testConnection))
+                .then(Commands.literal("metrics")
+                    .executes(LeaderOSCommands::showMetrics))
+                .then(Commands.literal("trace")
+                    .then(Commands.argument("alvo", StringArgumentType.greedyString())
+                        .executes(LeaderOSCommands::showTrace)))
         );
     }
 
@@ -106,9 +138,192 @@ public class LeaderOSCommands {
         source.sendSuccess(() -> Component.literal("§e[LeaderOS] Status: " + status), false);
         source.sendSuccess(() -> Component.literal("§7URL: " + MGTLeaderos.instance.getConfigManager().getUrl()), false);
 
+        ConnectModule connectModule = MGTLeaderos.instance.getConnectModule();
+        DeliveryScheduler deliveryScheduler = MGTLeaderos.instance.getDeliveryScheduler();
+        if (deliveryScheduler != null) {
+            source.sendSuccess(() -> Component.literal("§7Modo de entrega: " + deliveryScheduler.getMode()), false);
+        }
+        SocketClient socket = connectModule != null ? connectModule.getSocketClient() : null;
+        if (socket != null && socket.getMillisSinceLastFrame() >= 0) {
+            source.sendSuccess(() -> Component.literal("§7Último frame do Pusher: há " + socket.getMillisSinceLastFrame() / 1000
+                + "s (activity_timeout " + socket.getActivityTimeoutMillis() / 1000 + "s)"), false);
+        }
+        ReconnectController reconnect = connectModule != null ? connectModule.getReconnectController() : null;
+        if (reconnect != null) {
+            long nextAttemptAt = reconnect.getNextAttemptAt();
+            String next = nextAttemptAt > 0
+                ? ", próxima em " + Math.max(0, (nextAttemptAt - System.currentTimeMillis()) / 1000) + "s"
+                : "";
+            source.sendSuccess(() -> Component.literal("§7Reconexão: circuito " + reconnect.getState() + ", "
+                + reconnect.getAttempts() + " tentativas, " + reconnect.getFailures() + " falhas ("
+                + reconnect.getConsecutiveFailures() + " seguidas), circuito aberto " + reconnect.getCircuitOpens() + "x" + next), false);
+        }
+        TickCommandExecutor executor = connectModule != null ? connectModule.getCommandExecutor() : null;
+        if (executor != null) {
+            source.sendSuccess(() -> Component.literal(String.format(Locale.ROOT, "§7Execução: %d comandos na fila, último tick %.2f/%d ms (%d comandos), pico %.2f ms",
+                executor.getBacklogSize(), executor.getLastTickMillis(), executor.getBudgetMillis(),
+                executor.getLastTickCommands(), executor.getMaxTickMillis())), false);
+        }
+        CommandValidator validator = connectModule != null ? connectModule.getCommandValidator() : null;
+        if (validator != null) {
+            source.sendSuccess(() -> Component.literal("§7Validações: " + validator.getActiveCount() + " em andamento, "
+                + validator.getPendingCount() + " na fila"), false);
+            source.sendSuccess(() -> Component.literal(String.format(Locale.ROOT, "§7Lotes: %d requisições, média de %.1f IDs por requisição",
+                validator.getRequestsSent(), validator.getAverageBatchSize())), false);
+        }
+        DeliveryLedger ledger = connectModule != null ? connectModule.getDeliveryLedger() : null;
+        if (ledger != null) {
+            long retentionHours = TimeUnit.MILLISECONDS.toHours(ledger.getRetentionMillis());
+            source.sendSuccess(() -> Component.literal("§7Ledger: " + ledger.getRecordCount() + " entregas (" + retentionHours + "h), "
+                + ledger.getInFlightCount() + " em andamento, " + ledger.getDuplicatesBlocked() + " repetições bloqueadas"), false);
+            source.sendSuccess(() -> Component.literal("§7Índice: " + ledger.getIndexSize() + " chaves em memória, "
+                + ledger.getUnpersistedCount() + " não gravadas no disco"), false);
+        } else {
+            source.sendSuccess(() -> Component.literal("§7Ledger: §cindisponível"), false);
+        }
+
+        return 1;
+    }
+
+    /**
+     * Comando para mostrar as métricas de entrega (latência por etapa, contadores e erros HTTP)
+     */
+    private static int showMetrics(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+
+        source.sendSuccess(() -> Component.literal("§e[LeaderOS] Métricas de entrega"), false);
+        for (DeliveryMetrics.Stage stage : DeliveryMetrics.Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = stage.histogram().snapshot();
+            String name = stage.name().toLowerCase(Locale.ROOT);
+            if (snapshot.getCount() == 0) {
+                source.sendSuccess(() -> Component.literal("§7" + name + ": sem amostras"), false);
+                continue;
+            }
+            source.sendSuccess(() -> Component.literal(String.format(Locale.ROOT, "§7%s: %d amostras, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, máx %.2f ms",
+                name, snapshot.getCount(), snapshot.getPercentileMillis(0.5), snapshot.getPercentileMillis(0.99),
+                snapshot.getPercentileMillis(0.999), snapshot.getMaxMillis())), false);
+        }
+        source.sendSuccess(() -> Component.literal("§7Frames send-commands: " + DeliveryMetrics.getFrames("send-commands")
+            + ", IDs recebidos: " + DeliveryMetrics.getCommandIdsReceived()
+            + ", comandos executados: " + DeliveryMetrics.getCommandsExecuted()
+            + " (" + DeliveryMetrics.getCommandsFailed() + " com erro)"), false);
+        for (HttpTransport.Endpoint endpoint : HttpTransport.Endpoint.values()) {
+            long requests = DeliveryMetrics.getHttpRequests(endpoint);
+            long errors = DeliveryMetrics.getHttpErrors(endpoint);
+            source.sendSuccess(() -> Component.literal("§7HTTP " + endpoint.name().toLowerCase(Locale.ROOT) + ": "
+                + requests + " requisições, " + (errors > 0 ? "§c" : "") + errors + " erros"), false);
+        }
+        ConfigManager configManager = MGTLeaderos.instance.getConfigManager();
+        ConfigSnapshot config = configManager != null ? configManager.getSnapshot() : null;
+        if (config != null && config.metricsHttpEnabled()) {
+            source.sendSuccess(() -> Component.literal("§7Prometheus: http://" + config.metricsHttpBind() + ":"
+                + config.metricsHttpPort() + "/metrics"), false);
+        } else {
+            source.sendSuccess(() -> Component.literal("§7Prometheus: desativado (metricsHttpEnabled no modules.yml)"), false);
+        }
+
+        return 1;
+    }
+
+    /**
+     * Comando para mostrar a linha do tempo das entregas recentes
+     * Aceita um ID de command-log, purchase:<id> ou o nome do jogador; a consulta é feita
+     * nos índices do DeliveryTraces, sem percorrer o log
+     */
+    private static int showTrace(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        String target = StringArgumentType.getString(context, "alvo").trim();
+
+        DeliveryTraces traces = DeliveryTraces.shared();
+        DeliveryTrace byKey = traces.find(target);
+        List<DeliveryTrace> found = byKey != null ? List.of(byKey) : traces.findByPlayer(target);
+        if (found.isEmpty()) {
+            source.sendFailure(Component.literal("§c[LeaderOS] Nenhuma entrega recente encontrada para " + target
+                + " (ficam em memória as últimas " + DeliveryTraces.CAPACITY + " entregas desde o início do servidor)"));
+            return 0;
+        }
+
+        // Busca por jogador mostra só a parte dele em cada lote; busca por ID mostra o lote inteiro
+        String player = byKey != null ? null : target;
+        int shown = Math.min(found.size(), TRACE_LIMIT);
+        source.sendSuccess(() -> Component.literal("§e[LeaderOS] Entregas de " + target + " (" + shown + " de " + found.size() + ")"), false);
+        for (int i = 0; i < shown; i++) {
+            sendTrace(source, found.get(i), player);
+        }
+
         return 1;
     }
 
+    private static void sendTrace(CommandSourceStack source, DeliveryTrace trace, String player) {
+        long received = trace.getReceivedAt();
+        List<String> keys = trace.getKeys();
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < Math.min(keys.size(), TRACE_KEYS_SHOWN); i++) {
+            ids.append(i > 0 ? ", " : "").append(keys.get(i));
+        }
+        if (keys.size() > TRACE_KEYS_SHOWN) {
+            ids.append(" +").append(keys.size() - TRACE_KEYS_SHOWN);
+        }
+        source.sendSuccess(() -> Component.literal("§e#" + trace.getId() + " §7" + ids + " §8| §7recebida " + TRACE_TIME.format(Instant.ofEpochMilli(received))), false);
+
+        if (trace.getValidatedAt() > 0) {
+            source.sendSuccess(() -> Component.literal("§7  validada " + elapsed(received, trace.getValidatedAt())), false);
+        } else if (trace.getFailedAt() == 0) {
+            source.sendSuccess(() -> Component.literal("§7  aguardando validação"), false);
+        }
+        if (trace.getFailedAt() > 0) {
+            source.sendSuccess(() -> Component.literal("§c  falhou " + elapsed(received, trace.getFailedAt()) + ": " + trace.getFailure()), false);
+        }
+
+        for (DeliveryTrace.PlayerDelivery delivery : trace.getPlayers()) {
+            if (player != null && !delivery.getPlayer().equalsIgnoreCase(player)) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder("§7  ").append(delivery.getPlayer()).append(": ")
+                .append(delivery.getCommands()).append(" comandos");
+            if (delivery.getBlocked() > 0) {
+                line.append(" (").append(delivery.getBlocked()).append(" bloqueados)");
+            }
+            if (delivery.getQueuedAt() > 0) {
+                line.append(", ").append(delivery.getDestination()).append(' ').append(elapsed(received, delivery.getQueuedAt()));
+            }
+            if (delivery.getDequeuedAt() > 0) {
+                line.append(", retirada da fila ").append(elapsed(received, delivery.getDequeuedAt()));
+            }
+            if (delivery.getExecutedAt() > 0) {
+                line.append(", executada ").append(elapsed(received, delivery.getExecutedAt()));
+            } else if (delivery.isWaitingOffline()) {
+                line.append(", aguardando o jogador entrar");
+            } else if (delivery.getQueuedAt() > 0) {
+                line.append(", aguardando execução");
+            }
+            if (delivery.getExecuted() + delivery.getErrors() > 0) {
+                line.append(" (").append(delivery.getExecuted()).append('/').append(delivery.getExpected()).append(" ok)");
+            }
+            if (delivery.getFailedAt() > 0) {
+                line.append(" §c").append(delivery.getFailure()).append(' ').append(elapsed(received, delivery.getFailedAt()));
+            }
+            source.sendSuccess(() -> Component.literal(line.toString()), false);
+        }
+    }
+
+    /**
+     * Tempo desde o recebimento da entrega (ex: +85 ms, +4.2 s, +12 min)
+     */
+    private static String elapsed(long from, long to) {
+        long millis = Math.max(0, to - from);
+        if (millis < 1000) {
+            return "+" + millis + " ms";
+        }
+        if (millis < 60_000) {
+            return String.format(Locale.ROOT, "+%.1f s", millis / 1000.0);
+        }
+        if (millis < 3_600_000) {
+            return "+" + millis / 60_000 + " min";
+        }
+        return String.format(Locale.ROOT, "+%.1f h", millis / 3_600_000.0);
+    }
+
     /**
      * Comando para testar conexão com a API
      */
@@ -3,22 +3,28 @@ package br.com.magnatasoriginal.mgtleaderos.config;
 // Usar SnakeYAML original - Shadow fará o relocate automaticamente no JAR final
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.DumperOptions;
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.CommandPolicy;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Gerenciador de configurações do mod - Conversão fiel do plugin Bukkit
  * Carrega config.yml e modules.yml no formato OkaeriConfig do plugin original
  *
+ * Os arquivos são lidos e validados uma única vez por carga num ConfigSnapshot imutável,
+ * publicado numa referência volátil; os getters só leem campos do snapshot atual
+ *
  * @author Conversão de Bukkit para NeoForge
  */
 public class ConfigManager {
     private final File configDir;
     private final Yaml yaml;
-    private Map<String, Object> config;
-    private Map<String, Object> modules;
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.DEFAULTS;
 
     public ConfigManager(File configDir) {
         this.configDir = configDir;
@@ -39,22 +45,37 @@ public class ConfigManager {
      * Carrega os arquivos de configuração
      */
     private void loadConfigs() {
-        config = loadOrCreateConfig("config.yml", createDefaultConfig());
-        modules = loadOrCreateConfig("modules.yml", createDefaultModules());
+        Map<?, ?> config = loadOrCreateConfig("config.yml", createDefaultConfig());
+        Map<?, ?> modules = loadOrCreateConfig("modules.yml", createDefaultModules());
+        if (config == null || modules == null) {
+            // Arquivo com YAML quebrado: manter a configuração em uso até ser corrigido
+            MGTLeaderos.LOGGER.error("[LeaderOS] Configuração não aplicada, mantendo a anterior até os arquivos serem corrigidos");
+            return;
+        }
+        snapshot = ConfigSnapshot.parse(config, modules);
     }
 
     /**
      * Carrega ou cria um arquivo de configuração
+     * @return Conteúdo do arquivo, ou null se ele existe mas não pôde ser lido (o arquivo não é sobrescrito)
      */
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> loadOrCreateConfig(String fileName, Map<String, Object> defaultConfig) {
+    private Map<?, ?> loadOrCreateConfig(String fileName, Map<String, Object> defaultConfig) {
         File file = new File(configDir, fileName);
         if (file.exists()) {
             try (FileInputStream fis = new FileInputStream(file)) {
-                Map<String, Object> loaded = yaml.load(fis);
-                return loaded != null ? loaded : defaultConfig;
-            } catch (IOException e) {
-                e.printStackTrace();
+                Object loaded = yaml.load(fis);
+                if (loaded == null) {
+                    return defaultConfig;
+                }
+                if (loaded instanceof Map<?, ?> map) {
+                    return map;
+                }
+                MGTLeaderos.LOGGER.error("[LeaderOS] {} não contém um mapa de configurações", fileName);
+                return null;
+            } catch (IOException | RuntimeException e) {
+                // RuntimeException: YAMLException de sintaxe inválida
+                MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao ler {}: {}", fileName, e.getMessage());
+                return null;
             }
         }
         // Criar arquivo padrão
@@ -99,49 +120,219 @@ public class ConfigManager {
     private Map<String, Object> createDefaultModules() {
         Map<String, Object> modules = new LinkedHashMap<>();
 
+        ConfigSnapshot defaults = ConfigSnapshot.DEFAULTS;
         Map<String, Object> connect = new LinkedHashMap<>();
         connect.put("status", true);
-        connect.put("serverToken", "");
+        connect.put("serverToken", defaults.serverToken());
+        connect.put("deliveryLedgerRetentionHours", defaults.deliveryLedgerRetentionHours());
+        connect.put("validationBatchWindowMs", defaults.validationBatchWindowMs());
+        connect.put("validationBatchMaxSize", defaults.validationBatchMaxSize());
+        connect.put("commandTickBudgetMs", defaults.commandTickBudgetMs());
+        connect.put("reconnectBaseDelayMs", defaults.reconnectBaseDelayMs());
+        connect.put("reconnectMaxDelayMs", defaults.reconnectMaxDelayMs());
+        connect.put("reconnectFailureThreshold", defaults.reconnectFailureThreshold());
+        connect.put("reconnectCircuitOpenSeconds", defaults.reconnectCircuitOpenSeconds());
+        connect.put("deliveryPushPollSeconds", defaults.deliveryPushPollSeconds());
+        connect.put("deliveryFallbackPollSeconds", defaults.deliveryFallbackPollSeconds());
+        connect.put("pusherAuthTimeoutMs", defaults.pusherAuthTimeoutMs());
+        connect.put("commandValidateTimeoutMs", defaults.commandValidateTimeoutMs());
+        connect.put("serverQueueTimeoutMs", defaults.serverQueueTimeoutMs());
+        connect.put("serverQueueCompleteTimeoutMs", defaults.serverQueueCompleteTimeoutMs());
+        connect.put("commandPolicyMode", defaults.commandPolicyMode().name());
+        connect.put("commandPolicyRules", new ArrayList<>(defaults.commandPolicyRules()));
+        connect.put("metricsHttpEnabled", defaults.metricsHttpEnabled());
+        connect.put("metricsHttpBind", defaults.metricsHttpBind());
+        connect.put("metricsHttpPort", defaults.metricsHttpPort());
+        connect.put("configWatchEnabled", defaults.configWatchEnabled());
         modules.put("Connect", connect);
 
         return modules;
     }
 
-    // Getters para configurações
-    @SuppressWarnings("unchecked")
+    /**
+     * Configuração atual, já validada
+     * Quem precisa de vários valores deve ler o snapshot uma vez e usar os campos dele,
+     * para não misturar valores de antes e depois de um reload
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Getters para configurações (atalhos para o snapshot atual)
     public String getUrl() {
-        if (config.containsKey("settings")) {
-            Map<String, Object> settings = (Map<String, Object>) config.get("settings");
-            return settings.getOrDefault("url", "").toString();
-        }
-        return "";
+        return snapshot.url();
     }
 
-    @SuppressWarnings("unchecked")
     public String getApiKey() {
-        if (config.containsKey("settings")) {
-            Map<String, Object> settings = (Map<String, Object>) config.get("settings");
-            return settings.getOrDefault("apiKey", "").toString();
-        }
-        return "";
+        return snapshot.apiKey();
     }
 
-    @SuppressWarnings("unchecked")
     public boolean isConnectEnabled() {
-        if (modules.containsKey("Connect")) {
-            Map<String, Object> connect = (Map<String, Object>) modules.get("Connect");
-            return (Boolean) connect.getOrDefault("status", false);
-        }
-        return false;
+        return snapshot.connectEnabled();
     }
 
-    @SuppressWarnings("unchecked")
     public String getServerToken() {
-        if (modules.containsKey("Connect")) {
-            Map<String, Object> connect = (Map<String, Object>) modules.get("Connect");
-            return connect.getOrDefault("serverToken", "").toString();
-        }
-        return "";
+        return snapshot.serverToken();
+    }
+
+    /**
+     * Por quanto tempo uma entrega registrada no ledger continua bloqueando repetições
+     * Padrão: 168 horas (7 dias)
+     */
+    public long getDeliveryLedgerRetentionHours() {
+        return snapshot.deliveryLedgerRetentionHours();
+    }
+
+    /**
+     * Janela em que IDs de command-log recebidos são agrupados numa única validação
+     * Padrão: 50 ms (0 desativa o agrupamento)
+     */
+    public long getValidationBatchWindowMs() {
+        return snapshot.validationBatchWindowMs();
+    }
+
+    /**
+     * Quantidade máxima de IDs de command-log numa única validação
+     * Padrão: 50
+     */
+    public int getValidationBatchMaxSize() {
+        return snapshot.validationBatchMaxSize();
+    }
+
+    /**
+     * Tempo máximo por tick gasto executando comandos de entrega
+     * Padrão: 5 ms (um tick tem 50 ms)
+     */
+    public long getCommandTickBudgetMs() {
+        return snapshot.commandTickBudgetMs();
+    }
+
+    /**
+     * Espera mínima entre tentativas de reconexão do WebSocket
+     * Padrão: 1000 ms
+     */
+    public long getReconnectBaseDelayMs() {
+        return snapshot.reconnectBaseDelayMs();
+    }
+
+    /**
+     * Espera máxima entre tentativas de reconexão (o jitter nunca passa disso)
+     * Padrão: 120000 ms (2 minutos)
+     */
+    public long getReconnectMaxDelayMs() {
+        return snapshot.reconnectMaxDelayMs();
+    }
+
+    /**
+     * Falhas seguidas de reconexão até o circuito abrir
+     * Padrão: 10
+     */
+    public int getReconnectFailureThreshold() {
+        return snapshot.reconnectFailureThreshold();
+    }
+
+    /**
+     * Tempo com o circuito aberto antes de uma tentativa de teste
+     * Padrão: 300 segundos
+     */
+    public long getReconnectCircuitOpenSeconds() {
+        return snapshot.reconnectCircuitOpenSeconds();
+    }
+
+    /**
+     * Intervalo das verificações de segurança da fila HTTP com o WebSocket ativo
+     * Padrão: 300 segundos
+     */
+    public long getDeliveryPushPollSeconds() {
+        return snapshot.deliveryPushPollSeconds();
+    }
+
+    /**
+     * Intervalo das verificações da fila HTTP enquanto o WebSocket está fora
+     * Padrão: 10 segundos
+     */
+    public long getDeliveryFallbackPollSeconds() {
+        return snapshot.deliveryFallbackPollSeconds();
+    }
+
+    /**
+     * Timeout da autenticação do canal privado do Pusher (/broadcasting/auth)
+     * Padrão: 10000 ms
+     */
+    public long getPusherAuthTimeoutMs() {
+        return snapshot.pusherAuthTimeoutMs();
+    }
+
+    /**
+     * Timeout da validação de command-logs (/api/command-logs/validate)
+     * Padrão: 10000 ms
+     */
+    public long getCommandValidateTimeoutMs() {
+        return snapshot.commandValidateTimeoutMs();
+    }
+
+    /**
+     * Timeout da leitura da fila de entregas (/api/server/queue)
+     * Padrão: 15000 ms
+     */
+    public long getServerQueueTimeoutMs() {
+        return snapshot.serverQueueTimeoutMs();
+    }
+
+    /**
+     * Timeout da confirmação de entregas (/api/server/queue/complete)
+     * Padrão: 15000 ms
+     */
+    public long getServerQueueCompleteTimeoutMs() {
+        return snapshot.serverQueueCompleteTimeoutMs();
+    }
+
+    /**
+     * Modo da política de comandos: DENYLIST (bloqueia as regras) ou ALLOWLIST (só libera as regras)
+     * Padrão: DENYLIST (também usado quando o valor é inválido)
+     */
+    public CommandPolicy.Mode getCommandPolicyMode() {
+        return snapshot.commandPolicyMode();
+    }
+
+    /**
+     * Regras da política de comandos ("raiz [argumento|*]...")
+     * Padrão: a blacklist do plugin original (op, deop, stop, restart, reload, ban)
+     */
+    public List<String> getCommandPolicyRules() {
+        return snapshot.commandPolicyRules();
+    }
+
+    /**
+     * Se o endpoint HTTP de métricas (formato Prometheus) deve ser aberto
+     * Padrão: false
+     */
+    public boolean isMetricsHttpEnabled() {
+        return snapshot.metricsHttpEnabled();
+    }
+
+    /**
+     * Endereço de escuta do endpoint de métricas
+     * Padrão: 127.0.0.1 (apenas a própria máquina)
+     */
+    public String getMetricsHttpBind() {
+        return snapshot.metricsHttpBind();
+    }
+
+    /**
+     * Porta do endpoint de métricas
+     * Padrão: 9464
+     */
+    public int getMetricsHttpPort() {
+        return snapshot.metricsHttpPort();
+    }
+
+    /**
+     * Se alterações em config.yml e modules.yml são aplicadas sem o /leaderos reload
+     * Padrão: true
+     */
+    public boolean isConfigWatchEnabled() {
+        return snapshot.configWatchEnabled();
     }
 
     /**
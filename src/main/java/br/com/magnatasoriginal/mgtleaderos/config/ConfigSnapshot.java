@@ -0,0 +1,228 @@
+package br.com.magnatasoriginal.mgtleaderos.config;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.CommandPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Configuração já lida e validada (config.yml + modules.yml), imutável
+ *
+ * Montada uma única vez a cada carga pelo ConfigManager e publicada numa referência
+ * volátil: quem lê recebe sempre uma configuração inteira e consistente, e um reload
+ * apenas troca a referência. Valores ausentes ou inválidos (tipo errado, fora do intervalo)
+ * geram um aviso no log e usam o padrão, em vez de ClassCastException no meio de uma entrega
+ *
+ * @param url URL base do site, sem barra no final
+ * @param connectEnabled Módulo Connect ativado (Connect.status)
+ * @param pusherAuthTimeoutMs Timeout da autenticação do canal privado do Pusher
+ * @param commandValidateTimeoutMs Timeout da validação de command-logs
+ * @param serverQueueTimeoutMs Timeout da leitura da fila de entregas
+ * @param serverQueueCompleteTimeoutMs Timeout da confirmação de entregas
+ * @param configWatchEnabled Recarregar sozinho quando os arquivos forem alterados
+ */
+public record ConfigSnapshot(
+    String url,
+    String apiKey,
+    boolean connectEnabled,
+    String serverToken,
+    long deliveryLedgerRetentionHours,
+    long validationBatchWindowMs,
+    int validationBatchMaxSize,
+    long commandTickBudgetMs,
+    long reconnectBaseDelayMs,
+    long reconnectMaxDelayMs,
+    int reconnectFailureThreshold,
+    long reconnectCircuitOpenSeconds,
+    long deliveryPushPollSeconds,
+    long deliveryFallbackPollSeconds,
+    long pusherAuthTimeoutMs,
+    long commandValidateTimeoutMs,
+    long serverQueueTimeoutMs,
+    long serverQueueCompleteTimeoutMs,
+    CommandPolicy.Mode commandPolicyMode,
+    List<String> commandPolicyRules,
+    boolean metricsHttpEnabled,
+    String metricsHttpBind,
+    int metricsHttpPort,
+    boolean configWatchEnabled
+) {
+
+    /**
+     * Valores usados quando a chave não existe ou é inválida
+     */
+    public static final ConfigSnapshot DEFAULTS = new ConfigSnapshot(
+        "", "", false, "",
+        168, 50, 50, 5,
+        1000, 120000, 10, 300,
+        300, 10,
+        10000, 10000, 15000, 15000,
+        CommandPolicy.Mode.DENYLIST, CommandPolicy.DEFAULT_DENYLIST,
+        false, "127.0.0.1", 9464,
+        true);
+
+    public ConfigSnapshot {
+        commandPolicyRules = List.copyOf(commandPolicyRules);
+    }
+
+    /**
+     * Se a mudança exige uma nova conexão com o LeaderOS (URL, API Key ou Server Token)
+     * Todo o resto pode ser aplicado com a conexão aberta
+     */
+    public boolean connectionChanged(ConfigSnapshot other) {
+        return !url.equals(other.url) || !apiKey.equals(other.apiKey) || !serverToken.equals(other.serverToken);
+    }
+
+    /**
+     * Lê e valida as duas árvores carregadas do YAML
+     * @param config Conteúdo do config.yml (seção settings)
+     * @param modules Conteúdo do modules.yml (seção Connect)
+     */
+    public static ConfigSnapshot parse(Map<?, ?> config, Map<?, ?> modules) {
+        Section settings = Section.of(config, "settings", "config.yml");
+        Section connect = Section.of(modules, "Connect", "modules.yml");
+        ConfigSnapshot d = DEFAULTS;
+
+        String url = settings.string("url", d.url);
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        long reconnectBaseDelayMs = connect.longValue("reconnectBaseDelayMs", d.reconnectBaseDelayMs, 1);
+        long reconnectMaxDelayMs = connect.longValue("reconnectMaxDelayMs", d.reconnectMaxDelayMs, 1);
+        if (reconnectMaxDelayMs < reconnectBaseDelayMs) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS] reconnectMaxDelayMs ({}) menor que reconnectBaseDelayMs ({}) em modules.yml, usando {}",
+                reconnectMaxDelayMs, reconnectBaseDelayMs, reconnectBaseDelayMs);
+            reconnectMaxDelayMs = reconnectBaseDelayMs;
+        }
+
+        return new ConfigSnapshot(
+            url,
+            settings.string("apiKey", d.apiKey),
+            connect.bool("status", d.connectEnabled),
+            connect.string("serverToken", d.serverToken),
+            connect.longValue("deliveryLedgerRetentionHours", d.deliveryLedgerRetentionHours, 1),
+            connect.longValue("validationBatchWindowMs", d.validationBatchWindowMs, 0),
+            (int) connect.longValue("validationBatchMaxSize", d.validationBatchMaxSize, 1, Integer.MAX_VALUE),
+            connect.longValue("commandTickBudgetMs", d.commandTickBudgetMs, 1),
+            reconnectBaseDelayMs,
+            reconnectMaxDelayMs,
+            (int) connect.longValue("reconnectFailureThreshold", d.reconnectFailureThreshold, 1, Integer.MAX_VALUE),
+            connect.longValue("reconnectCircuitOpenSeconds", d.reconnectCircuitOpenSeconds, 1),
+            connect.longValue("deliveryPushPollSeconds", d.deliveryPushPollSeconds, 1),
+            connect.longValue("deliveryFallbackPollSeconds", d.deliveryFallbackPollSeconds, 1),
+            connect.longValue("pusherAuthTimeoutMs", d.pusherAuthTimeoutMs, 1),
+            connect.longValue("commandValidateTimeoutMs", d.commandValidateTimeoutMs, 1),
+            connect.longValue("serverQueueTimeoutMs", d.serverQueueTimeoutMs, 1),
+            connect.longValue("serverQueueCompleteTimeoutMs", d.serverQueueCompleteTimeoutMs, 1),
+            connect.policyMode("commandPolicyMode", d.commandPolicyMode),
+            connect.stringList("commandPolicyRules", d.commandPolicyRules),
+            connect.bool("metricsHttpEnabled", d.metricsHttpEnabled),
+            connect.string("metricsHttpBind", d.metricsHttpBind),
+            (int) connect.longValue("metricsHttpPort", d.metricsHttpPort, 1, 65535),
+            connect.bool("configWatchEnabled", d.configWatchEnabled));
+    }
+
+    /**
+     * Uma seção do YAML (settings ou Connect), com leitura tipada das chaves
+     */
+    private static final class Section {
+        private final Map<?, ?> values;
+        private final String file;
+
+        private Section(Map<?, ?> values, String file) {
+            this.values = values;
+            this.file = file;
+        }
+
+        private static Section of(Map<?, ?> root, String name, String file) {
+            Object value = root != null ? root.get(name) : null;
+            if (value instanceof Map<?, ?> map) {
+                return new Section(map, file);
+            }
+            if (value != null) {
+                MGTLeaderos.LOGGER.warn("[LeaderOS] Seção {} inválida em {}, usando valores padrão", name, file);
+            }
+            return new Section(Map.of(), file);
+        }
+
+        private String string(String key, String def) {
+            Object value = values.get(key);
+            return value != null ? value.toString().trim() : def;
+        }
+
+        private boolean bool(String key, boolean def) {
+            Object value = values.get(key);
+            if (value == null) {
+                return def;
+            }
+            if (value instanceof Boolean b) {
+                return b;
+            }
+            String text = value.toString().trim();
+            if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+                return Boolean.parseBoolean(text);
+            }
+            return invalid(key, value, def);
+        }
+
+        private long longValue(String key, long def, long min) {
+            return longValue(key, def, min, Long.MAX_VALUE);
+        }
+
+        private long longValue(String key, long def, long min, long max) {
+            Object value = values.get(key);
+            if (value == null) {
+                return def;
+            }
+            long parsed;
+            if (value instanceof Number number) {
+                parsed = number.longValue();
+            } else {
+                try {
+                    parsed = Long.parseLong(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    return invalid(key, value, def);
+                }
+            }
+            return parsed >= min && parsed <= max ? parsed : invalid(key, value, def);
+        }
+
+        private CommandPolicy.Mode policyMode(String key, CommandPolicy.Mode def) {
+            Object value = values.get(key);
+            if (value == null) {
+                return def;
+            }
+            try {
+                return CommandPolicy.Mode.valueOf(value.toString().trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                // Modo inválido cai para o padrão (DENYLIST), para nunca liberar tudo por engano
+                return invalid(key, value, def);
+            }
+        }
+
+        private List<String> stringList(String key, List<String> def) {
+            Object value = values.get(key);
+            if (value == null) {
+                return def;
+            }
+            if (!(value instanceof List<?> list)) {
+                return invalid(key, value, def);
+            }
+            List<String> result = new ArrayList<>(list.size());
+            for (Object item : list) {
+                if (item != null) {
+                    result.add(item.toString());
+                }
+            }
+            return result;
+        }
+
+        private <T> T invalid(String key, Object value, T def) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS] Valor inválido para {} em {} ({}), usando {}", key, file, value, def);
+            return def;
+        }
+    }
+}
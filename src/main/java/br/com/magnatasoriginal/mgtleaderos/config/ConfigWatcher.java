@@ -0,0 +1,114 @@
+package br.com.magnatasoriginal.mgtleaderos.config;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observa a pasta de configuração e avisa quando config.yml ou modules.yml mudam
+ *
+ * Usa o WatchService do sistema de arquivos numa thread daemon, sem varrer os arquivos.
+ * Editores costumam gravar em várias etapas (truncar, escrever, renomear), então os eventos
+ * são agrupados: o aviso só sai depois de DEBOUNCE_MS sem novas alterações, uma única vez
+ */
+public class ConfigWatcher {
+    private static final long DEBOUNCE_MS = 500;
+    private static final Set<String> WATCHED_FILES = Set.of("config.yml", "modules.yml");
+
+    private final WatchService watchService;
+    private final Runnable onChange;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    private ConfigWatcher(WatchService watchService, Runnable onChange) {
+        this.watchService = watchService;
+        this.onChange = onChange;
+        this.thread = new Thread(this::run, "LeaderOS-ConfigWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Começa a observar a pasta
+     * @param configDir Pasta com config.yml e modules.yml
+     * @param onChange Chamado (na thread do observador) depois que os arquivos param de mudar
+     * @throws IOException se o sistema de arquivos não suportar observação
+     */
+    public static ConfigWatcher start(File configDir, Runnable onChange) throws IOException {
+        Path dir = configDir.toPath();
+        WatchService watchService = dir.getFileSystem().newWatchService();
+        try {
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+        ConfigWatcher watcher = new ConfigWatcher(watchService, onChange);
+        watcher.thread.start();
+        MGTLeaderos.LOGGER.info("[LeaderOS] Observando alterações em {}", dir.toAbsolutePath());
+        return watcher;
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                if (!drain(watchService.take())) {
+                    continue;
+                }
+                // Esperar os arquivos pararem de mudar
+                WatchKey next;
+                while ((next = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(next);
+                }
+                if (closed) {
+                    return;
+                }
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao aplicar configuração alterada: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Observador finalizado
+        }
+    }
+
+    /**
+     * Consome os eventos da chave e a rearma
+     * @return true se algum evento é de um dos arquivos de configuração
+     */
+    private boolean drain(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Eventos perdidos: melhor recarregar à toa do que perder uma alteração
+                relevant = true;
+            } else if (event.context() instanceof Path path && WATCHED_FILES.contains(path.getFileName().toString())) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    /**
+     * Para de observar
+     */
+    public void stop() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS] Erro ao finalizar observador de configuração: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package br.com.magnatasoriginal.mgtleaderos.delivery;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import com.mojang.brigadier.StringReader;
+import net.minecraft.commands.arguments.item.ItemParser;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.component.DataComponentPatch;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagParser;
+import net.minecraft.resources.RegistryOps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Compila os componentes dos itens da loja (nome, lore, encantamentos, custom model data...)
+ * em DataComponentPatch, uma única vez por texto
+ *
+ * Formatos aceitos no campo "nbt" da API:
+ * - Sintaxe de comando do 1.21: [minecraft:custom_name='"Espada VIP"',minecraft:lore=['"Linha"']]
+ * - SNBT com o mapa de componentes: {"minecraft:custom_name":'"Espada VIP"'}
+ *   (também dentro de {components:{...}}, como num item salvo)
+ *
+ * O patch compilado fica em cache; aplicar num item custa um merge de componentes em vez
+ * de um parse. Textos inválidos (ex: NBT antigo, anterior ao 1.20.5) viram um patch vazio e
+ * o erro é registrado uma única vez. O cache depende dos registros (encantamentos são
+ * holders do registro dinâmico), então é esvaziado junto com o cache de itens
+ */
+public class ComponentPatchCompiler {
+    private static final int MAX_PATCHES = 1024;
+    // Item neutro usado só para o ItemParser ler a lista de componentes
+    private static final String PARSER_ITEM = "minecraft:stone";
+
+    private final Supplier<HolderLookup.Provider> registries;
+    private final Map<String, DataComponentPatch> patches = new ConcurrentHashMap<>();
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Construtor do ComponentPatchCompiler
+     * @param registries Registros do servidor (RegistryAccess), lidos no momento da compilação
+     */
+    public ComponentPatchCompiler(Supplier<HolderLookup.Provider> registries) {
+        this.registries = registries;
+    }
+
+    /**
+     * Retorna o patch dos componentes, compilando apenas no primeiro uso do texto
+     * @param components Texto dos componentes, ou null
+     * @return Patch compilado (DataComponentPatch.EMPTY se vazio ou inválido)
+     */
+    public DataComponentPatch compile(String components) {
+        if (components == null || components.isBlank()) {
+            return DataComponentPatch.EMPTY;
+        }
+        DataComponentPatch patch = patches.get(components);
+        if (patch != null) {
+            return patch;
+        }
+        if (patches.size() >= MAX_PATCHES) {
+            patches.clear();
+        }
+        return patches.computeIfAbsent(components, text -> {
+            try {
+                return decode(registries.get(), text);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                MGTLeaderos.LOGGER.error("Componentes de item inválidos, item será entregue sem customizações: " + text + " (" + e.getMessage() + ")");
+                return DataComponentPatch.EMPTY;
+            }
+        });
+    }
+
+    /**
+     * Decodifica o texto dos componentes, sem cache
+     * @throws Exception se o texto não for um patch de componentes válido
+     */
+    public DataComponentPatch decode(HolderLookup.Provider provider, String components) throws Exception {
+        compilations.incrementAndGet();
+        String text = components.trim();
+        if (text.startsWith("[")) {
+            ItemParser.ItemResult result = new ItemParser(provider).parse(new StringReader(PARSER_ITEM + text));
+            return result.components();
+        }
+
+        CompoundTag tag = TagParser.parseTag(text);
+        Tag source = tag.contains("components") ? tag.get("components") : tag;
+        RegistryOps<Tag> ops = provider.createSerializationContext(NbtOps.INSTANCE);
+        return DataComponentPatch.CODEC.parse(ops, source).getOrThrow(IllegalArgumentException::new);
+    }
+
+    /**
+     * Descarta os patches compilados (registros recarregados)
+     */
+    public void invalidate() {
+        patches.clear();
+    }
+
+    public int getSize() {
+        return patches.size();
+    }
+
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+}
@@ -6,144 +6,403 @@ import com.google.gson.JsonObject;
 import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
 import br.com.magnatasoriginal.mgtleaderos.api.LeaderOSAPIClient;
 import br.com.magnatasoriginal.mgtleaderos.api.model.Purchase;
-import br.com.magnatasoriginal.mgtleaderos.utils.NBTUtils;
-import net.minecraft.commands.CommandSourceStack;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTraces;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.CommandsQueue;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.ConnectModule;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.LeaderOSSocketClient;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.DeliveryLedger;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.core.registries.BuiltInRegistries;
-import net.minecraft.resources.ResourceLocation;
-import net.minecraft.nbt.CompoundTag;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Gerenciador de entregas de compras
  * Processa as compras pendentes e entrega os itens aos jogadores
+ *
+ * Também faz a sincronização de recuperação (catch-up) depois de cada subscrição do
+ * WebSocket: eventos send-commands publicados enquanto o socket estava caído se perdem,
+ * então a fila HTTP (/api/server/queue) é lida em páginas e o que ainda não foi entregue
+ * segue pelo mesmo caminho dos comandos do WebSocket. Uma queda atrasa entregas, mas não
+ * as perde
+ *
+ * A deduplicação usa as mesmas chaves do WebSocket: os IDs de command-log de cada compra
+ * (command_logs na fila) são reservados no ledger, então uma compra cujos comandos já
+ * chegaram pelo send-commands não é executada de novo pela fila HTTP, e vice-versa.
+ * Compras só com itens nunca passam pelo WebSocket e usam a chave purchase:<id>, gravada
+ * no ledger como as outras. Uma compra com comandos mas sem command-log não tem chave que
+ * a proteja de uma segunda execução (após um restart ou pelo WebSocket), então não é
+ * executada automaticamente: fica na fila da API para confirmação manual
+ *
+ * A entrega é feita em duas fases:
+ * 1. Fora do thread do servidor: busca, leitura e planejamento (deduplicação no ledger,
+ *    placeholders, política de comandos)
+ * 2. No thread do servidor, numa única tarefa: itens entregues e comandos enviados ao
+ *    executor por tick, com um único commit no ledger para o lote inteiro
+ * As confirmações vão depois para /api/server/queue/complete numa única requisição assíncrona
  */
 public class DeliveryManager {
+    private static final int CATCH_UP_PAGE_SIZE = 100;
+    private static final int CATCH_UP_MAX_PAGES = 50;
+    // Chave da compra no /leaderos trace e no ledger (compras só com itens)
+    private static final String PURCHASE_KEY_PREFIX = "purchase:";
+
     private final LeaderOSAPIClient apiClient;
     private final MinecraftServer server;
+    private final ExecutorService catchUpExecutor;
+    private final AtomicBoolean catchUpQueued = new AtomicBoolean(false);
+    private final AtomicBoolean fullSyncRequested = new AtomicBoolean(false);
+    private final ItemTemplateCache itemTemplates;
+    // Compras com comandos sem command-log já avisadas no log (o aviso sai uma vez por sessão)
+    private final Set<Integer> unkeyedWarned = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Entrega planejada fora do thread do servidor, pronta para ser aplicada
+     */
+    private static final class DeliveryPlan {
+        private final int purchaseId;
+        private final List<String> ledgerKeys;
+        private final UUID playerUuid;
+        private final String playerName;
+        private final JsonArray items;
+        private final List<String> commands;
+
+        private DeliveryPlan(int purchaseId, List<String> ledgerKeys, UUID playerUuid, String playerName,
+                             JsonArray items, List<String> commands) {
+            this.purchaseId = purchaseId;
+            this.ledgerKeys = ledgerKeys;
+            this.playerUuid = playerUuid;
+            this.playerName = playerName;
+            this.items = items;
+            this.commands = commands;
+        }
+    }
 
     public DeliveryManager(LeaderOSAPIClient apiClient, MinecraftServer server) {
         this.apiClient = apiClient;
         this.server = server;
+        this.itemTemplates = new ItemTemplateCache(new ComponentPatchCompiler(server::registryAccess));
+        this.catchUpExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "LeaderOS-CatchUp");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
      * Verifica e processa as entregas pendentes
+     * Mesmo caminho da sincronização de recuperação (nada é aplicado fora do thread do servidor)
      */
     public void checkAndDeliverPurchases() {
+        requestCatchUp();
+    }
+
+    /**
+     * Agenda uma sincronização de recuperação completa (lê a fila mesmo sem alterações)
+     * Pedidos feitos enquanto outra já está na fila são agrupados numa só
+     */
+    public void requestCatchUp() {
+        fullSyncRequested.set(true);
+        queueCatchUp();
+    }
+
+    /**
+     * Agenda uma verificação da fila com requisição condicional (ETag/Last-Modified):
+     * se nada mudou desde a última leitura, a API responde 304 e nada é processado
+     * Usado pelo DeliveryScheduler
+     */
+    public void requestPoll() {
+        queueCatchUp();
+    }
+
+    private void queueCatchUp() {
+        if (!catchUpQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            catchUpExecutor.execute(() -> {
+                catchUpQueued.set(false);
+                catchUp(!fullSyncRequested.getAndSet(false));
+            });
+        } catch (RejectedExecutionException e) {
+            catchUpQueued.set(false);
+        }
+    }
+
+    /**
+     * Lê a fila de entregas em páginas e planeja a entrega do que ficou para trás
+     * Todas as páginas são lidas antes de confirmar qualquer compra, porque cada
+     * confirmação tira a compra da fila e deslocaria as páginas seguintes
+     * @param conditional Se true, a primeira página é condicional e um 304 encerra a sincronização
+     */
+    private void catchUp(boolean conditional) {
+        ConnectModule connectModule = MGTLeaderos.instance != null ? MGTLeaderos.instance.getConnectModule() : null;
+        if (connectModule == null) {
+            return;
+        }
+
         try {
-            JsonArray pendingDeliveries = apiClient.getPendingDeliveries();
+            Map<Integer, Purchase> outstanding = new LinkedHashMap<>();
+            for (int page = 1; page <= CATCH_UP_MAX_PAGES; page++) {
+                List<Purchase> purchases = conditional && page == 1
+                    ? apiClient.getPendingDeliveriesIfModified(page, CATCH_UP_PAGE_SIZE)
+                    : apiClient.getPendingDeliveries(page, CATCH_UP_PAGE_SIZE);
+                if (purchases == null) {
+                    // 304: a fila não mudou desde a última leitura
+                    return;
+                }
+                int added = 0;
+                for (Purchase purchase : purchases) {
+                    if (outstanding.putIfAbsent(purchase.getId(), purchase) == null) {
+                        added++;
+                    }
+                }
+                // Página curta ou repetida (API sem paginação): acabou
+                if (added == 0 || purchases.size() < CATCH_UP_PAGE_SIZE) {
+                    break;
+                }
+            }
 
-            if (pendingDeliveries.size() == 0) {
-                MGTLeaderos.LOGGER.debug("Nenhuma entrega pendente encontrada.");
+            if (outstanding.isEmpty()) {
+                if (!conditional) {
+                    MGTLeaderos.LOGGER.info("[LeaderOS] Sincronização de recuperação: nenhuma entrega pendente");
+                }
                 return;
             }
 
-            MGTLeaderos.LOGGER.info("Encontradas " + pendingDeliveries.size() + " entregas pendentes.");
+            List<DeliveryPlan> plans = new ArrayList<>();
+            List<Integer> reconfirm = new ArrayList<>();
+            for (Purchase purchase : outstanding.values()) {
+                DeliveryPlan plan = plan(connectModule, purchase, reconfirm);
+                if (plan != null) {
+                    plans.add(plan);
+                }
+            }
+            MGTLeaderos.LOGGER.info("[LeaderOS] Sincronização de recuperação: {} compras na fila, {} a entregar, {} já entregues",
+                outstanding.size(), plans.size(), reconfirm.size());
 
-            for (JsonElement element : pendingDeliveries) {
-                JsonObject purchase = element.getAsJsonObject();
-                processPurchase(purchase);
+            if (!reconfirm.isEmpty()) {
+                confirmAsync(reconfirm);
+            }
+            if (!plans.isEmpty()) {
+                // Fase 2: tudo de uma vez no thread do servidor
+                server.execute(() -> apply(connectModule, plans));
             }
         } catch (Exception e) {
-            MGTLeaderos.LOGGER.error("Erro ao verificar entregas pendentes: " + e.getMessage());
-            e.printStackTrace();
+            MGTLeaderos.LOGGER.error("[LeaderOS] Erro na sincronização de recuperação: " + e.getMessage());
         }
     }
 
     /**
-     * Processa uma compra individual
+     * Fase 1: prepara a entrega de uma compra da fila HTTP (fora do thread do servidor)
+     * - Deduplicação pelo ledger com as chaves de ledgerKeys (ficam reservadas até a fase 2);
+     *   a compra só é planejada se todas estiverem livres
+     * - Placeholders substituídos e comandos filtrados pela política de comandos
+     * @param reconfirm Recebe as compras já executadas que só precisam ser confirmadas de novo
+     * @return Plano da entrega, ou null se não há nada a entregar
      */
-    private void processPurchase(JsonObject purchase) {
+    private DeliveryPlan plan(ConnectModule connectModule, Purchase purchase, List<Integer> reconfirm) {
+        if (!purchase.isValid()) {
+            return null;
+        }
+
+        int purchaseId = purchase.getId();
+        List<String> keys = ledgerKeys(purchase);
+        if (keys == null) {
+            if (unkeyedWarned.add(purchaseId)) {
+                MGTLeaderos.LOGGER.warn("[LeaderOS] Compra {} com comandos mas sem command-log na fila: não será executada automaticamente, confirme manualmente", purchaseId);
+            }
+            return null;
+        }
+        UUID playerUuid;
         try {
-            int purchaseId = purchase.get("id").getAsInt();
-            String playerUuidStr = purchase.get("player_uuid").getAsString();
-            String playerName = purchase.get("player_name").getAsString();
-            JsonArray items = purchase.has("items") ? purchase.getAsJsonArray("items") : new JsonArray();
-            JsonArray commands = purchase.has("commands") ? purchase.getAsJsonArray("commands") : new JsonArray();
-
-            UUID playerUuid = UUID.fromString(playerUuidStr);
-            ServerPlayer player = server.getPlayerList().getPlayer(playerUuid);
-
-            // Se o jogador está online, entregar imediatamente
-            if (player != null) {
-                boolean success = deliverToPlayer(player, items, commands);
-
-                if (success) {
-                    // Confirmar entrega na API
-                    if (apiClient.confirmDelivery(purchaseId)) {
-                        MGTLeaderos.LOGGER.info("Entrega confirmada para jogador " + playerName + " (ID: " + purchaseId + ")");
-                        player.sendSystemMessage(Component.literal("§a[LeaderOS] Você recebeu sua compra!"));
-                    } else {
-                        MGTLeaderos.LOGGER.error("Falha ao confirmar entrega na API (ID: " + purchaseId + ")");
-                    }
+            playerUuid = UUID.fromString(purchase.getPlayerUuid());
+        } catch (IllegalArgumentException e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] UUID inválido na compra {}: {}", purchaseId, purchase.getPlayerUuid());
+            return null;
+        }
+
+        DeliveryLedger ledger = connectModule.getDeliveryLedger();
+        if (ledger != null) {
+            List<String> claimed = ledger.claim(keys);
+            if (claimed.size() < keys.size()) {
+                ledger.release(claimed);
+                if (keys.stream().allMatch(ledger::isDelivered)) {
+                    // Já executada (pelo WebSocket ou por uma sincronização anterior): apenas confirmar
+                    reconfirm.add(purchaseId);
                 } else {
-                    MGTLeaderos.LOGGER.error("Falha ao entregar itens para " + playerName);
+                    // Parte em andamento no WebSocket ou já executada: tentar de novo na próxima sincronização
+                    MGTLeaderos.LOGGER.warn("[LeaderOS] Compra {} com command-logs em andamento ou já entregues em parte, adiando", purchaseId);
                 }
-            } else {
-                MGTLeaderos.LOGGER.info("Jogador " + playerName + " não está online. Entrega será feita quando ele entrar.");
+                return null;
             }
-        } catch (Exception e) {
-            MGTLeaderos.LOGGER.error("Erro ao processar compra: " + e.getMessage());
-            e.printStackTrace();
         }
+
+        String playerName = purchase.getPlayerName();
+        List<String> commands = new ArrayList<>(purchase.getCommands().size());
+        for (JsonElement cmdElement : purchase.getCommands()) {
+            commands.add(cmdElement.getAsString()
+                .replace("{player}", playerName)
+                .replace("{uuid}", playerUuid.toString()));
+        }
+        List<String> allowed = LeaderOSSocketClient.filterCommands(connectModule.getCommandPolicy(), commands);
+        return new DeliveryPlan(purchaseId, keys, playerUuid, playerName, purchase.getItems(), allowed);
     }
 
     /**
-     * Entrega os itens e executa comandos para o jogador
+     * Chaves do ledger de uma compra da fila HTTP
+     * Os IDs de command-log quando existem (os mesmos do WebSocket); purchase:<id> para
+     * compras só com itens, que não passam pelo WebSocket
+     * @return Chaves da compra, ou null se ela tem comandos mas nenhum command-log
      */
-    private boolean deliverToPlayer(ServerPlayer player, JsonArray items, JsonArray commands) {
-        boolean success = true;
+    static List<String> ledgerKeys(Purchase purchase) {
+        List<String> commandLogIds = purchase.getCommandLogIds();
+        if (!commandLogIds.isEmpty()) {
+            return commandLogIds;
+        }
+        if (purchase.getCommands().isEmpty()) {
+            return List.of(PURCHASE_KEY_PREFIX + purchase.getId());
+        }
+        return null;
+    }
 
-        // Entregar itens
-        for (JsonElement itemElement : items) {
-            JsonObject itemData = itemElement.getAsJsonObject();
-            if (!giveItem(player, itemData)) {
-                success = false;
+    /**
+     * Fase 2: aplica as entregas planejadas, no thread do servidor
+     * Compras com itens precisam do jogador online (itens não têm fila persistente) e
+     * continuam na fila da API; compras só com comandos de jogadores offline vão para a
+     * fila persistente do Connect. O ledger recebe um único commit antes de qualquer execução
+     */
+    private void apply(ConnectModule connectModule, List<DeliveryPlan> plans) {
+        DeliveryLedger ledger = connectModule.getDeliveryLedger();
+        List<DeliveryPlan> applicable = new ArrayList<>(plans.size());
+        List<String> deliverKeys = new ArrayList<>(plans.size());
+        List<String> deferredKeys = new ArrayList<>();
+        int deferred = 0;
+        for (DeliveryPlan plan : plans) {
+            if (!plan.items.isEmpty() && connectModule.findOnlinePlayer(plan.playerUuid) == null) {
+                deferred++;
+                deferredKeys.addAll(plan.ledgerKeys);
+            } else {
+                applicable.add(plan);
+                deliverKeys.addAll(plan.ledgerKeys);
+            }
+        }
+        if (ledger != null) {
+            if (!deferredKeys.isEmpty()) {
+                ledger.release(deferredKeys);
+            }
+            if (!deliverKeys.isEmpty()) {
+                ledger.commit(deliverKeys);
             }
         }
 
-        // Executar comandos
-        for (JsonElement cmdElement : commands) {
-            String command = cmdElement.getAsString();
-            executeCommand(command, player);
+        DeliveryTraces traces = DeliveryTraces.shared();
+        List<Integer> delivered = new ArrayList<>(applicable.size());
+        for (DeliveryPlan plan : applicable) {
+            // Compras não passam pela validação: o trace já nasce validado (/leaderos trace purchase:<id>)
+            DeliveryTrace trace = traces.start();
+            String purchaseKey = PURCHASE_KEY_PREFIX + plan.purchaseId;
+            traces.addKey(trace, purchaseKey);
+            for (String key : plan.ledgerKeys) {
+                if (!key.equals(purchaseKey)) {
+                    traces.addKey(trace, key);
+                }
+            }
+            trace.validated();
+            DeliveryTrace.PlayerDelivery delivery = traces.addPlayer(trace, plan.playerName, plan.commands.size());
+            try {
+                ServerPlayer player = connectModule.findOnlinePlayer(plan.playerUuid);
+                if (player != null) {
+                    for (JsonElement itemElement : plan.items) {
+                        giveItem(player, itemElement.getAsJsonObject());
+                    }
+                    delivery.queued(DeliveryTrace.Destination.EXECUTOR);
+                    if (!plan.commands.isEmpty()) {
+                        connectModule.getCommandExecutor().submit(plan.playerName, plan.commands, delivery);
+                    }
+                    if (!plan.items.isEmpty()) {
+                        player.sendSystemMessage(Component.literal("§a[LeaderOS] Você recebeu sua compra!"));
+                    }
+                } else if (!plan.commands.isEmpty()) {
+                    CommandsQueue queue = ConnectModule.getCommandsQueue();
+                    queue.addCommands(plan.playerName, plan.playerUuid, plan.commands);
+                    delivery.queued(DeliveryTrace.Destination.OFFLINE_QUEUE);
+                }
+                delivered.add(plan.purchaseId);
+            } catch (Exception e) {
+                MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao entregar compra {} para {}: {}", plan.purchaseId, plan.playerName, e.getMessage());
+                delivery.fail("erro ao entregar compra: " + e.getMessage());
+            }
         }
 
-        return success;
+        if (deferred > 0) {
+            MGTLeaderos.LOGGER.info("[LeaderOS] {} compras com itens aguardando o jogador entrar", deferred);
+        }
+        if (!delivered.isEmpty()) {
+            MGTLeaderos.LOGGER.info("[LeaderOS] {} compras entregues, confirmando na API", delivered.size());
+            confirmAsync(delivered);
+        }
     }
 
     /**
-     * Dá um item ao jogador
+     * Confirma as compras numa única requisição assíncrona
+     * Se a API recusar o lote, confirma uma a uma fora do thread do servidor; o ledger
+     * impede que uma compra não confirmada seja entregue de novo
+     */
+    private void confirmAsync(List<Integer> purchaseIds) {
+        apiClient.confirmDeliveriesAsync(purchaseIds).thenAccept(success -> {
+            if (success) {
+                return;
+            }
+            try {
+                catchUpExecutor.execute(() -> {
+                    for (int purchaseId : purchaseIds) {
+                        if (!apiClient.confirmDelivery(purchaseId)) {
+                            MGTLeaderos.LOGGER.error("Falha ao confirmar entrega na API (ID: " + purchaseId + ")");
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                MGTLeaderos.LOGGER.warn("[LeaderOS] {} confirmações pendentes para a próxima sincronização", purchaseIds.size());
+            }
+        });
+    }
+
+    /**
+     * Encerra a sincronização de recuperação
+     */
+    public void shutdown() {
+        catchUpExecutor.shutdownNow();
+    }
+
+    /**
+     * Dá um item ao jogador (thread do servidor)
+     * O item vem do cache de protótipos: id e componentes só são resolvidos no primeiro uso
      */
     private boolean giveItem(ServerPlayer player, JsonObject itemData) {
         try {
             String itemId = itemData.get("item").getAsString();
             int amount = itemData.has("amount") ? itemData.get("amount").getAsInt() : 1;
+            String components = itemData.has("nbt") && !itemData.get("nbt").isJsonNull() ? itemData.get("nbt").getAsString() : null;
 
-            // Criar o ItemStack
-            ResourceLocation itemResource = ResourceLocation.parse(itemId);
-            var item = BuiltInRegistries.ITEM.get(itemResource);
-
-            if (item == null) {
-                MGTLeaderos.LOGGER.error("Item não encontrado: " + itemId);
+            ItemStack stack = itemTemplates.create(itemId, components, amount);
+            if (stack == null) {
                 return false;
             }
 
-            ItemStack stack = new ItemStack(item, amount);
-
-            // Se tiver NBT, aplicar
-            // Nota: Em 1.21.1, o sistema de NBT foi substituído por DataComponents
-            // Implementação futura irá suportar DataComponents completamente
-            if (itemData.has("nbt")) {
-                String nbtString = itemData.get("nbt").getAsString();
-                MGTLeaderos.LOGGER.warn("NBT/DataComponent ainda não implementado. Item será entregue sem customizações: " + nbtString);
-                // TODO: Implementar conversão de NBT para DataComponents
-            }
-
             // Adicionar ao inventário do jogador
             if (!player.getInventory().add(stack)) {
                 // Se não couber no inventário, dropar no chão
@@ -161,23 +420,9 @@ public class DeliveryManager {
     }
 
     /**
-     * Executa um comando substituindo placeholders
+     * Cache de protótipos dos itens entregues
      */
-    private void executeCommand(String command, ServerPlayer player) {
-        try {
-            // Substituir placeholders
-            command = command.replace("{player}", player.getName().getString())
-                           .replace("{uuid}", player.getUUID().toString());
-
-            // Executar comando no servidor
-            CommandSourceStack source = server.createCommandSourceStack();
-            server.getCommands().performPrefixedCommand(source, command);
-
-            MGTLeaderos.LOGGER.info("Comando executado: " + command);
-        } catch (Exception e) {
-            MGTLeaderos.LOGGER.error("Erro ao executar comando: " + e.getMessage());
-            e.printStackTrace();
-        }
+    public ItemTemplateCache getItemTemplates() {
+        return itemTemplates;
     }
 }
-
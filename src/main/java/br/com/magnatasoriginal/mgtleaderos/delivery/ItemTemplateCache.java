@@ -0,0 +1,126 @@
+package br.com.magnatasoriginal.mgtleaderos.delivery;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import net.minecraft.core.component.DataComponentPatch;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache dos itens entregues pela loja, por (id do item, componentes)
+ *
+ * Cada combinação é resolvida uma única vez (ResourceLocation.parse, busca no registro e
+ * patch do ComponentPatchCompiler) num ItemStack protótipo que nunca sai daqui; cada
+ * entrega recebe uma cópia com a quantidade pedida. Kits com dezenas de itens iguais
+ * pulam todo o trabalho repetido
+ *
+ * Itens desconhecidos também ficam no cache (como ItemStack.EMPTY), para não repetir a
+ * busca nem o log de erro. O cache é esvaziado quando os datapacks/registros são
+ * recarregados (TagsUpdatedEvent), e também se passar de MAX_TEMPLATES entradas
+ */
+public class ItemTemplateCache {
+    private static final int MAX_TEMPLATES = 1024;
+
+    private final ComponentPatchCompiler componentCompiler;
+    private final Map<Key, ItemStack> templates = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static final class Key {
+        private final String itemId;
+        private final String components;
+        private final int hash;
+
+        private Key(String itemId, String components) {
+            this.itemId = itemId;
+            this.components = components;
+            this.hash = 31 * itemId.hashCode() + Objects.hashCode(components);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return itemId.equals(other.itemId) && Objects.equals(components, other.components);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Construtor do ItemTemplateCache
+     * @param componentCompiler Compilador dos componentes dos itens
+     */
+    public ItemTemplateCache(ComponentPatchCompiler componentCompiler) {
+        this.componentCompiler = componentCompiler;
+    }
+
+    /**
+     * Cria o item de uma entrega a partir do protótipo em cache
+     * @param itemId ID do item (ex: minecraft:diamond_sword)
+     * @param components Componentes do item como vieram da API, ou null
+     * @param amount Quantidade
+     * @return Cópia nova do protótipo, ou null se o item não existe
+     */
+    public ItemStack create(String itemId, String components, int amount) {
+        Key key = new Key(itemId, components);
+        ItemStack template = templates.get(key);
+        if (template != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            if (templates.size() >= MAX_TEMPLATES) {
+                templates.clear();
+            }
+            template = templates.computeIfAbsent(key, k -> resolve(k.itemId, k.components));
+        }
+        return template.isEmpty() ? null : template.copyWithCount(amount);
+    }
+
+    /**
+     * Resolve o protótipo de um item (só no primeiro uso de cada combinação)
+     */
+    private ItemStack resolve(String itemId, String components) {
+        ResourceLocation itemResource = ResourceLocation.tryParse(itemId);
+        if (itemResource == null || !BuiltInRegistries.ITEM.containsKey(itemResource)) {
+            MGTLeaderos.LOGGER.error("Item não encontrado: " + itemId);
+            return ItemStack.EMPTY;
+        }
+
+        ItemStack template = new ItemStack(BuiltInRegistries.ITEM.get(itemResource), 1);
+        DataComponentPatch patch = componentCompiler.compile(components);
+        if (!patch.isEmpty()) {
+            template.applyComponents(patch);
+        }
+        return template;
+    }
+
+    /**
+     * Descarta todos os protótipos (datapacks ou registros recarregados)
+     */
+    public void invalidate() {
+        templates.clear();
+        componentCompiler.invalidate();
+    }
+
+    public int getSize() {
+        return templates.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,22 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contador monotônico, seguro para incrementos concorrentes de várias threads
+ */
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
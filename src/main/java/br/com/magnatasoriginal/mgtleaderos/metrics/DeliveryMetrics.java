@@ -0,0 +1,163 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics;
+
+import br.com.magnatasoriginal.mgtleaderos.api.HttpTransport;
+
+import java.net.http.HttpTimeoutException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Métricas do caminho de uma entrega, do frame do Pusher até a confirmação na API
+ *
+ * Etapas medidas (histograma leaderos_delivery_stage_seconds, label stage):
+ * - frame: processamento de um send-commands no thread do WebSocket (parse e reserva no ledger)
+ * - validate: ida e volta do POST /api/command-logs/validate, incluindo a leitura da resposta
+ * - queued: da chegada do frame até os comandos irem para o executor (jogador online) ou
+ *   para a fila offline; é a latência de ponta a ponta antes da execução
+ * - executed: da entrega ao TickCommandExecutor até o comando rodar (espera por ticks)
+ * - confirm: ida e volta do /api/server/queue/complete
+ *
+ * Os contadores e histogramas são criados uma única vez aqui, com todos os labels
+ * conhecidos, para as séries existirem (zeradas) desde o início do servidor
+ */
+public final class DeliveryMetrics {
+
+    public enum Stage {
+        FRAME,
+        VALIDATE,
+        QUEUED,
+        EXECUTED,
+        CONFIRM;
+
+        private final LatencyHistogram histogram = MetricsRegistry.shared().histogram("leaderos_delivery_stage_seconds",
+            "Latência de cada etapa de uma entrega", "stage", name().toLowerCase(Locale.ROOT));
+
+        public LatencyHistogram histogram() {
+            return histogram;
+        }
+    }
+
+    // Motivos de erro HTTP (label reason), na ordem dos índices abaixo
+    private static final String[] HTTP_ERROR_REASONS = {"timeout", "io", "4xx", "5xx"};
+    private static final int TIMEOUT = 0;
+    private static final int IO = 1;
+    private static final int CLIENT_ERROR = 2;
+    private static final int SERVER_ERROR = 3;
+    private static final String[] PUSHER_EVENTS = {
+        "pusher:connection_established", "pusher_internal:subscription_succeeded", "send-commands",
+        "ping", "pusher:ping", "pusher:pong", "pusher:error"
+    };
+
+    private static final Map<String, Counter> FRAMES = new LinkedHashMap<>();
+    private static final Counter OTHER_FRAMES;
+    private static final Counter COMMAND_IDS_RECEIVED;
+    private static final Counter COMMANDS_EXECUTED;
+    private static final Counter COMMANDS_FAILED;
+    private static final Map<HttpTransport.Endpoint, Counter> HTTP_REQUESTS = new EnumMap<>(HttpTransport.Endpoint.class);
+    private static final Map<HttpTransport.Endpoint, Counter[]> HTTP_ERRORS = new EnumMap<>(HttpTransport.Endpoint.class);
+
+    static {
+        MetricsRegistry registry = MetricsRegistry.shared();
+        for (String event : PUSHER_EVENTS) {
+            FRAMES.put(event, registry.counter("leaderos_pusher_frames_total", "Frames recebidos do Pusher por evento", "event", event));
+        }
+        OTHER_FRAMES = registry.counter("leaderos_pusher_frames_total", "Frames recebidos do Pusher por evento", "event", "other");
+        COMMAND_IDS_RECEIVED = registry.counter("leaderos_command_ids_received_total", "IDs de command-log recebidos em send-commands");
+        COMMANDS_EXECUTED = registry.counter("leaderos_commands_executed_total", "Comandos de entrega executados", "result", "ok");
+        COMMANDS_FAILED = registry.counter("leaderos_commands_executed_total", "Comandos de entrega executados", "result", "error");
+        for (HttpTransport.Endpoint endpoint : HttpTransport.Endpoint.values()) {
+            String label = endpoint.name().toLowerCase(Locale.ROOT);
+            HTTP_REQUESTS.put(endpoint, registry.counter("leaderos_http_requests_total", "Requisições HTTP à API por endpoint", "endpoint", label));
+            Counter[] errors = new Counter[HTTP_ERROR_REASONS.length];
+            for (int i = 0; i < errors.length; i++) {
+                errors[i] = registry.counter("leaderos_http_errors_total", "Erros HTTP por endpoint e motivo",
+                    "endpoint", label, "reason", HTTP_ERROR_REASONS[i]);
+            }
+            HTTP_ERRORS.put(endpoint, errors);
+        }
+        // Etapas registradas junto, para aparecerem mesmo antes da primeira entrega
+        Stage.values();
+    }
+
+    private DeliveryMetrics() {
+    }
+
+    /**
+     * Registra a duração de uma etapa
+     * @param startNanos Valor de System.nanoTime() no início da etapa
+     */
+    public static void record(Stage stage, long startNanos) {
+        stage.histogram.recordSince(startNanos);
+    }
+
+    /**
+     * Conta um frame do Pusher; eventos desconhecidos entram como "other"
+     */
+    public static void frameReceived(String event) {
+        FRAMES.getOrDefault(event, OTHER_FRAMES).increment();
+    }
+
+    public static void commandIdsReceived(int count) {
+        COMMAND_IDS_RECEIVED.add(count);
+    }
+
+    public static void commandExecuted(boolean success) {
+        (success ? COMMANDS_EXECUTED : COMMANDS_FAILED).increment();
+    }
+
+    /**
+     * Conta uma resposta HTTP; status 4xx e 5xx contam também como erro
+     */
+    public static void httpResponse(HttpTransport.Endpoint endpoint, int statusCode) {
+        HTTP_REQUESTS.get(endpoint).increment();
+        if (statusCode >= 500) {
+            HTTP_ERRORS.get(endpoint)[SERVER_ERROR].increment();
+        } else if (statusCode >= 400) {
+            HTTP_ERRORS.get(endpoint)[CLIENT_ERROR].increment();
+        }
+    }
+
+    /**
+     * Conta uma requisição que terminou sem resposta (timeout ou erro de rede)
+     */
+    public static void httpFailure(HttpTransport.Endpoint endpoint, Throwable error) {
+        HTTP_REQUESTS.get(endpoint).increment();
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        HTTP_ERRORS.get(endpoint)[cause instanceof HttpTimeoutException ? TIMEOUT : IO].increment();
+    }
+
+    public static long getCommandIdsReceived() {
+        return COMMAND_IDS_RECEIVED.get();
+    }
+
+    public static long getCommandsExecuted() {
+        return COMMANDS_EXECUTED.get();
+    }
+
+    public static long getCommandsFailed() {
+        return COMMANDS_FAILED.get();
+    }
+
+    public static long getFrames(String event) {
+        Counter counter = FRAMES.get(event);
+        return counter != null ? counter.get() : 0;
+    }
+
+    public static long getHttpRequests(HttpTransport.Endpoint endpoint) {
+        return HTTP_REQUESTS.get(endpoint).get();
+    }
+
+    /**
+     * Total de erros do endpoint, somando todos os motivos
+     */
+    public static long getHttpErrors(HttpTransport.Endpoint endpoint) {
+        long total = 0;
+        for (Counter counter : HTTP_ERRORS.get(endpoint)) {
+            total += counter.get();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,263 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Linha do tempo de uma entrega, usada para responder "paguei e não recebi" sem procurar no log
+ *
+ * Um trace corresponde a um lote de validação (vários IDs de command-log numa única
+ * requisição) ou a uma compra da fila HTTP. A resposta da validação não diz qual ID gerou
+ * cada comando, então os horários de recebimento e validação são do lote e os de fila e
+ * execução são de cada jogador (PlayerDelivery)
+ *
+ * Os horários são System.currentTimeMillis() (0 = etapa ainda não aconteceu). Os campos
+ * são escritos por threads diferentes (WebSocket, validação, servidor) e lidos pelo comando
+ * /leaderos trace, por isso são voláteis
+ */
+public final class DeliveryTrace {
+
+    /**
+     * Recebe o resultado de cada comando executado pelo TickCommandExecutor
+     */
+    @FunctionalInterface
+    public interface Tracker {
+        void onCommandExecuted(boolean success);
+    }
+
+    /**
+     * Para onde os comandos de um jogador foram depois da validação
+     */
+    public enum Destination {
+        EXECUTOR("executor"),
+        OFFLINE_QUEUE("fila offline");
+
+        private final String text;
+
+        Destination(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private final long id;
+    private final long receivedAt;
+    private final List<String> keys = new CopyOnWriteArrayList<>();
+    private final List<PlayerDelivery> players = new CopyOnWriteArrayList<>();
+    private volatile long validatedAt;
+    private volatile long failedAt;
+    private volatile String failure;
+    // Saiu do buffer circular: não volta para os índices
+    volatile boolean evicted;
+
+    DeliveryTrace(long id, long receivedAt) {
+        this.id = id;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * Marca o lote como validado pela API
+     */
+    public void validated() {
+        validatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Marca o lote inteiro como falho; apenas a primeira falha é mantida
+     */
+    public void fail(String reason) {
+        if (failedAt == 0) {
+            failure = reason;
+            failedAt = System.currentTimeMillis();
+        }
+    }
+
+    void addKey(String key) {
+        keys.add(key);
+    }
+
+    PlayerDelivery addPlayer(String player, int commands) {
+        PlayerDelivery delivery = new PlayerDelivery(this, player, commands);
+        players.add(delivery);
+        return delivery;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * IDs de command-log (ou purchase:<id>) do lote
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<PlayerDelivery> getPlayers() {
+        return players;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public long getValidatedAt() {
+        return validatedAt;
+    }
+
+    public long getFailedAt() {
+        return failedAt;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * Se o lote já tem uma falha registrada
+     */
+    public boolean isFailed() {
+        return failedAt != 0;
+    }
+
+    /**
+     * Entrega de um jogador dentro do lote
+     */
+    public static final class PlayerDelivery implements Tracker {
+        private final DeliveryTrace trace;
+        private final String player;
+        private final int commands;
+        private final AtomicInteger executed = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+        private volatile int blocked;
+        private volatile Destination destination;
+        private volatile long queuedAt;
+        private volatile long dequeuedAt;
+        private volatile long executedAt;
+        private volatile long failedAt;
+        private volatile String failure;
+
+        private PlayerDelivery(DeliveryTrace trace, String player, int commands) {
+            this.trace = trace;
+            this.player = player;
+            this.commands = commands;
+        }
+
+        /**
+         * Comandos descartados pela política de comandos
+         */
+        public void blocked(int count) {
+            blocked = count;
+        }
+
+        /**
+         * Comandos entregues ao executor (jogador online) ou à fila offline
+         * Sem comandos a executar (compra só com itens), a entrega termina aqui
+         */
+        public void queued(Destination destination) {
+            this.destination = destination;
+            queuedAt = System.currentTimeMillis();
+            if (getExpected() <= 0) {
+                executedAt = queuedAt;
+            }
+        }
+
+        /**
+         * Comandos retirados da fila offline (login ou /leaderos check)
+         */
+        public void dequeued() {
+            dequeuedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Marca a entrega como falha; apenas a primeira falha é mantida
+         */
+        public void fail(String reason) {
+            if (failedAt == 0) {
+                failure = reason;
+                failedAt = System.currentTimeMillis();
+            }
+        }
+
+        @Override
+        public void onCommandExecuted(boolean success) {
+            int done;
+            if (success) {
+                done = executed.incrementAndGet() + errors.get();
+            } else {
+                done = errors.incrementAndGet() + executed.get();
+                fail("erro ao executar comando");
+            }
+            if (done >= getExpected() && executedAt == 0) {
+                executedAt = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Ainda parada na fila offline, esperando o jogador entrar
+         */
+        public boolean isWaitingOffline() {
+            return destination == Destination.OFFLINE_QUEUE && dequeuedAt == 0 && failedAt == 0;
+        }
+
+        public DeliveryTrace getTrace() {
+            return trace;
+        }
+
+        public String getPlayer() {
+            return player;
+        }
+
+        public int getCommands() {
+            return commands;
+        }
+
+        public int getBlocked() {
+            return blocked;
+        }
+
+        /**
+         * Comandos que devem ser executados (recebidos menos bloqueados)
+         */
+        public int getExpected() {
+            return commands - blocked;
+        }
+
+        public int getExecuted() {
+            return executed.get();
+        }
+
+        public int getErrors() {
+            return errors.get();
+        }
+
+        public Destination getDestination() {
+            return destination;
+        }
+
+        public long getQueuedAt() {
+            return queuedAt;
+        }
+
+        public long getDequeuedAt() {
+            return dequeuedAt;
+        }
+
+        public long getExecutedAt() {
+            return executedAt;
+        }
+
+        public long getFailedAt() {
+            return failedAt;
+        }
+
+        public String getFailure() {
+            return failure;
+        }
+    }
+}
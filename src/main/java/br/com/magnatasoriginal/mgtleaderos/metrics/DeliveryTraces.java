@@ -0,0 +1,190 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Buffer circular com as últimas entregas (DeliveryTrace), consultado pelo /leaderos trace
+ *
+ * Guarda no máximo CAPACITY traces em memória; ao abrir um novo, o mais antigo sai do
+ * buffer e dos índices. Os dois índices (ID de command-log e nome do jogador) são mapas
+ * concorrentes, então a consulta é O(1) e não bloqueia quem está registrando entregas.
+ * Alterações no buffer e nos índices são sincronizadas; elas acontecem uma vez por lote ou
+ * por jogador, nunca por comando
+ */
+public final class DeliveryTraces {
+    public static final int CAPACITY = 1024;
+    // Entregas mais recentes guardadas no índice de cada jogador
+    public static final int MAX_PER_PLAYER = 10;
+
+    private static final DeliveryTraces SHARED = new DeliveryTraces(CAPACITY);
+
+    private final DeliveryTrace[] ring;
+    private long sequence = 0;
+    private final Map<String, DeliveryTrace> byKey = new ConcurrentHashMap<>();
+    // Listas imutáveis, da entrega mais recente para a mais antiga
+    private final Map<String, List<DeliveryTrace>> byPlayer = new ConcurrentHashMap<>();
+
+    DeliveryTraces(int capacity) {
+        this.ring = new DeliveryTrace[capacity];
+    }
+
+    /**
+     * Retorna o buffer compartilhado pelo mod inteiro
+     */
+    public static DeliveryTraces shared() {
+        return SHARED;
+    }
+
+    /**
+     * Abre o trace de uma nova entrega (horário de recebimento = agora)
+     */
+    public synchronized DeliveryTrace start() {
+        int slot = (int) (sequence % ring.length);
+        DeliveryTrace evicted = ring[slot];
+        if (evicted != null) {
+            evict(evicted);
+        }
+        DeliveryTrace trace = new DeliveryTrace(++sequence, System.currentTimeMillis());
+        ring[slot] = trace;
+        return trace;
+    }
+
+    /**
+     * Associa um ID de command-log (ou purchase:<id>) ao trace
+     */
+    public synchronized void addKey(DeliveryTrace trace, String key) {
+        trace.addKey(key);
+        if (!trace.evicted) {
+            byKey.put(key, trace);
+        }
+    }
+
+    /**
+     * Registra os comandos validados de um jogador no trace
+     * @return Entrega do jogador, que acompanha fila e execução
+     */
+    public synchronized DeliveryTrace.PlayerDelivery addPlayer(DeliveryTrace trace, String player, int commands) {
+        DeliveryTrace.PlayerDelivery delivery = trace.addPlayer(player, commands);
+        if (!trace.evicted) {
+            String key = player.toLowerCase(Locale.ROOT);
+            List<DeliveryTrace> previous = byPlayer.getOrDefault(key, List.of());
+            List<DeliveryTrace> updated = new ArrayList<>(Math.min(previous.size() + 1, MAX_PER_PLAYER));
+            updated.add(trace);
+            for (DeliveryTrace other : previous) {
+                if (updated.size() >= MAX_PER_PLAYER) {
+                    break;
+                }
+                if (other != trace) {
+                    updated.add(other);
+                }
+            }
+            byPlayer.put(key, List.copyOf(updated));
+        }
+        return delivery;
+    }
+
+    private void evict(DeliveryTrace trace) {
+        trace.evicted = true;
+        for (String key : trace.getKeys()) {
+            byKey.remove(key, trace);
+        }
+        for (DeliveryTrace.PlayerDelivery delivery : trace.getPlayers()) {
+            String key = delivery.getPlayer().toLowerCase(Locale.ROOT);
+            List<DeliveryTrace> previous = byPlayer.get(key);
+            if (previous == null || !previous.contains(trace)) {
+                continue;
+            }
+            List<DeliveryTrace> updated = new ArrayList<>(previous);
+            updated.remove(trace);
+            if (updated.isEmpty()) {
+                byPlayer.remove(key);
+            } else {
+                byPlayer.put(key, List.copyOf(updated));
+            }
+        }
+    }
+
+    /**
+     * Trace que contém o ID de command-log (ou purchase:<id>), ou null
+     */
+    public DeliveryTrace find(String key) {
+        return byKey.get(key);
+    }
+
+    /**
+     * Entregas recentes do jogador, da mais recente para a mais antiga (sem diferenciar maiúsculas)
+     */
+    public List<DeliveryTrace> findByPlayer(String player) {
+        return byPlayer.getOrDefault(player.toLowerCase(Locale.ROOT), List.of());
+    }
+
+    /**
+     * Marca como retiradas as entregas do jogador que estavam na fila offline e devolve o
+     * Tracker que acompanha a execução dos comandos retirados
+     *
+     * A fila offline não guarda de qual entrega veio cada comando. Comandos antigos (de antes
+     * de um restart ou fora do buffer) estão no começo da fila, então os primeiros
+     * drainedCommands menos os rastreados são ignorados e o restante é atribuído às entregas
+     * rastreadas na ordem em que entraram na fila
+     * @param drainedCommands Quantidade de comandos retirados da fila
+     * @return Tracker para o TickCommandExecutor, ou null se nenhuma entrega rastreada estava na fila
+     */
+    public DeliveryTrace.Tracker drained(String player, int drainedCommands) {
+        List<DeliveryTrace> recent = findByPlayer(player);
+        List<DeliveryTrace.PlayerDelivery> waiting = new ArrayList<>();
+        // Da mais antiga para a mais recente, que é a ordem da fila
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            for (DeliveryTrace.PlayerDelivery delivery : recent.get(i).getPlayers()) {
+                if (delivery.getPlayer().equalsIgnoreCase(player) && delivery.isWaitingOffline()) {
+                    waiting.add(delivery);
+                }
+            }
+        }
+        if (waiting.isEmpty()) {
+            return null;
+        }
+
+        int traced = 0;
+        for (DeliveryTrace.PlayerDelivery delivery : waiting) {
+            delivery.dequeued();
+            traced += delivery.getExpected();
+        }
+        return new DrainTracker(waiting, Math.max(0, drainedCommands - traced));
+    }
+
+    /**
+     * Distribui os comandos executados de uma retirada da fila offline entre as entregas
+     * Chamado apenas no thread do servidor, pelo TickCommandExecutor
+     */
+    private static final class DrainTracker implements DeliveryTrace.Tracker {
+        private final List<DeliveryTrace.PlayerDelivery> deliveries;
+        private int untracked;
+        private int index = 0;
+        private int executedInCurrent = 0;
+
+        private DrainTracker(List<DeliveryTrace.PlayerDelivery> deliveries, int untracked) {
+            this.deliveries = deliveries;
+            this.untracked = untracked;
+        }
+
+        @Override
+        public void onCommandExecuted(boolean success) {
+            if (untracked > 0) {
+                untracked--;
+                return;
+            }
+            while (index < deliveries.size() && executedInCurrent >= deliveries.get(index).getExpected()) {
+                index++;
+                executedInCurrent = 0;
+            }
+            if (index < deliveries.size()) {
+                executedInCurrent++;
+                deliveries.get(index).onCommandExecuted(success);
+            }
+        }
+    }
+}
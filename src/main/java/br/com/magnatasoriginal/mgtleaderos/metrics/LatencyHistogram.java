@@ -0,0 +1,160 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latência no estilo HDR, em microssegundos
+ *
+ * Os baldes são log-lineares: até 64 µs cada valor tem o próprio balde, e cada potência
+ * de dois acima disso é dividida em 32 baldes iguais. O erro relativo de qualquer
+ * percentil fica abaixo de ~3% de 1 µs até ~71 minutos, com um array fixo de 896
+ * contadores. Registrar um valor custa um cálculo de índice e um incremento atômico,
+ * sem alocação e sem lock, então pode ser chamado de qualquer thread (inclusive do
+ * thread do servidor)
+ *
+ * Valores acima do máximo caem no último balde; o máximo exato é guardado à parte
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final long MAX_MICROS = (1L << 32) - 1;
+    private static final int BUCKETS = indexOf(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Registra uma duração medida com System.nanoTime()
+     * @param startNanos Valor de System.nanoTime() no início da etapa
+     */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Registra uma duração em nanossegundos (valores negativos contam como zero)
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(indexOf(Math.min(micros, MAX_MICROS)));
+        sumMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    /**
+     * Copia o estado atual; os contadores são lidos um a um, sem parar quem está registrando
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sumMicros.sum(), maxMicros.get());
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - (SUB_BUCKET_BITS - 1);
+        int top = (int) (micros >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF + (top - HALF);
+    }
+
+    private static long lowestOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int offset = index - SUB_BUCKETS;
+        int shift = offset / HALF + 1;
+        long top = offset % HALF + HALF;
+        return top << shift;
+    }
+
+    private static long highestOf(int index) {
+        return index + 1 < BUCKETS ? lowestOf(index + 1) - 1 : MAX_MICROS;
+    }
+
+    /**
+     * Cópia imutável de um histograma
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        private Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSumSeconds() {
+            return sumMicros / 1_000_000.0;
+        }
+
+        public double getMaxMillis() {
+            return maxMicros / 1000.0;
+        }
+
+        public double getMeanMillis() {
+            return count > 0 ? sumMicros / 1000.0 / count : 0;
+        }
+
+        /**
+         * Percentil em milissegundos (meio do balde, nunca acima do máximo registrado)
+         * @param quantile Entre 0 e 1 (ex: 0.99)
+         */
+        public double getPercentileMillis(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    long middle = (lowestOf(i) + highestOf(i)) / 2;
+                    return Math.min(middle, maxMicros) / 1000.0;
+                }
+            }
+            return maxMicros / 1000.0;
+        }
+
+        /**
+         * Quantidade de valores até o limite, para os baldes "le" do Prometheus
+         * Conta os baldes internos que terminam até o limite (erro de no máximo um balde, ~3%)
+         * @param boundsSeconds Limites crescentes em segundos
+         * @return Contagem acumulada de cada limite
+         */
+        public long[] cumulativeCounts(double[] boundsSeconds) {
+            long[] result = new long[boundsSeconds.length];
+            int bucket = 0;
+            long seen = 0;
+            for (int b = 0; b < boundsSeconds.length; b++) {
+                long limitMicros = (long) (boundsSeconds[b] * 1_000_000);
+                while (bucket < counts.length && highestOf(bucket) <= limitMicros) {
+                    seen += counts[bucket];
+                    bucket++;
+                }
+                result[b] = seen;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Endpoint HTTP local com as métricas no formato de texto do Prometheus (GET /metrics)
+ *
+ * Usa o servidor HTTP embutido do JDK com uma única thread daemon: cada coleta só monta
+ * o texto do MetricsRegistry, sem tocar no thread do servidor. Por padrão escuta apenas
+ * em 127.0.0.1; expor para fora da máquina é decisão explícita da configuração
+ */
+public class MetricsHttpServer {
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsHttpServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Abre o endpoint
+     * @param bindAddress Endereço de escuta (ex: 127.0.0.1)
+     * @param port Porta TCP
+     * @param registry Registro exportado
+     * @throws IOException se a porta estiver em uso ou o endereço for inválido
+     */
+    public static MetricsHttpServer start(String bindAddress, int port, MetricsRegistry registry) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "LeaderOS-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, exchange -> handle(exchange, registry));
+        server.start();
+        MGTLeaderos.LOGGER.info("[LeaderOS] Métricas disponíveis em http://{}:{}{}", bindAddress, port, PATH);
+        return new MetricsHttpServer(server, executor);
+    }
+
+    private static void handle(HttpExchange exchange, MetricsRegistry registry) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!exchange.getRequestURI().getPath().equals(PATH)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            StringBuilder text = new StringBuilder(8192);
+            registry.writePrometheus(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Fecha o endpoint sem esperar coletas em andamento
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
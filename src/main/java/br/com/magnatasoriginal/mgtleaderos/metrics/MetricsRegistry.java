@@ -0,0 +1,184 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro das métricas do mod (contadores, gauges e histogramas de latência)
+ *
+ * Cada métrica é identificada pelo nome e pelos labels, passados como pares
+ * nome/valor ("endpoint", "command_validate"). Contadores e histogramas são criados no
+ * primeiro uso e depois apenas reaproveitados; gauges e contadores calculados (supplier)
+ * são substituídos a cada registro, para que um módulo recriado num reload passe a ser o
+ * lido. O texto no formato do Prometheus é montado só quando alguém pede (comando ou
+ * endpoint HTTP), nunca no caminho das entregas
+ */
+public final class MetricsRegistry {
+    // Limites dos baldes "le" dos histogramas exportados, em segundos
+    private static final double[] HISTOGRAM_BOUNDS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+    };
+
+    private static final MetricsRegistry SHARED = new MetricsRegistry();
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        HISTOGRAM("histogram");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        // Por labels já formatados (ex: endpoint="server_queue"), em ordem para a saída ser estável
+        private final Map<String, Object> children = new ConcurrentSkipListMap<>();
+
+        private Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Retorna o registro compartilhado pelo mod inteiro
+     */
+    public static MetricsRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Contador incrementado pelo código (criado no primeiro uso)
+     * @param labels Pares nome/valor dos labels
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Object metric = family(name, help, Type.COUNTER).children.computeIfAbsent(labels(labels), k -> new Counter());
+        if (!(metric instanceof Counter)) {
+            throw new IllegalArgumentException("Métrica " + name + " já registrada como contador calculado");
+        }
+        return (Counter) metric;
+    }
+
+    /**
+     * Contador calculado a partir de um valor que já existe (ex: tentativas de reconexão)
+     * Substitui o registro anterior com os mesmos labels
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).children.put(labels(labels), value);
+    }
+
+    /**
+     * Gauge lido no momento da exportação; substitui o registro anterior com os mesmos labels
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).children.put(labels(labels), value);
+    }
+
+    /**
+     * Histograma de latência (criado no primeiro uso)
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, Type.HISTOGRAM).children.computeIfAbsent(labels(labels), k -> new LatencyHistogram());
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Métrica " + name + " já registrada como " + family.type.text);
+        }
+        return family;
+    }
+
+    /**
+     * Escreve todas as métricas no formato de texto do Prometheus (versão 0.0.4)
+     * Gauges cujo supplier falha (módulo já finalizado) são omitidos
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.text).append('\n');
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                String labels = child.getKey();
+                Object metric = child.getValue();
+                try {
+                    if (metric instanceof Counter) {
+                        sample(out, family.name, labels, null, ((Counter) metric).get());
+                    } else if (metric instanceof LongSupplier) {
+                        sample(out, family.name, labels, null, ((LongSupplier) metric).getAsLong());
+                    } else if (metric instanceof DoubleSupplier) {
+                        sample(out, family.name, labels, null, ((DoubleSupplier) metric).getAsDouble());
+                    } else if (metric instanceof LatencyHistogram) {
+                        writeHistogram(out, family.name, labels, ((LatencyHistogram) metric).snapshot());
+                    }
+                } catch (RuntimeException ignored) {
+                    // Supplier de um módulo já desabilitado
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+        long[] cumulative = snapshot.cumulativeCounts(HISTOGRAM_BOUNDS);
+        for (int i = 0; i < HISTOGRAM_BOUNDS.length; i++) {
+            sample(out, name + "_bucket", labels, "le=\"" + HISTOGRAM_BOUNDS[i] + "\"", cumulative[i]);
+        }
+        sample(out, name + "_bucket", labels, "le=\"+Inf\"", snapshot.getCount());
+        sample(out, name + "_sum", labels, null, snapshot.getSumSeconds());
+        sample(out, name + "_count", labels, null, snapshot.getCount());
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extraLabel, Object value) {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                if (!labels.isEmpty()) {
+                    out.append(',');
+                }
+                out.append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Formata os pares nome/valor como no Prometheus: a="x",b="y"
+     */
+    private static String labels(String... pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels devem ser pares nome/valor");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(pairs[i]).append("=\"");
+            String value = pairs[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') {
+                    text.append('\\').append(ch);
+                } else if (ch == '\n') {
+                    text.append("\\n");
+                } else {
+                    text.append(ch);
+                }
+            }
+            text.append('"');
+        }
+        return text.toString();
+    }
+}
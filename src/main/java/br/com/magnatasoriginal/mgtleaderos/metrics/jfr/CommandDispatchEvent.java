@@ -0,0 +1,40 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Execução de um comando de entrega no thread do servidor (performPrefixedCommand)
+ */
+@Name("mgtleaderos.CommandDispatch")
+@Label("Execução de comando de entrega")
+@Category({"LeaderOS", "Connect"})
+@Description("Um comando de entrega executado como console pelo TickCommandExecutor")
+public class CommandDispatchEvent extends Event {
+
+    @Label("Jogador")
+    public String player;
+
+    @Label("Comando")
+    public String command;
+
+    @Label("Tamanho do comando")
+    @DataAmount
+    public long bytes;
+
+    @Label("Sucesso")
+    public boolean success;
+
+    @Label("Espera na fila")
+    @Description("Da entrega ao executor até o início da execução")
+    @Timespan
+    public long queueWait;
+
+    @Label("Comandos restantes")
+    public int backlog;
+}
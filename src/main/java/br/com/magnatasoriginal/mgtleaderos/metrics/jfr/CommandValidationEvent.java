@@ -0,0 +1,40 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Um lote de validação em /api/command-logs/validate, do envio até a leitura da resposta
+ * Começa no thread que despacha o lote e termina no pool HTTP
+ */
+@Name("mgtleaderos.CommandValidation")
+@Label("Validação de comandos")
+@Category({"LeaderOS", "Connect"})
+@Description("Ida e volta de um lote de IDs de command-log na API de validação")
+public class CommandValidationEvent extends Event {
+
+    @Label("Tamanho do lote")
+    public int batchSize;
+
+    @Label("Jogadores")
+    public int players;
+
+    @Label("Status HTTP")
+    public int statusCode;
+
+    @Label("Sucesso")
+    public boolean success;
+
+    @Label("Bytes enviados")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Bytes recebidos")
+    @Description("Corpo da resposta já descompactado")
+    @DataAmount
+    public long responseBytes;
+}
@@ -0,0 +1,35 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Autenticação do canal privado do Pusher (chamada HTTP bloqueante no thread do WebSocket)
+ */
+@Name("mgtleaderos.PusherAuth")
+@Label("Autenticação do Pusher")
+@Category({"LeaderOS", "Connect"})
+@Description("POST /broadcasting/auth para subscrever o canal privado do servidor")
+public class PusherAuthEvent extends Event {
+
+    @Label("Canal")
+    public String channel;
+
+    @Label("Status HTTP")
+    public int statusCode;
+
+    @Label("Sucesso")
+    public boolean success;
+
+    @Label("Bytes enviados")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Bytes recebidos")
+    @DataAmount
+    public long responseBytes;
+}
@@ -0,0 +1,29 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Processamento de um frame do Pusher no thread do WebSocket
+ * Para send-commands inclui o parse dos IDs e a reserva no ledger
+ */
+@Name("mgtleaderos.PusherFrame")
+@Label("Frame do Pusher")
+@Category({"LeaderOS", "Connect"})
+@Description("Processamento de um frame recebido pelo WebSocket do LeaderOS Connect")
+public class PusherFrameEvent extends Event {
+
+    @Label("Evento")
+    public String event;
+
+    @Label("Tamanho")
+    @DataAmount
+    public long bytes;
+
+    @Label("IDs de comando")
+    public int commandIds;
+}
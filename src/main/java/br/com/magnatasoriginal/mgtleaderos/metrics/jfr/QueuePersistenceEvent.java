@@ -0,0 +1,37 @@
+package br.com.magnatasoriginal.mgtleaderos.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Gravação da fila de comandos offline no disco, no executor da fila
+ * Operações: append (registro no journal), fsync (em grupo) e snapshot (nova geração)
+ */
+@Name("mgtleaderos.QueuePersistence")
+@Label("Persistência da fila de comandos")
+@Category({"LeaderOS", "Fila"})
+@Description("Escrita do journal, fsync em grupo ou snapshot da fila de comandos offline")
+public class QueuePersistenceEvent extends Event {
+
+    @Label("Operação")
+    public String operation;
+
+    @Label("Jogador")
+    @Description("Vazio no fsync e no snapshot")
+    public String player;
+
+    @Label("Comandos")
+    public int commands;
+
+    @Label("Registros")
+    @Description("Mutações cobertas (fsync) ou jogadores gravados (snapshot)")
+    public int records;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,218 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Política de comandos compilada: decide se um comando recebido do LeaderOS pode rodar
+ *
+ * As regras são compiladas uma vez (na carga da configuração) numa trie sem diferenciar
+ * maiúsculas. Cada regra é uma sequência de palavras: a primeira é o comando raiz e as
+ * seguintes são argumentos, com "*" valendo qualquer palavra. Uma regra vale como prefixo
+ * de palavras inteiras:
+ * - "op" pega "op Steve" mas não "opa"
+ * - "lp user * permission" pega "lp user Steve permission set x.y"
+ *
+ * O comando raiz é comparado sem o namespace (bukkit:ban, minecraft:stop, essentials:ban
+ * viram ban e stop). Em DENYLIST o comando é bloqueado se alguma regra casar; em ALLOWLIST
+ * só roda se alguma regra casar
+ *
+ * isAllowed percorre o comando uma única vez, sem alocar (sem split, substring ou
+ * toLowerCase), e a instância é imutável e segura entre threads
+ */
+public final class CommandPolicy {
+
+    public enum Mode {
+        DENYLIST,
+        ALLOWLIST
+    }
+
+    /**
+     * Blacklist do plugin original
+     */
+    public static final List<String> DEFAULT_DENYLIST = List.of("op", "deop", "stop", "restart", "reload", "ban");
+
+    private static final String WILDCARD = "*";
+
+    private final Mode mode;
+    private final Node root;
+    private final int ruleCount;
+
+    /**
+     * Nó da trie: filhos por caractere (vetores ordenados) e um filho curinga para uma palavra inteira
+     */
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Node any;
+        // Uma regra termina neste nó (vale só numa fronteira de palavra)
+        private boolean terminal;
+
+        private Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node childOrCreate(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = key;
+            newChildren[insert] = new Node();
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insert];
+        }
+    }
+
+    private CommandPolicy(Mode mode, Node root, int ruleCount) {
+        this.mode = mode;
+        this.root = root;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Compila as regras numa política
+     * @param mode DENYLIST bloqueia o que casar; ALLOWLIST libera apenas o que casar
+     * @param rules Regras no formato "raiz [argumento|*]..." (barra inicial e namespace são ignorados)
+     */
+    public static CommandPolicy compile(Mode mode, List<String> rules) {
+        Node root = new Node();
+        int count = 0;
+        for (String rule : rules) {
+            String[] words = rule.trim().toLowerCase(Locale.ROOT).split("\\s+");
+            if (words.length == 0 || words[0].isEmpty()) {
+                continue;
+            }
+            words[0] = stripNamespace(words[0].startsWith("/") ? words[0].substring(1) : words[0]);
+
+            Node node = root;
+            for (int w = 0; w < words.length; w++) {
+                if (w > 0) {
+                    node = node.childOrCreate(' ');
+                }
+                if (words[w].equals(WILDCARD)) {
+                    if (node.any == null) {
+                        node.any = new Node();
+                    }
+                    node = node.any;
+                } else {
+                    for (int i = 0; i < words[w].length(); i++) {
+                        node = node.childOrCreate(words[w].charAt(i));
+                    }
+                }
+            }
+            node.terminal = true;
+            count++;
+        }
+        return new CommandPolicy(mode, root, count);
+    }
+
+    private static String stripNamespace(String word) {
+        int colon = word.lastIndexOf(':');
+        return colon >= 0 ? word.substring(colon + 1) : word;
+    }
+
+    /**
+     * Verifica se o comando pode ser executado
+     * @param command Comando como veio da API (com ou sem barra, com ou sem namespace)
+     */
+    public boolean isAllowed(String command) {
+        boolean matched = matches(command);
+        return mode == Mode.DENYLIST ? !matched : matched;
+    }
+
+    /**
+     * Verifica se alguma regra casa com o comando, numa única passada e sem alocação
+     */
+    public boolean matches(String command) {
+        int length = command.length();
+        int start = 0;
+        while (start < length && command.charAt(start) == ' ') {
+            start++;
+        }
+        if (start < length && command.charAt(start) == '/') {
+            start++;
+        }
+
+        // Pular o namespace do comando raiz (tudo até o último ':' da primeira palavra)
+        int rootEnd = start;
+        while (rootEnd < length && command.charAt(rootEnd) != ' ') {
+            rootEnd++;
+        }
+        for (int i = rootEnd - 1; i >= start; i--) {
+            if (command.charAt(i) == ':') {
+                start = i + 1;
+                break;
+            }
+        }
+
+        return match(root, command, start, length);
+    }
+
+    private static boolean match(Node node, String command, int position, int length) {
+        // Curinga: consome a palavra inteira a partir do início dela
+        if (node.any != null) {
+            int end = position;
+            while (end < length && command.charAt(end) != ' ') {
+                end++;
+            }
+            if (end > position && matchAfterWord(node.any, command, end, length)) {
+                return true;
+            }
+        }
+
+        Node current = node;
+        int i = position;
+        while (i < length) {
+            char c = command.charAt(i);
+            if (c == ' ') {
+                return matchAfterWord(current, command, i, length);
+            }
+            current = current.child(Character.toLowerCase(c));
+            if (current == null) {
+                return false;
+            }
+            i++;
+        }
+        return current.terminal;
+    }
+
+    /**
+     * Fronteira de palavra: casa se uma regra termina aqui ou se continua na próxima palavra
+     */
+    private static boolean matchAfterWord(Node node, String command, int position, int length) {
+        if (node.terminal) {
+            return true;
+        }
+        if (position >= length) {
+            return false;
+        }
+        Node separator = node.child(' ');
+        if (separator == null) {
+            return false;
+        }
+        int next = position;
+        while (next < length && command.charAt(next) == ' ') {
+            next++;
+        }
+        return next < length && match(separator, command, next, length);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+}
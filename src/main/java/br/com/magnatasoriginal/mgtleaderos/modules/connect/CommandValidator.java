@@ -0,0 +1,585 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.api.HttpTransport;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryMetrics;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTraces;
+import br.com.magnatasoriginal.mgtleaderos.metrics.jfr.CommandValidationEvent;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.DeliveryLedger;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Pipeline assíncrono de validação dos comandos recebidos pelo WebSocket
+ *
+ * A thread do WebSocket apenas reserva os IDs no ledger e os acumula num lote em formação.
+ * O lote é fechado quando a janela de batchWindowMs (contada a partir do primeiro ID)
+ * termina ou quando atinge maxBatchSize IDs; em rajadas de vendas, dezenas de eventos
+ * viram uma única requisição, e a latência extra de cada entrega fica limitada à janela.
+ * Os comandos da resposta são separados por jogador antes da entrega
+ *
+ * O POST para /api/command-logs/validate é feito com sendAsync pelo HttpTransport
+ * compartilhado, com no máximo MAX_CONCURRENT_VALIDATIONS requisições simultâneas.
+ * O resultado é entregue no thread do servidor. Assim um site lento nunca impede o processamento de outros frames
+ * do Pusher (incluindo pings)
+ *
+ * Os lotes validados ficam numa fila do validador até o thread do servidor entregá-los ao
+ * Handler. O shutdown espera as validações em andamento (até SHUTDOWN_TIMEOUT_MS) e entrega
+ * essa fila na própria thread chamadora, enquanto a fila offline e o executor do módulo
+ * ainda estão abertos; respostas que chegam depois disso têm os IDs liberados no ledger.
+ * Se o Handler não conseguir guardar os comandos (future com erro), o commit dos IDs do
+ * lote é desfeito no ledger
+ *
+ * Cada lote abre um DeliveryTrace (consultado pelo /leaderos trace) com os IDs, o horário da
+ * validação ou o motivo da falha; os comandos de cada jogador seguem com o seu PlayerDelivery
+ */
+public class CommandValidator {
+    private static final int MAX_CONCURRENT_VALIDATIONS = 4;
+    // Espera máxima pelas validações em andamento no shutdown
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final String serverToken;
+    private final DeliveryLedger ledger;
+    private final Executor serverExecutor;
+    private final Handler handler;
+    private final HttpTransport transport = HttpTransport.shared();
+    private final DeliveryTraces traces = DeliveryTraces.shared();
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT_VALIDATIONS);
+    private final Queue<Batch> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    // Alterados só com batchLock (setBatching); lidos no submit, também com batchLock
+    private long batchWindowMs;
+    private int maxBatchSize;
+    private final ScheduledExecutorService batchTimer;
+    // Lote em formação (protegido por batchLock)
+    private final Object batchLock = new Object();
+    private List<String> collecting = new ArrayList<>();
+    private long collectingSince;
+    private DeliveryTrace collectingTrace;
+    private ScheduledFuture<?> flushTask;
+    private final AtomicLong requestsSent = new AtomicLong();
+    private final AtomicLong idsSent = new AtomicLong();
+    private volatile boolean shutdown = false;
+    // Lotes validados aguardando o thread do servidor; closed impede novos (deliveryLock)
+    private final Object deliveryLock = new Object();
+    private final Queue<Runnable> deliveries = new ConcurrentLinkedQueue<>();
+    private boolean closed = false;
+
+    /**
+     * Recebe os comandos validados de um jogador, no thread do servidor
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param commands Comandos validados, na ordem recebida
+         * @param username Jogador dono dos comandos
+         * @param delivery Entrega do jogador no trace do lote (fila e execução)
+         * @return Completa quando os comandos estão guardados (executor ou fila offline);
+         *         com erro, os IDs do lote voltam a ficar disponíveis no ledger
+         */
+        CompletableFuture<Void> accept(List<String> commands, String username, DeliveryTrace.PlayerDelivery delivery);
+    }
+
+    /**
+     * Lote de IDs reservados aguardando validação
+     */
+    private static final class Batch {
+        private final List<String> logIds;
+        // System.nanoTime() da chegada do primeiro ID do lote (métrica da etapa queued)
+        private final long receivedAt;
+        private final DeliveryTrace trace;
+
+        private Batch(List<String> logIds, long receivedAt, DeliveryTrace trace) {
+            this.logIds = logIds;
+            this.receivedAt = receivedAt;
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * Construtor do CommandValidator
+     * @param baseUrl URL base do site (ex: https://servidormagnatas.com.br)
+     * @param apiKey API Key do LeaderOS
+     * @param serverToken Token do servidor
+     * @param ledger Ledger de entregas ou null para validar sem deduplicação
+     * @param serverExecutor Executor do thread do servidor, que recebe os comandos validados
+     * @param handler Recebe (comandos, username, entrega) no thread do servidor, uma vez por jogador
+     * @param batchWindowMs Tempo máximo que um ID espera por outros antes de ser validado (0 = sem espera)
+     * @param maxBatchSize Quantidade máxima de IDs numa requisição
+     */
+    public CommandValidator(String baseUrl, String apiKey, String serverToken, DeliveryLedger ledger, Executor serverExecutor,
+                            Handler handler, long batchWindowMs, int maxBatchSize) {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.serverToken = serverToken;
+        this.ledger = ledger;
+        this.serverExecutor = serverExecutor;
+        this.handler = handler;
+        this.batchWindowMs = Math.max(0, batchWindowMs);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+
+        this.batchTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LeaderOS-Validator-Batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Enfileira IDs de command-log para validação sem bloquear a thread chamadora
+     * Os IDs de eventos diferentes podem ir no mesmo lote: todos são entregues pelo mesmo
+     * Handler (do validador), então não importa qual conexão recebeu cada evento
+     * @param logIds IDs recebidos no evento send-commands
+     */
+    public void submit(List<String> logIds) {
+        if (shutdown) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Validador finalizado, ignorando {} comandos", logIds.size());
+            return;
+        }
+
+        // Deduplicar pelo ledger antes de validar: IDs já entregues (evento reenviado,
+        // replay após reconexão) não são validados nem executados de novo
+        List<String> claimedIds = ledger != null ? ledger.claim(logIds) : logIds;
+        if (claimedIds.isEmpty()) {
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Todos os {} comandos do evento já foram entregues, ignorando", logIds.size());
+            return;
+        }
+
+        List<Batch> full = new ArrayList<>();
+        synchronized (batchLock) {
+            for (String logId : claimedIds) {
+                if (collecting.isEmpty()) {
+                    collectingSince = System.nanoTime();
+                    collectingTrace = traces.start();
+                }
+                collecting.add(logId);
+                traces.addKey(collectingTrace, logId);
+                if (collecting.size() >= maxBatchSize) {
+                    full.add(takeCollecting());
+                }
+            }
+            if (!collecting.isEmpty() && flushTask == null) {
+                if (batchWindowMs == 0) {
+                    full.add(takeCollecting());
+                } else {
+                    flushTask = batchTimer.schedule(this::flush, batchWindowMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        if (!full.isEmpty()) {
+            pending.addAll(full);
+            dispatch();
+        }
+    }
+
+    /**
+     * Fecha o lote em formação quando a janela termina
+     */
+    private void flush() {
+        Batch batch;
+        synchronized (batchLock) {
+            flushTask = null;
+            if (collecting.isEmpty()) {
+                return;
+            }
+            batch = takeCollecting();
+        }
+        pending.add(batch);
+        dispatch();
+    }
+
+    /**
+     * Retira o lote em formação e cancela a janela pendente (chamado com batchLock)
+     */
+    private Batch takeCollecting() {
+        Batch batch = new Batch(collecting, collectingSince, collectingTrace);
+        collecting = new ArrayList<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    /**
+     * Altera a janela e o tamanho dos lotes sem recriar o validador (reload da configuração)
+     * O lote em formação mantém a janela já agendada; os próximos usam os novos valores
+     */
+    public void setBatching(long batchWindowMs, int maxBatchSize) {
+        synchronized (batchLock) {
+            this.batchWindowMs = Math.max(0, batchWindowMs);
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+        }
+    }
+
+    /**
+     * Inicia quantos lotes couberem no limite de concorrência
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Batch batch = pending.poll();
+            if (batch == null) {
+                permits.release();
+                return;
+            }
+            active.incrementAndGet();
+            validate(batch);
+        }
+    }
+
+    private void validate(Batch batch) {
+        HttpRequest request;
+        try {
+            request = buildRequest(batch.logIds);
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao montar validação: " + e.getMessage());
+            batch.trace.fail("erro ao montar validação: " + e.getMessage());
+            finish(batch, false);
+            return;
+        }
+
+        requestsSent.incrementAndGet();
+        idsSent.addAndGet(batch.logIds.size());
+        MGTLeaderos.LOGGER.info("[LeaderOS Connect] Validando {} comandos via API...", batch.logIds.size());
+        long start = System.nanoTime();
+        CommandValidationEvent event = new CommandValidationEvent();
+        event.begin();
+        transport.sendBufferedAsync(HttpTransport.Endpoint.COMMAND_VALIDATE, request)
+            .whenComplete((response, error) -> {
+                boolean committed = false;
+                try {
+                    if (error != null) {
+                        MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao validar comandos via API: " + error.getMessage());
+                        batch.trace.fail("erro ao validar via API: " + error.getMessage());
+                    } else {
+                        committed = handleResponse(batch, response, event);
+                    }
+                } catch (Exception e) {
+                    MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao processar validação: " + e.getMessage());
+                    batch.trace.fail("erro ao processar validação: " + e.getMessage());
+                    if (MGTLeaderos.LOGGER.isDebugEnabled()) {
+                        MGTLeaderos.LOGGER.error("[LeaderOS Connect] Stack trace detalhado:", e);
+                    }
+                } finally {
+                    DeliveryMetrics.record(DeliveryMetrics.Stage.VALIDATE, start);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.batchSize = batch.logIds.size();
+                        event.requestBytes = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+                        event.statusCode = response != null ? response.statusCode() : 0;
+                        event.success = committed;
+                        event.commit();
+                    }
+                    finish(batch, committed);
+                }
+            });
+    }
+
+    /**
+     * Form data igual ao plugin original: token + commands[i] (não JSON!)
+     */
+    private HttpRequest buildRequest(List<String> logIds) {
+        StringBuilder formData = new StringBuilder();
+        formData.append("token=").append(URLEncoder.encode(serverToken, StandardCharsets.UTF_8));
+        for (int i = 0; i < logIds.size(); i++) {
+            formData.append("&commands[").append(i).append("]=")
+                .append(URLEncoder.encode(logIds.get(i), StandardCharsets.UTF_8));
+        }
+
+        return transport.request(HttpTransport.Endpoint.COMMAND_VALIDATE, URI.create(baseUrl + "/api/command-logs/validate"))
+            .header("X-Api-Key", apiKey)
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(formData.toString()))
+            .build();
+    }
+
+    /**
+     * Processa a resposta da validação e entrega os comandos de cada jogador ao thread do servidor
+     * O corpo já está inteiro em memória (sendBufferedAsync), então a leitura não bloqueia a
+     * thread do transporte; ele é lido com JsonReader, sem montar a String nem a árvore JSON
+     * @param event Evento JFR do lote (recebe jogadores e bytes lidos)
+     * @return true se a entrega foi registrada no ledger
+     */
+    private boolean handleResponse(Batch batch, HttpResponse<InputStream> response, CommandValidationEvent event) throws IOException {
+        Map<String, List<String>> commandsByPlayer;
+        CountingInputStream counted = new CountingInputStream(HttpTransport.body(response));
+        try (Reader body = new InputStreamReader(counted, StandardCharsets.UTF_8)) {
+            int responseCode = response.statusCode();
+            if (responseCode != 200 && responseCode != 201 && responseCode != 202) {
+                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao validar comandos. Código: {}", responseCode);
+                batch.trace.fail("validação recusada pela API (HTTP " + responseCode + ")");
+                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Resposta de erro: {}", new BufferedReader(body).lines().collect(Collectors.joining()));
+                return false;
+            }
+
+            // Parsear resposta e separar os comandos por username, mantendo a ordem recebida
+            commandsByPlayer = readValidatedCommands(body);
+        } finally {
+            event.responseBytes = counted.count;
+        }
+        event.players = commandsByPlayer.size();
+
+        synchronized (deliveryLock) {
+            if (closed) {
+                // O shutdown já entregou a fila: ninguém mais recebe este lote
+                batch.trace.fail("validador finalizado durante a validação");
+                return false;
+            }
+            // Registrar a entrega antes de executar: se o servidor cair depois daqui,
+            // os mesmos IDs nunca serão executados de novo
+            if (ledger != null) {
+                ledger.commit(batch.logIds);
+            }
+            batch.trace.validated();
+            deliveries.add(() -> deliver(batch, commandsByPlayer));
+        }
+        try {
+            serverExecutor.execute(this::runDeliveries);
+        } catch (RejectedExecutionException e) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Thread do servidor indisponível, lote entregue no shutdown do validador");
+        }
+        return true;
+    }
+
+    /**
+     * Entrega os lotes validados ao Handler, na ordem da validação
+     * Chamado no thread do servidor (ou pelo shutdown)
+     */
+    private void runDeliveries() {
+        Runnable delivery;
+        while ((delivery = deliveries.poll()) != null) {
+            delivery.run();
+        }
+    }
+
+    /**
+     * Entrega os comandos de cada jogador do lote ao Handler
+     * Se algum não puder ser guardado, o commit do lote inteiro é desfeito no ledger
+     */
+    private void deliver(Batch batch, Map<String, List<String>> commandsByPlayer) {
+        if (commandsByPlayer.isEmpty()) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Comandos validados mas sem username ou lista vazia");
+            batch.trace.fail("validação sem comandos ou sem username");
+            return;
+        }
+
+        List<CompletableFuture<Void>> stored = new ArrayList<>(commandsByPlayer.size());
+        commandsByPlayer.forEach((username, commands) -> {
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Comandos validados para jogador: {}", username);
+            DeliveryTrace.PlayerDelivery delivery = traces.addPlayer(batch.trace, username, commands.size());
+            try {
+                stored.add(handler.accept(commands, username, delivery));
+            } catch (RuntimeException e) {
+                stored.add(CompletableFuture.failedFuture(e));
+            }
+            DeliveryMetrics.record(DeliveryMetrics.Stage.QUEUED, batch.receivedAt);
+        });
+        CompletableFuture.allOf(stored.toArray(new CompletableFuture[0])).whenComplete((result, error) -> {
+            if (error != null && ledger != null) {
+                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Comandos de {} IDs não puderam ser guardados, liberando no ledger: {}",
+                    batch.logIds.size(), error.getMessage());
+                ledger.revoke(batch.logIds);
+            }
+        });
+    }
+
+    /**
+     * Lê a resposta de /api/command-logs/validate no formato
+     * {"commands": [{"command": "...", "username": "..."}, ...]}
+     * @return Comandos agrupados por username, na ordem recebida
+     */
+    public static Map<String, List<String>> readValidatedCommands(Reader source) throws IOException {
+        Map<String, List<String>> commandsByPlayer = new LinkedHashMap<>();
+        JsonReader reader = new JsonReader(source);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("commands") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String command = null;
+                String username = "";
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else if (name.equals("command")) {
+                        command = reader.nextString();
+                    } else if (name.equals("username")) {
+                        username = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (command == null) {
+                    continue;
+                }
+                if (username.isEmpty()) {
+                    MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Comando validado sem username, ignorando: {}", command);
+                    continue;
+                }
+                commandsByPlayer.computeIfAbsent(username, k -> new ArrayList<>()).add(command);
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return commandsByPlayer;
+    }
+
+    /**
+     * Conta os bytes lidos do corpo da resposta (evento JFR), sem copiar nada
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Libera a vaga do lote e inicia o próximo da fila
+     * Se a validação falhou, os IDs voltam a ficar disponíveis para uma nova tentativa
+     */
+    private void finish(Batch batch, boolean committed) {
+        if (!committed) {
+            // Motivo genérico só quando nenhuma etapa registrou o motivo real
+            if (!batch.trace.isFailed()) {
+                batch.trace.fail("validação não concluída");
+            }
+            if (ledger != null) {
+                ledger.release(batch.logIds);
+            }
+        }
+        active.decrementAndGet();
+        permits.release();
+        if (!shutdown) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Quantidade de validações em andamento
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Quantidade de lotes aguardando uma vaga
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Média de IDs por requisição de validação
+     */
+    public double getAverageBatchSize() {
+        long requests = requestsSent.get();
+        return requests > 0 ? (double) idsSent.get() / requests : 0;
+    }
+
+    public long getRequestsSent() {
+        return requestsSent.get();
+    }
+
+    /**
+     * Finaliza o validador
+     * Lotes que não chegaram a ser enviados são liberados no ledger; as validações em andamento
+     * têm até SHUTDOWN_TIMEOUT_MS para terminar, e os lotes validados são entregues ao Handler
+     * aqui mesmo. Deve ser chamado no thread do servidor, antes de fechar a fila offline
+     */
+    public void shutdown() {
+        shutdown = true;
+        batchTimer.shutdownNow();
+        synchronized (batchLock) {
+            if (!collecting.isEmpty()) {
+                collectingTrace.fail("validador finalizado antes da validação");
+                if (ledger != null) {
+                    ledger.release(collecting);
+                }
+            }
+            collecting = new ArrayList<>();
+        }
+        Batch batch;
+        while ((batch = pending.poll()) != null) {
+            batch.trace.fail("validador finalizado antes da validação");
+            if (ledger != null) {
+                ledger.release(batch.logIds);
+            }
+        }
+
+        // Todas as vagas livres = nenhuma validação em andamento
+        boolean idle = false;
+        try {
+            idle = permits.tryAcquire(MAX_CONCURRENT_VALIDATIONS, SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!idle) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS Connect] {} validações ainda em andamento ao finalizar; os IDs serão liberados quando terminarem", active.get());
+        }
+        synchronized (deliveryLock) {
+            closed = true;
+        }
+        runDeliveries();
+    }
+}
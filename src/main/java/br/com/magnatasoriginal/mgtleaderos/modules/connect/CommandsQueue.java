@@ -1,147 +1,563 @@
 package br.com.magnatasoriginal.mgtleaderos.modules.connect;
 
 import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.metrics.jfr.QueuePersistenceEvent;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.CommandsJournal;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.PendingCommandsIndex;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.QueueSnapshotStore;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
 /**
  * Gerenciador de fila de comandos pendentes
  * Armazena comandos para jogadores offline e executa quando entram
  * Implementação fiel ao plugin Bukkit/Spigot original
  *
+ * Os comandos ficam num PendingCommandsIndex: busca por nome (sem diferenciar maiúsculas)
+ * ou por UUID em O(1). O UUID é gravado junto com os comandos quando conhecido.
+ *
+ * Concorrência: as mutações são aplicadas em memória na própria thread chamadora, no
+ * bucket do jogador (jogadores diferentes não disputam lock), e o registro do journal é
+ * enfileirado no executor ainda dentro do bucket, preservando a ordem por jogador.
+ * Cada mutação recebe um número de sequência; o snapshot guarda até qual sequência já
+ * contém. Uma mutação aplicada antes da cópia do snapshot mas gravada depois dele vai para
+ * o journal da geração anterior, que fica aberto até a próxima troca: se o snapshot novo
+ * for descartado como corrompido, a recuperação parte do anterior e reaplica esse journal.
+ * Leituras (getCommands, getEntry) não usam lock e veem sempre listas imutáveis.
+ *
+ * Persistência: snapshots binários com checksum em gerações (QueueSnapshotStore) + um journal
+ * append-only por geração (CommandsJournal). Cada mutação grava só o próprio registro,
+ * o fsync é feito em grupo e o journal é compactado num novo snapshot periodicamente.
+ *
+ * Uma mutação é considerada confirmada quando o future devolvido por addCommands /
+ * removeCommands completa, ou seja, depois do fsync que cobre o registro. Orçamento de
+ * latência: SYNC_INTERVAL_MS + SYNC_BUDGET_MS por mutação; fsyncs e snapshots acima do
+ * orçamento são registrados no log como aviso. Cada append, fsync e snapshot também gera
+ * um evento JFR (mgtleaderos.QueuePersistence) quando há uma gravação ativa
+ *
  * @author Conversão de Bukkit para NeoForge
  */
 public class CommandsQueue {
-    private final File queueFile;
+    private static final String BASE_NAME = "commands_queue";
+    // Janela do fsync em grupo: mutações dentro dela compartilham um único force()
+    private static final long SYNC_INTERVAL_MS = 50;
+    // Orçamento de tempo para um fsync do journal e para a escrita de um snapshot
+    private static final long SYNC_BUDGET_MS = 50;
+    private static final long SNAPSHOT_BUDGET_MS = 500;
+    // Quantidade de registros no journal que dispara a compactação em snapshot
+    private static final int COMPACT_THRESHOLD = 1000;
+    // Espera máxima pela compactação final no shutdown
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final File dataFolder;
+    private final QueueSnapshotStore snapshotStore;
     private final Gson gson;
-    private final ExecutorService executor;
-    private Map<String, List<String>> commandsMap;
+    private final ScheduledExecutorService executor;
+    private final List<CompletableFuture<Void>> pendingAcks = new ArrayList<>();
+    private final PendingCommandsIndex commandsIndex = new PendingCommandsIndex();
+    // Mutações usam o lock de leitura (compartilhado); só a cópia do snapshot usa o de escrita
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final AtomicLong sequence = new AtomicLong();
+    // Última sequência contida no snapshot atual (acessado apenas no executor)
+    private long snapshotSequence = 0;
+    private CommandsJournal journal;
+    // Journal e sequência da geração anterior, para as mutações que o snapshot atual já contém
+    private CommandsJournal previousJournal;
+    private long previousSnapshotSequence = 0;
+    private long generation = 0;
+    private boolean syncScheduled = false;
 
     /**
      * Construtor do CommandsQueue
      * @param dataFolder Pasta de dados do mod
      */
     public CommandsQueue(String dataFolder) {
-        this.queueFile = new File(dataFolder, "commands_queue.json");
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.executor = Executors.newSingleThreadExecutor();
-        this.commandsMap = new HashMap<>();
+        this.dataFolder = new File(dataFolder);
+        this.gson = new GsonBuilder().create();
+        this.snapshotStore = new QueueSnapshotStore(this.dataFolder, BASE_NAME);
+        this.executor = Executors.newSingleThreadScheduledExecutor();
 
-        // Criar arquivo se não existir
-        if (!queueFile.exists()) {
-            try {
-                queueFile.getParentFile().mkdirs();
-                queueFile.createNewFile();
-                saveQueue();
-                MGTLeaderos.LOGGER.info("[LeaderOS] Arquivo de fila de comandos criado: " + queueFile.getAbsolutePath());
+        // Recuperar a última geração válida e abrir uma geração nova a partir dela
+        loadQueue();
+    }
+
+    /**
+     * Recupera a fila a partir da geração válida mais recente
+     * Se o snapshot mais novo estiver corrompido, volta para o anterior e reaplica os
+     * journals de todas as gerações seguintes, então nenhuma mutação confirmada se perde
+     */
+    private void loadQueue() {
+        List<Long> generations = snapshotStore.generations();
+        long latest = generations.isEmpty() ? 0 : generations.get(generations.size() - 1);
+        boolean recovered = false;
+
+        for (int i = generations.size() - 1; i >= 0 && !recovered; i--) {
+            long candidate = generations.get(i);
+            if (!snapshotStore.read(candidate, commandsIndex)) {
+                continue;
+            }
+
+            recovered = true;
+            for (long journalGeneration : generations.subList(i, generations.size())) {
+                replayJournal(snapshotStore.journalFile(journalGeneration));
+            }
+            if (candidate != latest) {
+                MGTLeaderos.LOGGER.warn("[LeaderOS] Fila de comandos recuperada da geração " + candidate + " (mais recente: " + latest + ")");
+            }
+        }
+
+        boolean migratedLegacy = false;
+        if (!recovered) {
+            if (!generations.isEmpty()) {
+                MGTLeaderos.LOGGER.error("[LeaderOS] Nenhum snapshot válido da fila de comandos encontrado! Reaplicando apenas os journals disponíveis");
+                for (long journalGeneration : generations) {
+                    replayJournal(snapshotStore.journalFile(journalGeneration));
+                }
+            } else {
+                migratedLegacy = loadLegacyQueue();
+            }
+        }
+
+        MGTLeaderos.LOGGER.info("[LeaderOS] Fila de comandos carregada: " + commandsIndex.size() + " jogadores com comandos pendentes");
+
+        generation = latest;
+        if (!rollGeneration()) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Não foi possível abrir uma nova geração da fila de comandos, mutações ficarão só em memória");
+        } else if (migratedLegacy) {
+            new File(dataFolder, BASE_NAME + ".json").delete();
+            new File(dataFolder, BASE_NAME + ".journal").delete();
+            MGTLeaderos.LOGGER.info("[LeaderOS] Fila de comandos migrada para o formato com gerações");
+        }
+    }
+
+    /**
+     * Carrega o formato antigo (commands_queue.json + commands_queue.journal)
+     * Os arquivos são removidos depois que a primeira geração é gravada
+     * @return true se algum arquivo antigo foi encontrado
+     */
+    private boolean loadLegacyQueue() {
+        File legacyFile = new File(dataFolder, BASE_NAME + ".json");
+        File legacyJournal = new File(dataFolder, BASE_NAME + ".journal");
+
+        if (legacyFile.exists() && legacyFile.length() > 0) {
+            try (FileReader reader = new FileReader(legacyFile, StandardCharsets.UTF_8)) {
+                Type type = new TypeToken<Map<String, List<String>>>() {}.getType();
+                Map<String, List<String>> loaded = gson.fromJson(reader, type);
+                if (loaded != null) {
+                    loaded.forEach((player, commands) -> commandsIndex.add(player, null, commands));
+                }
             } catch (Exception e) {
-                MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao criar arquivo de fila de comandos: " + e.getMessage());
+                MGTLeaderos.LOGGER.error("[LeaderOS] Arquivo antigo da fila de comandos ilegível, mantido como .corrupt: " + e.getMessage());
+                legacyFile.renameTo(new File(dataFolder, legacyFile.getName() + ".corrupt"));
             }
         }
+        replayJournal(legacyJournal);
 
-        // Carregar fila existente
-        loadQueue();
+        return legacyFile.exists() || legacyJournal.exists();
     }
 
     /**
-     * Carrega a fila de comandos do arquivo JSON
+     * Reaplica um journal sobre o mapa em memória
      */
-    private void loadQueue() {
-        try (FileReader reader = new FileReader(queueFile)) {
-            Type type = new TypeToken<Map<String, List<String>>>() {}.getType();
-            Map<String, List<String>> loaded = gson.fromJson(reader, type);
-            if (loaded != null) {
-                commandsMap = loaded;
-                MGTLeaderos.LOGGER.info("[LeaderOS] Fila de comandos carregada: " + commandsMap.size() + " jogadores com comandos pendentes");
+    private void replayJournal(File file) {
+        try {
+            int applied = CommandsJournal.replay(file, commandsIndex);
+            if (applied > 0) {
+                MGTLeaderos.LOGGER.info("[LeaderOS] Journal " + file.getName() + " reaplicado: " + applied + " registros");
+            }
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao reaplicar journal " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Grava o estado atual como uma nova geração e troca para o journal dela
+     * O journal antigo só deixa de ser usado depois que o snapshot novo está no disco
+     * @return true se a nova geração foi gravada
+     */
+    private boolean rollGeneration() {
+        long next = generation + 1;
+        long start = System.nanoTime();
+        QueuePersistenceEvent event = new QueuePersistenceEvent();
+        event.begin();
+
+        // Cópia consistente: nenhuma mutação fica pela metade entre o estado e a sequência
+        List<PendingCommandsIndex.Entry> entries;
+        long upTo;
+        stateLock.writeLock().lock();
+        try {
+            entries = commandsIndex.entries();
+            upTo = sequence.get();
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+
+        try {
+            long bytes = snapshotStore.write(next, entries);
+            CommandsJournal nextJournal = new CommandsJournal(snapshotStore.journalFile(next));
+            nextJournal.open();
+
+            closeJournal(previousJournal);
+            previousJournal = journal;
+            previousSnapshotSequence = snapshotSequence;
+            journal = nextJournal;
+            generation = next;
+            snapshotSequence = upTo;
+            snapshotStore.prune(generation);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = "snapshot";
+                event.player = "";
+                event.records = entries.size();
+                event.bytes = bytes;
+                event.commit();
+            }
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao gravar snapshot da fila de comandos: " + e.getMessage());
+            return false;
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (elapsedMs > SNAPSHOT_BUDGET_MS) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS] Snapshot da fila de comandos levou " + elapsedMs + "ms (orçamento: " + SNAPSHOT_BUDGET_MS + "ms)");
+        }
+        return true;
+    }
+
+    /**
+     * Registra a mutação no journal, agenda o fsync em grupo e compacta se necessário
+     * Deve ser chamado apenas no executor
+     */
+    private void journalMutation(long seq, String playerName, int commandCount, JournalWrite write, CompletableFuture<Void> ack) {
+        CommandsJournal target = journal;
+        if (seq <= snapshotSequence) {
+            if (seq <= previousSnapshotSequence || previousJournal == null) {
+                // Já está em dois snapshots (ou não há geração anterior para recuperar)
+                ack.complete(null);
+                return;
+            }
+            // Está no snapshot atual, mas não no anterior nem em nenhum journal: gravar no
+            // journal da geração anterior, o que é reaplicado se o snapshot atual for descartado
+            target = previousJournal;
+        }
+
+        pendingAcks.add(ack);
+        try {
+            QueuePersistenceEvent event = new QueuePersistenceEvent();
+            event.begin();
+            long before = target.getBytesWritten();
+            write.run(target);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = "append";
+                event.player = playerName;
+                event.commands = commandCount;
+                event.records = 1;
+                event.bytes = target.getBytesWritten() - before;
+                event.commit();
+            }
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao gravar journal da fila de comandos: " + e.getMessage());
+            // Sem journal confiável, grava o estado completo para não perder a mutação
+            compact();
+            return;
+        }
+
+        if (journal.getRecordCount() >= COMPACT_THRESHOLD) {
+            compact();
+        } else if (!syncScheduled) {
+            syncScheduled = true;
+            executor.schedule(this::syncJournal, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Faz o fsync de todos os registros acumulados na janela e confirma as mutações
+     */
+    private void syncJournal() {
+        syncScheduled = false;
+        if (pendingAcks.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        QueuePersistenceEvent event = new QueuePersistenceEvent();
+        event.begin();
+        long bytes = journal.getUnsyncedBytes();
+        try {
+            if (previousJournal != null) {
+                bytes += previousJournal.getUnsyncedBytes();
+                previousJournal.sync();
             }
+            journal.sync();
         } catch (Exception e) {
-            MGTLeaderos.LOGGER.warn("[LeaderOS] Não foi possível carregar fila de comandos (arquivo pode estar vazio): " + e.getMessage());
-            commandsMap = new HashMap<>();
+            MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao sincronizar journal da fila de comandos: " + e.getMessage());
+            compact();
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "fsync";
+            event.player = "";
+            event.records = pendingAcks.size();
+            event.bytes = bytes;
+            event.commit();
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (elapsedMs > SYNC_BUDGET_MS) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS] fsync do journal da fila levou " + elapsedMs + "ms (orçamento: " + SYNC_BUDGET_MS + "ms)");
+        }
+        completeAcks(null);
+    }
+
+    /**
+     * Compacta o journal: grava uma nova geração com o estado completo
+     */
+    private void compact() {
+        if (rollGeneration()) {
+            completeAcks(null);
+        } else {
+            completeAcks(new IllegalStateException("Falha ao persistir a fila de comandos"));
+        }
+    }
+
+    /**
+     * Completa os futures das mutações aguardando confirmação
+     */
+    private void completeAcks(Throwable error) {
+        for (CompletableFuture<Void> ack : pendingAcks) {
+            if (error == null) {
+                ack.complete(null);
+            } else {
+                ack.completeExceptionally(error);
+            }
         }
+        pendingAcks.clear();
     }
 
     /**
-     * Salva a fila de comandos no arquivo JSON
+     * Fecha um journal que não recebe mais registros (o close faz o fsync do que faltar)
      */
-    private void saveQueue() {
-        try (FileWriter writer = new FileWriter(queueFile)) {
-            gson.toJson(commandsMap, writer);
+    private void closeJournal(CommandsJournal target) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.close();
         } catch (Exception e) {
-            MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao salvar fila de comandos: " + e.getMessage());
+            MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao fechar journal da fila de comandos: " + e.getMessage());
         }
     }
 
+    @FunctionalInterface
+    private interface JournalWrite {
+        void run(CommandsJournal target) throws Exception;
+    }
+
     /**
      * Adiciona comandos à fila de um jogador
      * @param playerName Nome do jogador
      * @param commands Lista de comandos a adicionar
+     * @return Future completado quando a adição estiver persistida em disco
      */
-    public void addCommands(String playerName, List<String> commands) {
-        executor.execute(() -> {
-            List<String> existingCommands = commandsMap.getOrDefault(playerName, new ArrayList<>());
-            existingCommands.addAll(commands);
-            commandsMap.put(playerName, existingCommands);
-            saveQueue();
-            MGTLeaderos.LOGGER.info("[LeaderOS] Adicionados " + commands.size() + " comandos à fila de " + playerName);
-        });
+    public CompletableFuture<Void> addCommands(String playerName, List<String> commands) {
+        return addCommands(playerName, null, commands);
     }
 
     /**
-     * Obtém os comandos pendentes de um jogador
+     * Adiciona comandos à fila de um jogador, associando o UUID quando conhecido
+     * A adição fica visível imediatamente; o future indica quando ela está em disco
      * @param playerName Nome do jogador
-     * @return Lista de comandos ou null se não houver
+     * @param playerUuid UUID do jogador ou null se desconhecido
+     * @param commands Lista de comandos a adicionar
+     * @return Future completado quando a adição estiver persistida em disco
+     */
+    public CompletableFuture<Void> addCommands(String playerName, UUID playerUuid, List<String> commands) {
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        List<String> added = List.copyOf(commands);
+
+        stateLock.readLock().lock();
+        try {
+            commandsIndex.add(playerName, playerUuid, added, entry -> {
+                long seq = sequence.incrementAndGet();
+                String name = entry.getPlayerName();
+                UUID uuid = entry.getPlayerUuid();
+                persist(() -> journalMutation(seq, name, added.size(), target -> target.appendAdd(name, uuid, added), ack), ack);
+            });
+        } finally {
+            stateLock.readLock().unlock();
+        }
+
+        MGTLeaderos.LOGGER.info("[LeaderOS] Adicionados " + added.size() + " comandos à fila de " + playerName);
+        return ack;
+    }
+
+    /**
+     * Obtém os comandos pendentes de um jogador
+     * @param playerName Nome do jogador (sem diferenciar maiúsculas)
+     * @return Lista imutável de comandos ou null se não houver
      */
     public List<String> getCommands(String playerName) {
-        return commandsMap.get(playerName);
+        PendingCommandsIndex.Entry entry = commandsIndex.get(playerName);
+        return entry != null ? entry.getCommands() : null;
+    }
+
+    /**
+     * Obtém a entrada pendente de um jogador, procurando primeiro pelo UUID e depois pelo nome
+     * @param playerUuid UUID do jogador
+     * @param playerName Nome do jogador
+     * @return Entrada ou null se não houver comandos
+     */
+    public PendingCommandsIndex.Entry getEntry(UUID playerUuid, String playerName) {
+        PendingCommandsIndex.Entry entry = playerUuid != null ? commandsIndex.get(playerUuid) : null;
+        return entry != null ? entry : commandsIndex.get(playerName);
+    }
+
+    /**
+     * Retira todos os comandos pendentes de um jogador em um único passo atômico
+     * Quem recebe a lista é o único responsável por executá-la: uma adição concorrente
+     * ou vai junto nesta lista ou fica na fila para o próximo drain, nunca se perde
+     * @param playerUuid UUID do jogador ou null (tem prioridade sobre o nome)
+     * @param playerName Nome do jogador
+     * @return Comandos retirados (lista vazia se não havia nenhum)
+     */
+    public List<String> drain(UUID playerUuid, String playerName) {
+        PendingCommandsIndex.Entry removed = removeEntry(playerUuid, playerName, new CompletableFuture<>());
+        return removed != null ? removed.getCommands() : List.of();
+    }
+
+    /**
+     * Retira todos os comandos pendentes de um jogador pelo nome
+     * @see #drain(UUID, String)
+     */
+    public List<String> drain(String playerName) {
+        return drain(null, playerName);
     }
 
     /**
      * Remove os comandos da fila de um jogador
      * @param playerName Nome do jogador
+     * @return Future completado quando a remoção estiver persistida em disco
+     */
+    public CompletableFuture<Void> removeCommands(String playerName) {
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        if (removeEntry(null, playerName, ack) == null) {
+            ack.complete(null);
+        }
+        return ack;
+    }
+
+    private PendingCommandsIndex.Entry removeEntry(UUID playerUuid, String playerName, CompletableFuture<Void> ack) {
+        PendingCommandsIndex.Entry removed;
+        stateLock.readLock().lock();
+        try {
+            removed = commandsIndex.remove(playerName, playerUuid, entry -> {
+                long seq = sequence.incrementAndGet();
+                String name = entry.getPlayerName();
+                persist(() -> journalMutation(seq, name, 0, target -> target.appendRemove(name), ack), ack);
+            });
+        } finally {
+            stateLock.readLock().unlock();
+        }
+
+        if (removed != null) {
+            MGTLeaderos.LOGGER.info("[LeaderOS] Comandos de " + removed.getPlayerName() + " removidos da fila");
+        }
+        return removed;
+    }
+
+    /**
+     * Enfileira a gravação no executor; se ele já foi finalizado, a mutação fica só em memória
+     */
+    private void persist(Runnable task, CompletableFuture<Void> ack) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Fila de comandos já finalizada, mutação não será persistida");
+            ack.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Quantidade de jogadores com comandos aguardando o login
+     */
+    public int getPendingPlayerCount() {
+        return commandsIndex.size();
+    }
+
+    /**
+     * Quantidade total de comandos aguardando o login (percorre o índice)
      */
-    public void removeCommands(String playerName) {
-        executor.execute(() -> {
-            commandsMap.remove(playerName);
-            saveQueue();
-            MGTLeaderos.LOGGER.info("[LeaderOS] Comandos de " + playerName + " removidos da fila");
-        });
+    public long getPendingCommandCount() {
+        long[] total = {0};
+        commandsIndex.forEach(entry -> total[0] += entry.getCommands().size());
+        return total[0];
     }
 
     /**
      * Retorna o executor de tarefas assíncronas
-     * @return ExecutorService
+     * @return ScheduledExecutorService
      */
-    public ExecutorService getExecutor() {
+    public ScheduledExecutorService getExecutor() {
         return executor;
     }
 
     /**
      * Finaliza o executor
+     * Compacta o journal antes de fechar para a próxima inicialização ler só o snapshot, e
+     * só retorna com os arquivos fechados (ou após SHUTDOWN_TIMEOUT_SECONDS): uma fila nova
+     * aberta na mesma pasta logo em seguida (reconexão) não pode disputar a geração seguinte
+     * com a compactação final desta
      */
     public void shutdown() {
         if (executor != null && !executor.isShutdown()) {
+            executor.execute(() -> {
+                compact();
+                closeJournal(previousJournal);
+                closeJournal(journal);
+            });
             executor.shutdown();
+            try {
+                if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    MGTLeaderos.LOGGER.error("[LeaderOS] Compactação final da fila de comandos não terminou em " + SHUTDOWN_TIMEOUT_SECONDS + "s");
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                MGTLeaderos.LOGGER.error("[LeaderOS] Interrompido aguardando a compactação final da fila de comandos");
+                return;
+            }
             MGTLeaderos.LOGGER.info("[LeaderOS] Executor de fila de comandos finalizado");
         }
     }
 
     /**
-     * Retorna uma lista dos jogadores com comandos pendentes
-     * @return Lista de nomes de jogadores
+     * Percorre os jogadores com comandos pendentes direto no índice, sem copiar a lista
+     * A iteração é fracamente consistente: roda na thread chamadora e nunca lança
+     * ConcurrentModificationException, mesmo com adições e drains simultâneos
+     * @param action Recebe o nome do jogador e a lista imutável dos seus comandos
      */
-    public List<String> getPlayersWithPendingCommands() {
-        return new ArrayList<>(commandsMap.keySet());
+    public void forEachPlayerWithPendingCommands(BiConsumer<String, List<String>> action) {
+        commandsIndex.forEach(entry -> action.accept(entry.getPlayerName(), entry.getCommands()));
     }
 }
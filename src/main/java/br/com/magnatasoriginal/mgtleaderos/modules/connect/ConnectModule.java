@@ -1,10 +1,20 @@
 package br.com.magnatasoriginal.mgtleaderos.modules.connect;
 
 import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.config.ConfigManager;
+import br.com.magnatasoriginal.mgtleaderos.config.ConfigSnapshot;
+import br.com.magnatasoriginal.mgtleaderos.delivery.DeliveryManager;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
+import br.com.magnatasoriginal.mgtleaderos.metrics.MetricsRegistry;
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.DeliveryLedger;
+import br.com.magnatasoriginal.mgtleaderos.scheduler.DeliveryScheduler;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer; // Corrige import para NeoForge
 
+import java.io.IOException;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -17,17 +27,19 @@ import java.util.concurrent.TimeUnit;
  * @author Conversão de Bukkit para NeoForge
  */
 public class ConnectModule {
-    private SocketClient socketClient;
+    private volatile SocketClient socketClient;
     private String apiKey;
     private String serverToken;
     private String baseUrl; // URL base do site para validação de comandos
     private boolean onlyOnline;
     private ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor();
-    private volatile boolean reconnecting = false;
-    private int reconnectAttempts = 0;
-    private static final int MAX_RECONNECT_ATTEMPTS = 100;
-    private static final int RECONNECT_DELAY_SECONDS = 5;
+    private ReconnectController reconnectController;
     private static CommandsQueue commandsQueue;
+    private DeliveryLedger deliveryLedger;
+    private CommandValidator commandValidator;
+    private TickCommandExecutor commandExecutor;
+    private final OnlinePlayerIndex onlinePlayers = new OnlinePlayerIndex();
+    private volatile CommandPolicy commandPolicy = CommandPolicy.compile(CommandPolicy.Mode.DENYLIST, CommandPolicy.DEFAULT_DENYLIST);
     private final MinecraftServer server;
     private final String configPath;
 
@@ -53,39 +65,247 @@ public class ConnectModule {
         this.apiKey = apiKey;
         this.serverToken = serverToken;
         this.onlyOnline = onlyOnline;
-        reconnecting = false;
-        reconnectAttempts = 0;
         if (socketClient != null) {
             socketClient.disconnect();
             socketClient = null;
         }
-        // Instancia a implementação concreta
-        socketClient = new LeaderOSSocketClient(apiKey, serverToken, onlyOnline, this);
-        socketClient.connect();
         MGTLeaderos.LOGGER.info("[LeaderOS Connect] Inicializando módulo Connect...");
+        // Jogadores já online (reload) entram no índice antes de qualquer entrega
+        if (server != null) {
+            onlinePlayers.rebuild(server.getPlayerList().getPlayers());
+        }
+        // Fila e ledger antes do WebSocket: um evento pode chegar logo após a conexão
         commandsQueue = new CommandsQueue(configPath);
+        openDeliveryLedger();
+        // Comandos validados são entregues no thread do servidor
+        ConfigSnapshot config = currentConfig();
+        commandPolicy = compileCommandPolicy(config);
+        commandExecutor = new TickCommandExecutor(server, config.commandTickBudgetMs());
+        commandValidator = new CommandValidator(baseUrl, apiKey, serverToken, deliveryLedger,
+            server != null ? server::execute : Runnable::run, this::executeCommands,
+            config.validationBatchWindowMs(), config.validationBatchMaxSize());
+        // A primeira conexão já passa pelo controlador: se falhar, entra no backoff
+        reconnectController = new ReconnectController(reconnectScheduler, this::openSocket,
+            config.reconnectBaseDelayMs(), config.reconnectMaxDelayMs(), config.reconnectFailureThreshold(),
+            TimeUnit.SECONDS.toMillis(config.reconnectCircuitOpenSeconds()));
+        registerMetrics();
+        reconnectController.start();
         MGTLeaderos.LOGGER.info("[LeaderOS Connect] Módulo Connect inicializado com sucesso!");
     }
 
     /**
      * Desabilita o módulo Connect
+     * Retorna só depois que a fila de comandos e o ledger fecharam os arquivos, então um
+     * módulo novo pode ser aberto na mesma pasta logo em seguida (reconexão)
      */
     public void disable() {
         MGTLeaderos.LOGGER.info("[LeaderOS Connect] Desabilitando módulo Connect...");
 
+        if (reconnectController != null) {
+            reconnectController.stop();
+        }
+
         if (socketClient != null) {
             socketClient.disconnect();
         }
 
+        if (commandValidator != null) {
+            commandValidator.shutdown();
+        }
+
+        // Comandos já retirados da fila persistente não podem ficar para trás
+        if (commandExecutor != null) {
+            commandExecutor.flush();
+        }
+
         if (commandsQueue != null) {
             commandsQueue.shutdown();
         }
 
+        if (deliveryLedger != null) {
+            try {
+                deliveryLedger.close();
+            } catch (IOException e) {
+                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao fechar ledger de entregas: " + e.getMessage());
+            }
+        }
+
         reconnectScheduler.shutdownNow(); // Encerra scheduler ao desabilitar
 
         MGTLeaderos.LOGGER.info("[LeaderOS Connect] Módulo Connect desabilitado!");
     }
 
+    /**
+     * Aplica uma configuração recarregada nos objetos em uso, sem fechar o WebSocket,
+     * a fila de comandos nem o ledger
+     * URL, API Key e Server Token não são tratados aqui: mudar qualquer um deles exige uma
+     * nova conexão (MGTLeaderos.reloadConfig recria o módulo)
+     * @param previous Configuração com que o módulo está rodando
+     * @param config Configuração nova
+     */
+    public void applyConfig(ConfigSnapshot previous, ConfigSnapshot config) {
+        if (previous.commandPolicyMode() != config.commandPolicyMode()
+            || !previous.commandPolicyRules().equals(config.commandPolicyRules())) {
+            commandPolicy = compileCommandPolicy(config);
+        }
+        if (commandExecutor != null && previous.commandTickBudgetMs() != config.commandTickBudgetMs()) {
+            commandExecutor.setBudgetMillis(config.commandTickBudgetMs());
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Orçamento por tick: {} ms", config.commandTickBudgetMs());
+        }
+        if (commandValidator != null && (previous.validationBatchWindowMs() != config.validationBatchWindowMs()
+            || previous.validationBatchMaxSize() != config.validationBatchMaxSize())) {
+            commandValidator.setBatching(config.validationBatchWindowMs(), config.validationBatchMaxSize());
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Lotes de validação: janela de {} ms, até {} IDs",
+                config.validationBatchWindowMs(), config.validationBatchMaxSize());
+        }
+        if (reconnectController != null && (previous.reconnectBaseDelayMs() != config.reconnectBaseDelayMs()
+            || previous.reconnectMaxDelayMs() != config.reconnectMaxDelayMs()
+            || previous.reconnectFailureThreshold() != config.reconnectFailureThreshold()
+            || previous.reconnectCircuitOpenSeconds() != config.reconnectCircuitOpenSeconds())) {
+            reconnectController.reconfigure(config.reconnectBaseDelayMs(), config.reconnectMaxDelayMs(),
+                config.reconnectFailureThreshold(), TimeUnit.SECONDS.toMillis(config.reconnectCircuitOpenSeconds()));
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Reconexão: espera de {} a {} ms, circuito abre após {} falhas por {}s",
+                config.reconnectBaseDelayMs(), config.reconnectMaxDelayMs(), config.reconnectFailureThreshold(), config.reconnectCircuitOpenSeconds());
+        }
+        if (deliveryLedger != null && previous.deliveryLedgerRetentionHours() != config.deliveryLedgerRetentionHours()) {
+            deliveryLedger.setRetentionMillis(TimeUnit.HOURS.toMillis(config.deliveryLedgerRetentionHours()));
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Retenção do ledger: {}h", config.deliveryLedgerRetentionHours());
+        }
+    }
+
+    /**
+     * Configuração atual (padrões se o mod ainda não carregou os arquivos)
+     */
+    private static ConfigSnapshot currentConfig() {
+        ConfigManager config = MGTLeaderos.instance != null ? MGTLeaderos.instance.getConfigManager() : null;
+        return config != null ? config.getSnapshot() : ConfigSnapshot.DEFAULTS;
+    }
+
+    /**
+     * Compila a política de comandos a partir do modules.yml
+     * Modo inválido já chega como DENYLIST (ConfigSnapshot), para nunca liberar tudo por engano
+     */
+    private CommandPolicy compileCommandPolicy(ConfigSnapshot config) {
+        CommandPolicy policy = CommandPolicy.compile(config.commandPolicyMode(), config.commandPolicyRules());
+        MGTLeaderos.LOGGER.info("[LeaderOS Connect] Política de comandos: {} com {} regras", config.commandPolicyMode(), policy.getRuleCount());
+        return policy;
+    }
+
+    /**
+     * Registra os gauges das filas e da conexão deste módulo
+     * Num reload o módulo novo substitui os registros do anterior
+     */
+    private void registerMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        CommandsQueue queue = commandsQueue;
+        TickCommandExecutor executor = commandExecutor;
+        CommandValidator validator = commandValidator;
+        ReconnectController reconnect = reconnectController;
+        DeliveryLedger ledger = deliveryLedger;
+        metrics.gauge("leaderos_offline_queue_players", "Jogadores com comandos aguardando o login", queue::getPendingPlayerCount);
+        metrics.gauge("leaderos_offline_queue_commands", "Comandos aguardando o login dos jogadores", queue::getPendingCommandCount);
+        metrics.gauge("leaderos_executor_backlog", "Comandos aguardando um tick para executar", executor::getBacklogSize);
+        metrics.gauge("leaderos_validation_active", "Validações em andamento", validator::getActiveCount);
+        metrics.gauge("leaderos_validation_pending", "Lotes aguardando uma vaga de validação", validator::getPendingCount);
+        metrics.gauge("leaderos_online_players", "Jogadores no índice de jogadores online", onlinePlayers::size);
+        metrics.gauge("leaderos_websocket_connected", "1 se o WebSocket está conectado e subscrito",
+            () -> socketClient != null && socketClient.isConnected() ? 1 : 0);
+        metrics.gauge("leaderos_reconnect_circuit_open", "1 se o circuito de reconexão não está fechado",
+            () -> reconnect.getState() != ReconnectController.State.CLOSED ? 1 : 0);
+        metrics.counter("leaderos_reconnect_attempts_total", "Tentativas de conexão do WebSocket", reconnect::getAttempts);
+        metrics.counter("leaderos_reconnect_failures_total", "Tentativas de conexão que falharam", reconnect::getFailures);
+        metrics.counter("leaderos_reconnect_circuit_opens_total", "Vezes que o circuito de reconexão abriu", reconnect::getCircuitOpens);
+        if (ledger != null) {
+            metrics.gauge("leaderos_ledger_in_flight", "Entregas reservadas no ledger aguardando validação", ledger::getInFlightCount);
+            metrics.counter("leaderos_ledger_duplicates_blocked_total", "Entregas repetidas bloqueadas pelo ledger", ledger::getDuplicatesBlocked);
+        }
+    }
+
+    /**
+     * Abre o ledger de entregas com a retenção configurada
+     * Se falhar, o módulo continua funcionando sem deduplicação local
+     */
+    private void openDeliveryLedger() {
+        long retentionHours = currentConfig().deliveryLedgerRetentionHours();
+        DeliveryLedger ledger = new DeliveryLedger(configPath, TimeUnit.HOURS.toMillis(retentionHours));
+        try {
+            ledger.open();
+            deliveryLedger = ledger;
+        } catch (IOException e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao abrir ledger de entregas, deduplicação desativada: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Executa comandos validados de um jogador (thread do servidor)
+     * Se o jogador estiver online, envia ao executor por tick; senão, adiciona à fila offline
+     * Fica no módulo, e não no SocketClient, porque o validador sobrevive às reconexões
+     * @param delivery Entrega do jogador no trace (/leaderos trace)
+     * @return Completa quando os comandos estão no executor ou gravados na fila offline; com
+     *         erro se a fila não os gravou (o validador libera os IDs no ledger)
+     */
+    public CompletableFuture<Void> executeCommands(List<String> commands, String username, DeliveryTrace.PlayerDelivery delivery) {
+        // Validar e limpar comandos (igual ao plugin original)
+        List<String> validatedCommands = LeaderOSSocketClient.filterCommands(commandPolicy, commands);
+        delivery.blocked(commands.size() - validatedCommands.size());
+
+        if (validatedCommands.isEmpty()) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS] Nenhum comando válido para executar");
+            delivery.fail("todos os comandos bloqueados pela política de comandos");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        ServerPlayer player = findOnlinePlayer(username);
+        if (player != null && player.getServer() != null && !player.isRemoved()) {
+            // Jogador online: executar no thread do servidor, distribuído entre os ticks
+            // (igual ao plugin: Bukkit.dispatchCommand como console)
+            delivery.queued(DeliveryTrace.Destination.EXECUTOR);
+            commandExecutor.submit(username, validatedCommands, delivery);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Jogador offline: adicionar à fila
+        delivery.queued(DeliveryTrace.Destination.OFFLINE_QUEUE);
+        CompletableFuture<Void> ack = commandsQueue.addCommands(username, validatedCommands);
+        MGTLeaderos.LOGGER.info("[LeaderOS] Jogador {} offline. {} comandos adicionados à fila", username, validatedCommands.size());
+        return ack.whenComplete((result, error) -> {
+            if (error != null) {
+                delivery.fail("fila offline não gravou os comandos: " + error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Retorna a política usada para filtrar os comandos recebidos
+     */
+    public CommandPolicy getCommandPolicy() {
+        return commandPolicy;
+    }
+
+    /**
+     * Retorna o ledger de entregas já executadas
+     * @return DeliveryLedger ou null se não pôde ser aberto
+     */
+    public DeliveryLedger getDeliveryLedger() {
+        return deliveryLedger;
+    }
+
+    /**
+     * Retorna o validador assíncrono de comandos
+     * @return CommandValidator
+     */
+    public CommandValidator getCommandValidator() {
+        return commandValidator;
+    }
+
+    /**
+     * Retorna o executor de comandos com orçamento por tick
+     * @return TickCommandExecutor
+     */
+    public TickCommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
     /**
      * Retorna a instância do SocketClient
      * @return SocketClient
@@ -111,52 +331,88 @@ public class ConnectModule {
     }
 
     /**
-     * Busca um jogador online pelo nome (NeoForge)
+     * Busca um jogador online pelo nome (NeoForge), sem diferenciar maiúsculas
+     * Consulta o índice mantido pelos eventos de login/logout, seguro fora do thread do servidor
      * @param username Nome do jogador
      * @return ServerPlayer se online, senão null
      */
     public ServerPlayer findOnlinePlayer(String username) {
-        // Usa a instância do servidor já presente no ConnectModule
-        if (server == null) return null;
-        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-            // Substituir getProfile() por getGameProfile() para obter o nome do jogador
-            if (player.getGameProfile().getName().equalsIgnoreCase(username)) {
-                return player;
-            }
-        }
-        return null;
+        return onlinePlayers.get(username);
+    }
+
+    /**
+     * Busca um jogador online pelo UUID
+     * @param uuid UUID do jogador
+     * @return ServerPlayer se online, senão null
+     */
+    public ServerPlayer findOnlinePlayer(UUID uuid) {
+        return onlinePlayers.get(uuid);
+    }
+
+    /**
+     * Retorna o índice de jogadores online, atualizado pelos eventos do servidor
+     */
+    public OnlinePlayerIndex getOnlinePlayers() {
+        return onlinePlayers;
     }
 
-    // Método chamado pelo SocketClient ao fechar conexão
+    /**
+     * Chamado pelo SocketClient quando a conexão fecha (ou a tentativa falha)
+     * Fechamentos feitos pelo próprio mod (disconnect) não chegam aqui
+     */
     public void onWebSocketClosed(int code, String reason) {
         MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Conexão fechada. Código: " + code + ", Razão: " + reason);
-        if (!reconnecting) {
-            reconnecting = true;
-            reconnectAttempts = 1;
-            scheduleReconnect();
+        if (reconnectController != null) {
+            reconnectController.onDisconnected();
+        }
+        // Sem push: a fila HTTP passa a ser verificada com frequência
+        DeliveryScheduler deliveryScheduler = MGTLeaderos.instance != null ? MGTLeaderos.instance.getDeliveryScheduler() : null;
+        if (deliveryScheduler != null) {
+            deliveryScheduler.onConnectionStateChanged();
         }
     }
 
-    // Agenda reconexão assíncrona com backoff
-    private void scheduleReconnect() {
-        if (reconnectAttempts > MAX_RECONNECT_ATTEMPTS) {
-            MGTLeaderos.LOGGER.error("[LeaderOS Connect] Falha ao reconectar após " + MAX_RECONNECT_ATTEMPTS + " tentativas.");
-            reconnecting = false;
-            return;
+    /**
+     * Chamado pelo SocketClient quando a subscrição ao canal é confirmada
+     * Dispara a sincronização de recuperação das entregas perdidas durante a queda
+     */
+    public void onWebSocketSubscribed() {
+        if (reconnectController != null) {
+            reconnectController.onConnected();
+        }
+        // Recuperar entregas publicadas enquanto o socket estava fora
+        DeliveryManager deliveryManager = MGTLeaderos.instance != null ? MGTLeaderos.instance.getDeliveryManager() : null;
+        if (deliveryManager != null) {
+            deliveryManager.requestCatchUp();
+        }
+        DeliveryScheduler deliveryScheduler = MGTLeaderos.instance != null ? MGTLeaderos.instance.getDeliveryScheduler() : null;
+        if (deliveryScheduler != null) {
+            deliveryScheduler.onConnectionStateChanged();
         }
-        reconnectScheduler.schedule(() -> attemptReconnect(), RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
     }
 
-    // Tenta reconectar criando sempre um novo SocketClient
-    private void attemptReconnect() {
-        MGTLeaderos.LOGGER.info("[LeaderOS Connect] Tentando reconectar... Tentativa " + reconnectAttempts + "/" + MAX_RECONNECT_ATTEMPTS);
-        if (socketClient != null) {
-            socketClient.disconnect();
-            socketClient = null;
+    /**
+     * Executor de tarefas agendadas do módulo (reconexão e keepalive do WebSocket)
+     */
+    public ScheduledExecutorService getScheduler() {
+        return reconnectScheduler;
+    }
+
+    /**
+     * Retorna o controlador de reconexão (estado do circuito e métricas)
+     */
+    public ReconnectController getReconnectController() {
+        return reconnectController;
+    }
+
+    // Abre uma nova conexão, sempre com um novo SocketClient
+    private void openSocket() {
+        SocketClient previous = socketClient;
+        if (previous != null) {
+            previous.disconnect();
         }
-        socketClient = new LeaderOSSocketClient(apiKey, serverToken, onlyOnline, this);
-        socketClient.connect();
-        reconnectAttempts++;
-        reconnecting = false;
+        SocketClient client = new LeaderOSSocketClient(apiKey, serverToken, onlyOnline, this);
+        socketClient = client;
+        client.connect();
     }
 }
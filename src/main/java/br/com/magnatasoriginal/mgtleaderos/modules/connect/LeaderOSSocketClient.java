@@ -3,7 +3,7 @@ package br.com.magnatasoriginal.mgtleaderos.modules.connect;
 import java.util.ArrayList;
 import java.util.List;
 
-import net.minecraft.server.level.ServerPlayer;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
 import org.slf4j.Logger;
 
 import com.mojang.logging.LogUtils;
@@ -24,67 +24,31 @@ public class LeaderOSSocketClient extends SocketClient {
     /**
      * Executa comandos recebidos do LeaderOS
      * Se o jogador estiver online, executa imediatamente; senão, adiciona à fila
-     * Validação e limpeza de comandos igual ao plugin original
+     * @see ConnectModule#executeCommands(List, String, DeliveryTrace.PlayerDelivery)
      */
     @Override
-    public void executeCommands(List<String> commands, String username) {
-        // Validar e limpar comandos (igual ao plugin original)
-        List<String> validatedCommands = new ArrayList<>();
-        List<String> commandBlacklist = java.util.Arrays.asList("op", "deop", "stop", "restart", "reload", "ban");
+    public void executeCommands(List<String> commands, String username, DeliveryTrace.PlayerDelivery delivery) {
+        connectModule.executeCommands(commands, username, delivery);
+    }
 
+    /**
+     * Remove a barra inicial e descarta os comandos recusados pela política
+     * @param policy Política compilada (padrão: blacklist do plugin original)
+     * @param commands Comandos recebidos da API
+     * @return Comandos liberados para execução, na mesma ordem
+     */
+    public static List<String> filterCommands(CommandPolicy policy, List<String> commands) {
+        List<String> validatedCommands = new ArrayList<>(commands.size());
         for (String command : commands) {
-            // Remover barra inicial se houver
-            if (command.startsWith("/")) {
-                command = command.substring(1);
-            }
-
-            // Extrair comando raiz (primeira palavra)
-            String commandRoot = command.split(" ")[0];
-
-            // Limpar prefixos bukkit: e minecraft:
-            if (commandRoot.startsWith("bukkit:")) {
-                commandRoot = commandRoot.substring(7);
-            }
-            if (commandRoot.startsWith("minecraft:")) {
-                commandRoot = commandRoot.substring(10);
-            }
-
-            // Verificar blacklist
-            if (commandBlacklist.contains(commandRoot.toLowerCase())) {
-                LOGGER.warn("[LeaderOS] Comando bloqueado por blacklist: {}", command);
+            if (!policy.isAllowed(command)) {
+                LOGGER.warn("[LeaderOS] Comando bloqueado pela política de comandos: {}", command);
                 continue;
             }
 
-            // Adicionar comando validado
-            validatedCommands.add(command);
-        }
-
-        // Se não há comandos válidos, retornar
-        if (validatedCommands.isEmpty()) {
-            LOGGER.warn("[LeaderOS] Nenhum comando válido para executar");
-            return;
-        }
-
-        // Buscar jogador online
-        ServerPlayer player = connectModule.findOnlinePlayer(username);
-
-        if (player != null && player.getServer() != null && !player.isRemoved()) {
-            // Jogador online: executar imediatamente
-            player.getServer().execute(() -> {
-                for (String command : validatedCommands) {
-                    // Executar como console (igual ao plugin: Bukkit.dispatchCommand)
-                    player.getServer().getCommands().performPrefixedCommand(
-                        player.getServer().createCommandSourceStack(),
-                        command
-                    );
-                    LOGGER.info("[LeaderOS] Comando executado: {}", command);
-                }
-            });
-        } else {
-            // Jogador offline: adicionar à fila
-            ConnectModule.getCommandsQueue().addCommands(username, validatedCommands);
-            LOGGER.info("[LeaderOS] Jogador {} offline. {} comandos adicionados à fila", username, validatedCommands.size());
+            // Remover barra inicial se houver
+            validatedCommands.add(command.startsWith("/") ? command.substring(1) : command);
         }
+        return validatedCommands;
     }
 
     @Override
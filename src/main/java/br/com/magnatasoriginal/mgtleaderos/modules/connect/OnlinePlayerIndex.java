@@ -0,0 +1,84 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice dos jogadores online por nome (sem diferenciar maiúsculas) e por UUID
+ *
+ * Substitui a varredura de server.getPlayerList().getPlayers() a cada entrega: as buscas
+ * são O(1) e podem ser feitas de qualquer thread (o WebSocket consulta daqui). O índice é
+ * mantido pelos eventos do servidor, sempre no thread do servidor:
+ * - login: adiciona
+ * - respawn: troca a instância (o servidor cria um novo ServerPlayer ao renascer ou voltar do End)
+ * - logout: remove, apenas se a instância indexada ainda for a mesma
+ *
+ * O nome indexado é o do GameProfile, que não muda durante a sessão (mudanças de nome na
+ * conta só valem no próximo login, e então o nome antigo já saiu no logout)
+ */
+public class OnlinePlayerIndex {
+    private final Map<String, ServerPlayer> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, ServerPlayer> byUuid = new ConcurrentHashMap<>();
+
+    /**
+     * Reconstrói o índice a partir da lista de jogadores do servidor
+     * Usado ao habilitar o módulo (ex: reload com jogadores já online)
+     */
+    public void rebuild(Collection<ServerPlayer> players) {
+        byName.clear();
+        byUuid.clear();
+        for (ServerPlayer player : players) {
+            add(player);
+        }
+    }
+
+    /**
+     * Registra (ou atualiza) um jogador online
+     */
+    public void add(ServerPlayer player) {
+        ServerPlayer previous = byUuid.put(player.getUUID(), player);
+        if (previous != null) {
+            // Mesmo UUID com outro nome: a entrada antiga não pode continuar apontando para ele
+            byName.remove(key(previous.getGameProfile().getName()), previous);
+        }
+        byName.put(key(player.getGameProfile().getName()), player);
+    }
+
+    /**
+     * Remove um jogador que saiu do servidor
+     * Não remove se o índice já aponta para outra instância (relogin rápido com o mesmo UUID)
+     */
+    public void remove(ServerPlayer player) {
+        byUuid.remove(player.getUUID(), player);
+        byName.remove(key(player.getGameProfile().getName()), player);
+    }
+
+    /**
+     * Busca um jogador online pelo nome, sem diferenciar maiúsculas
+     * @return ServerPlayer ou null se offline
+     */
+    public ServerPlayer get(String username) {
+        return username == null ? null : byName.get(key(username));
+    }
+
+    /**
+     * Busca um jogador online pelo UUID
+     * @return ServerPlayer ou null se offline
+     */
+    public ServerPlayer get(UUID uuid) {
+        return uuid == null ? null : byUuid.get(uuid);
+    }
+
+    public int size() {
+        return byUuid.size();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,28 +1,27 @@
 package br.com.magnatasoriginal.mgtleaderos.modules.connect;
 
 import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.api.HttpTransport;
+import br.com.magnatasoriginal.mgtleaderos.metrics.jfr.PusherAuthEvent;
 import org.json.JSONObject;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Classe para autenticar canais privados do Pusher
  * Replica o fluxo do CustomHttpAuthorizer do plugin original
+ * Cada autenticação gera um evento JFR (mgtleaderos.PusherAuth) quando há uma gravação ativa
  */
 public class PusherAuth {
     private static final String AUTH_ENDPOINT = "https://connect-api.leaderos.net/broadcasting/auth";
     private final String apiKey;
-    private final HttpClient httpClient;
+    private final HttpTransport transport = HttpTransport.shared();
 
     public PusherAuth(String apiKey) {
         this.apiKey = apiKey;
-        this.httpClient = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
     }
 
     /**
@@ -34,21 +33,24 @@ public class PusherAuth {
      * @return String de autenticação (auth) ou null se falhar
      */
     public String authorize(String channelName, String socketId) {
+        PusherAuthEvent event = new PusherAuthEvent();
+        event.begin();
+        String payload = null;
+        HttpResponse<String> response = null;
+        String result = null;
         try {
             // Montar payload igual ao plugin
-            String payload = String.format("socket_id=%s&channel_name=%s", socketId, channelName);
+            payload = String.format("socket_id=%s&channel_name=%s", socketId, channelName);
             
             // Fazer requisição POST igual ao plugin
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(AUTH_ENDPOINT))
-                .timeout(Duration.ofSeconds(10))
+            HttpRequest request = transport.request(HttpTransport.Endpoint.PUSHER_AUTH, URI.create(AUTH_ENDPOINT))
                 .header("X-Api-Key", apiKey)
                 .header("Accept", "application/json")
                 .header("Content-Type", "application/x-www-form-urlencoded")
                 .POST(HttpRequest.BodyPublishers.ofString(payload))
                 .build();
             
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            response = transport.send(HttpTransport.Endpoint.PUSHER_AUTH, request);
             
             if (response.statusCode() == 200) {
                 JSONObject jsonResponse = new JSONObject(response.body());
@@ -56,7 +58,7 @@ public class PusherAuth {
                 
                 if (auth != null) {
                     MGTLeaderos.LOGGER.info("[LeaderOS Connect] Autenticação do canal bem-sucedida!");
-                    return auth;
+                    result = auth;
                 } else {
                     MGTLeaderos.LOGGER.error("[LeaderOS Connect] Resposta de autenticação sem 'auth': " + response.body());
                 }
@@ -70,8 +72,17 @@ public class PusherAuth {
                 MGTLeaderos.LOGGER.error("[LeaderOS Connect] Stack trace:", e);
             }
         }
-        
-        return null;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.channel = channelName;
+            event.statusCode = response != null ? response.statusCode() : 0;
+            event.success = result != null;
+            event.requestBytes = payload != null ? payload.length() : 0;
+            event.responseBytes = response != null ? response.body().getBytes(StandardCharsets.UTF_8).length : 0;
+            event.commit();
+        }
+        return result;
     }
 }
 
@@ -0,0 +1,47 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frame recebido do Pusher: nome do evento e o JSON completo
+ *
+ * Parser sem estado usado pelo SocketClient, separado do tratamento dos eventos para poder
+ * ser medido (PusherFrameBenchmark) sem abrir conexão
+ *
+ * @param event Nome do evento ("" se ausente)
+ * @param json Frame completo
+ */
+public record PusherFrame(String event, JSONObject json) {
+
+    /**
+     * Lê um frame do WebSocket
+     */
+    public static PusherFrame parse(String message) {
+        JSONObject json = new JSONObject(message);
+        return new PusherFrame(json.optString("event", ""), json);
+    }
+
+    /**
+     * Conteúdo do campo "data", que no Pusher é uma String com outro JSON dentro
+     */
+    public JSONObject data() {
+        return new JSONObject(json.getString("data"));
+    }
+
+    /**
+     * Extrai os IDs de command-log de um frame send-commands: {"commands": [id, ...]}
+     */
+    public List<String> commandIds() {
+        JSONArray logIDs = data().getJSONArray("commands");
+
+        List<String> receivedIDs = new ArrayList<>(logIDs.length());
+        for (int i = 0; i < logIDs.length(); i++) {
+            receivedIDs.add(logIDs.getString(i));
+        }
+        return receivedIDs;
+    }
+}
@@ -0,0 +1,241 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controla as reconexões do WebSocket do Connect
+ *
+ * Backoff exponencial com jitter descorrelacionado: cada espera é sorteada entre a base e
+ * o triplo da espera anterior, limitada ao máximo. Servidores que caíram juntos numa queda
+ * do LeaderOS não voltam a bater no host em sincronia.
+ *
+ * Circuit breaker: depois de N falhas seguidas o circuito abre e as tentativas param por um
+ * tempo. Passado esse tempo ele fica meio aberto e faz uma única tentativa. Se ela der certo
+ * o circuito fecha; se falhar, abre de novo. Nunca desiste para sempre
+ *
+ * Uma tentativa só conta como sucesso quando a subscrição ao canal é confirmada
+ * (onConnected); um fechamento antes disso conta como falha
+ */
+public class ReconnectController {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Runnable connectAction;
+    // Limites (protegidos pelo monitor da instância; alterados por reconfigure)
+    private long baseDelayMillis;
+    private long maxDelayMillis;
+    private int failureThreshold;
+    private long openMillis;
+
+    // Estado (protegido pelo monitor da instância)
+    private State state = State.CLOSED;
+    private ScheduledFuture<?> pending;
+    private boolean attemptInFlight = false;
+    private boolean stopped = false;
+    private int consecutiveFailures = 0;
+    private long previousDelayMillis;
+
+    // Métricas
+    private volatile long attempts = 0;
+    private volatile long successes = 0;
+    private volatile long failures = 0;
+    private volatile long circuitOpens = 0;
+    private volatile long lastDelayMillis = 0;
+    private volatile long nextAttemptAt = 0;
+    private volatile long lastConnectedAt = 0;
+
+    /**
+     * Construtor do ReconnectController
+     * @param scheduler Executor onde as tentativas são agendadas
+     * @param connectAction Cria uma nova conexão (o resultado chega por onConnected/onDisconnected)
+     * @param baseDelayMillis Menor espera entre tentativas
+     * @param maxDelayMillis Maior espera entre tentativas com o circuito fechado
+     * @param failureThreshold Falhas seguidas até abrir o circuito
+     * @param openMillis Tempo com o circuito aberto antes da tentativa de teste
+     */
+    public ReconnectController(ScheduledExecutorService scheduler, Runnable connectAction, long baseDelayMillis,
+                               long maxDelayMillis, int failureThreshold, long openMillis) {
+        this.scheduler = scheduler;
+        this.connectAction = connectAction;
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(1, openMillis);
+        this.previousDelayMillis = this.baseDelayMillis;
+    }
+
+    /**
+     * Faz a primeira conexão agora, já contando como tentativa
+     */
+    public void start() {
+        attempt();
+    }
+
+    /**
+     * Subscrição confirmada: fecha o circuito e zera o backoff
+     */
+    public synchronized void onConnected() {
+        attemptInFlight = false;
+        if (state != State.CLOSED) {
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Reconexão bem-sucedida, circuito fechado");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        previousDelayMillis = baseDelayMillis;
+        lastConnectedAt = System.currentTimeMillis();
+        successes++;
+    }
+
+    /**
+     * Conexão perdida ou tentativa falhou: agenda a próxima tentativa
+     * Fechamentos repetidos enquanto já existe uma tentativa agendada são ignorados
+     */
+    public synchronized void onDisconnected() {
+        if (stopped || pending != null) {
+            return;
+        }
+
+        long delay;
+        if (attemptInFlight) {
+            attemptInFlight = false;
+            failures++;
+            consecutiveFailures++;
+        }
+
+        if (state == State.HALF_OPEN) {
+            // A tentativa de teste falhou: volta a abrir
+            state = State.OPEN;
+            circuitOpens++;
+            delay = openMillis;
+            MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Tentativa de teste falhou, circuito aberto por {}s", TimeUnit.MILLISECONDS.toSeconds(openMillis));
+        } else if (consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            circuitOpens++;
+            delay = openMillis;
+            MGTLeaderos.LOGGER.warn("[LeaderOS Connect] {} falhas seguidas, circuito aberto por {}s", consecutiveFailures, TimeUnit.MILLISECONDS.toSeconds(openMillis));
+        } else {
+            delay = nextBackoff();
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Nova tentativa de conexão em {} ms ({} falhas seguidas)", delay, consecutiveFailures);
+        }
+        schedule(delay);
+    }
+
+    /**
+     * Jitter descorrelacionado: aleatório entre a base e 3x a espera anterior, até o máximo
+     */
+    private long nextBackoff() {
+        long upper = Math.min(maxDelayMillis, previousDelayMillis * 3);
+        long delay = upper > baseDelayMillis ? ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1) : baseDelayMillis;
+        previousDelayMillis = delay;
+        return delay;
+    }
+
+    private void schedule(long delay) {
+        lastDelayMillis = delay;
+        nextAttemptAt = System.currentTimeMillis() + delay;
+        try {
+            pending = scheduler.schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Scheduler finalizado: o módulo está sendo desabilitado
+            pending = null;
+        }
+    }
+
+    private void attempt() {
+        synchronized (this) {
+            pending = null;
+            if (stopped) {
+                return;
+            }
+            if (state == State.OPEN) {
+                state = State.HALF_OPEN;
+                MGTLeaderos.LOGGER.info("[LeaderOS Connect] Circuito meio aberto, tentando reconectar");
+            }
+            attemptInFlight = true;
+            attempts++;
+            nextAttemptAt = 0;
+        }
+        try {
+            connectAction.run();
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao reconectar: " + e.getMessage());
+            onDisconnected();
+        }
+    }
+
+    /**
+     * Altera os limites sem recriar o controlador (reload da configuração)
+     * Uma espera já agendada não muda; os novos valores valem a partir da próxima falha
+     */
+    public synchronized void reconfigure(long baseDelayMillis, long maxDelayMillis, int failureThreshold, long openMillis) {
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(1, openMillis);
+        previousDelayMillis = Math.min(Math.max(previousDelayMillis, this.baseDelayMillis), this.maxDelayMillis);
+    }
+
+    /**
+     * Cancela a tentativa agendada e ignora eventos futuros
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public long getAttempts() {
+        return attempts;
+    }
+
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getCircuitOpens() {
+        return circuitOpens;
+    }
+
+    public long getLastDelayMillis() {
+        return lastDelayMillis;
+    }
+
+    /**
+     * Momento da próxima tentativa agendada (epoch ms), ou 0 se nenhuma
+     */
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    /**
+     * Momento da última subscrição confirmada (epoch ms), ou 0 se nunca conectou
+     */
+    public long getLastConnectedAt() {
+        return lastConnectedAt;
+    }
+}
@@ -1,19 +1,20 @@
 package br.com.magnatasoriginal.mgtleaderos.modules.connect;
 
 import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryMetrics;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
+import br.com.magnatasoriginal.mgtleaderos.metrics.jfr.PusherFrameEvent;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Cliente WebSocket que replica o protocolo Pusher do plugin original
@@ -26,27 +27,60 @@ import java.util.List;
  * - Cluster: eu
  * - Canal: private-servers.{serverToken}
  * - Eventos: send-commands, ping
+ *
+ * Keepalive do protocolo Pusher: o activity_timeout informado em
+ * pusher:connection_established é respeitado. Sem nenhum frame recebido nesse tempo é
+ * enviado um pusher:ping; se nada chegar em PONG_TIMEOUT_MILLIS a conexão é dada como
+ * morta e fechada, o que dispara a reconexão. Isso detecta conexões TCP meio abertas
+ * (NAT, queda de rota) que nunca chegariam a gerar onClose sozinhas
  */
 public abstract class SocketClient {
-    private WebSocketClient client;
+    private volatile WebSocketClient client;
     private final String apiKey;
     private final String serverToken;
+    private final URI socketUri;
     private final PusherAuth pusherAuth;
     private final ConnectModule connectModule;
     private String socketId;
-    private boolean connected = false;
-    private boolean subscribed = false;
+    // Escritos no thread do WebSocket e lidos pelo heartbeat, métricas e /leaderos status
+    private volatile boolean connected = false;
+    private volatile boolean subscribed = false;
+    // Fechamento pedido pelo mod: não deve disparar reconexão
+    private volatile boolean closing = false;
+
+    // Keepalive (lastFrameAt e pingSentAt em epoch ms; pingSentAt = 0 sem ping pendente)
+    private volatile long activityTimeoutMillis = DEFAULT_ACTIVITY_TIMEOUT_MILLIS;
+    private volatile long lastFrameAt = 0;
+    private volatile long pingSentAt = 0;
+    private ScheduledFuture<?> heartbeat;
 
     // Configurações do Pusher (igual ao plugin)
     private static final String APP_KEY = "leaderos-connect";
     private static final String HOST = "connect-socket.leaderos.net";
     private static final int WSS_PORT = 6002;
     private static final String PROTOCOL_VERSION = "7";
+    private static final long DEFAULT_ACTIVITY_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(120);
+    private static final long PONG_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long HEARTBEAT_CHECK_SECONDS = 5;
+    // Código de fechamento anormal do WebSocket (sem close frame)
+    private static final int ABNORMAL_CLOSE = 1006;
 
     public SocketClient(String apiKey, String serverToken, boolean onlyOnline, ConnectModule connectModule) {
+        // URL do Pusher igual ao plugin
+        this(apiKey, serverToken, connectModule,
+            URI.create(String.format("wss://%s:%d/app/%s?protocol=%s&client=java&version=1.0.0",
+                HOST, WSS_PORT, APP_KEY, PROTOCOL_VERSION)),
+            new PusherAuth(apiKey));
+    }
+
+    /**
+     * Construtor com endereço e autenticação informados (servidor Pusher local nos testes)
+     */
+    SocketClient(String apiKey, String serverToken, ConnectModule connectModule, URI socketUri, PusherAuth pusherAuth) {
         this.apiKey = apiKey;
         this.serverToken = serverToken;
-        this.pusherAuth = new PusherAuth(apiKey);
+        this.socketUri = socketUri;
+        this.pusherAuth = pusherAuth;
         this.connectModule = connectModule;
     }
 
@@ -57,22 +91,24 @@ public abstract class SocketClient {
                 client = null;
             }
 
-            // URL do Pusher igual ao plugin
-            String wsUrl = String.format("wss://%s:%d/app/%s?protocol=%s&client=java&version=1.0.0",
-                HOST, WSS_PORT, APP_KEY, PROTOCOL_VERSION);
-
-            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Conectando ao Pusher: " + wsUrl);
+            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Conectando ao Pusher: " + socketUri);
 
-            client = new WebSocketClient(new URI(wsUrl)) {
+            client = new WebSocketClient(socketUri) {
                 @Override
                 public void onOpen(ServerHandshake handshakedata) {
                     MGTLeaderos.LOGGER.info("[LeaderOS Connect] Conexão WebSocket estabelecida!");
                     connected = true;
                     subscribed = false;
+                    lastFrameAt = System.currentTimeMillis();
+                    pingSentAt = 0;
+                    startHeartbeat();
                 }
 
                 @Override
                 public void onMessage(String message) {
+                    // Qualquer frame prova que a conexão está viva
+                    lastFrameAt = System.currentTimeMillis();
+                    pingSentAt = 0;
                     handlePusherMessage(message);
                 }
 
@@ -80,10 +116,10 @@ public abstract class SocketClient {
                 public void onClose(int code, String reason, boolean remote) {
                     connected = false;
                     subscribed = false;
+                    stopHeartbeat();
                     MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Conexão fechada. Código: " + code + ", Razão: " + reason);
-                    // Chama reconexão no ConnectModule
-                    if (connectModule != null) {
-                        connectModule.onWebSocketClosed(code, reason);
+                    if (!closing) {
+                        closed(code, reason);
                     }
                 }
 
@@ -105,18 +141,26 @@ public abstract class SocketClient {
 
     /**
      * Processa mensagens do Pusher (igual ao plugin original)
+     * Cada frame vira um evento JFR (mgtleaderos.PusherFrame) quando há uma gravação ativa
      */
     private void handlePusherMessage(String message) {
+        PusherFrameEvent frame = new PusherFrameEvent();
+        frame.begin();
         try {
-            JSONObject data = new JSONObject(message);
-            String event = data.optString("event", "");
+            PusherFrame pusherFrame = PusherFrame.parse(message);
+            String event = pusherFrame.event();
+            DeliveryMetrics.frameReceived(event);
+            frame.event = event;
 
             switch (event) {
                 case "pusher:connection_established":
                     // Conexão estabelecida, extrair socketId
-                    JSONObject connData = new JSONObject(data.getString("data"));
+                    JSONObject connData = pusherFrame.data();
                     socketId = connData.getString("socket_id");
                     MGTLeaderos.LOGGER.info("[LeaderOS Connect] Socket ID: " + socketId);
+                    if (connData.has("activity_timeout")) {
+                        activityTimeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(1, connData.getLong("activity_timeout")));
+                    }
 
                     // Subscrever ao canal privado
                     subscribeToChannel();
@@ -126,12 +170,15 @@ public abstract class SocketClient {
                     // Subscrição bem-sucedida
                     subscribed = true;
                     MGTLeaderos.LOGGER.info("[LeaderOS Connect] Subscrição ao canal bem-sucedida!");
+                    if (connectModule != null) {
+                        connectModule.onWebSocketSubscribed();
+                    }
                     subscribed();
                     break;
 
                 case "send-commands":
                     // Evento de comandos recebidos
-                    handleCommandsEvent(data);
+                    frame.commandIds = handleCommandsEvent(pusherFrame);
                     break;
 
                 case "ping":
@@ -140,13 +187,86 @@ public abstract class SocketClient {
                     subscribed();
                     break;
 
+                case "pusher:ping":
+                    // Keepalive iniciado pelo servidor
+                    sendEvent("pusher:pong");
+                    break;
+
+                case "pusher:pong":
+                    // Resposta ao nosso ping (lastFrameAt já foi atualizado)
+                    break;
+
                 case "pusher:error":
-                    MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro do Pusher: " + data.toString());
+                    MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro do Pusher: " + pusherFrame.json().toString());
                     break;
             }
 
         } catch (Exception e) {
             MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao processar mensagem: " + e.getMessage());
+        } finally {
+            frame.end();
+            if (frame.shouldCommit()) {
+                frame.bytes = message.getBytes(StandardCharsets.UTF_8).length;
+                frame.commit();
+            }
+        }
+    }
+
+    /**
+     * Agenda a verificação periódica de atividade da conexão
+     */
+    private synchronized void startHeartbeat() {
+        stopHeartbeat();
+        ScheduledExecutorService scheduler = connectModule != null ? connectModule.getScheduler() : null;
+        if (scheduler == null) {
+            return;
+        }
+        try {
+            heartbeat = scheduler.scheduleWithFixedDelay(this::checkActivity,
+                HEARTBEAT_CHECK_SECONDS, HEARTBEAT_CHECK_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // Módulo sendo desabilitado
+        }
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+    }
+
+    /**
+     * Envia pusher:ping quando a conexão fica ociosa e fecha a conexão se o pong não vier
+     */
+    private void checkActivity() {
+        WebSocketClient current = client;
+        if (current == null || !connected || closing) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long sentAt = pingSentAt;
+        if (sentAt > 0) {
+            if (now - sentAt >= PONG_TIMEOUT_MILLIS) {
+                MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Sem resposta ao ping há {}s, conexão considerada morta", (now - sentAt) / 1000);
+                // Fecha sem esperar o close frame (que não chegaria numa conexão morta);
+                // onClose dispara a reconexão
+                current.closeConnection(ABNORMAL_CLOSE, "pong timeout");
+            }
+        } else if (now - lastFrameAt >= activityTimeoutMillis) {
+            pingSentAt = now;
+            sendEvent("pusher:ping");
+        }
+    }
+
+    private void sendEvent(String event) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("event", event);
+            message.put("data", new JSONObject());
+            client.send(message.toString());
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao enviar " + event + ": " + e.getMessage());
         }
     }
 
@@ -161,7 +281,10 @@ public abstract class SocketClient {
             String auth = pusherAuth.authorize(channelName, socketId);
 
             if (auth == null) {
-                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Falha ao autenticar canal privado");
+                // Sem subscrição a conexão não recebe nada: fecha para a tentativa contar
+                // como falha e seguir o backoff, em vez de ficar aberta e surda para sempre
+                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Falha ao autenticar canal privado, fechando conexão");
+                client.closeConnection(ABNORMAL_CLOSE, "auth failed");
                 return;
             }
 
@@ -180,119 +303,74 @@ public abstract class SocketClient {
 
         } catch (Exception e) {
             MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao subscrever: " + e.getMessage());
+            WebSocketClient current = client;
+            if (current != null) {
+                current.closeConnection(ABNORMAL_CLOSE, "subscribe failed");
+            }
         }
     }
 
     /**
      * Processa evento de comandos (igual ao plugin original)
-     * Valida os IDs de comando via API e extrai comandos formatados + username
+     * Apenas extrai os IDs e os entrega ao CommandValidator; a validação via API e a
+     * execução acontecem fora da thread do WebSocket
+     * @return Quantidade de IDs recebidos no frame
      */
-    private void handleCommandsEvent(JSONObject event) {
+    private int handleCommandsEvent(PusherFrame event) {
+        long start = System.nanoTime();
         try {
-            String jsonString = event.getString("data");
-            JSONObject data = new JSONObject(jsonString);
-            JSONArray logIDs = data.getJSONArray("commands");
-
-            // Validar comandos via API (igual ao plugin original)
-            // Construir form data para validação (não JSON!)
-            StringBuilder formData = new StringBuilder();
-            formData.append("token=").append(java.net.URLEncoder.encode(serverToken, "UTF-8"));
-
-            for (int i = 0; i < logIDs.length(); i++) {
-                formData.append("&commands[").append(i).append("]=")
-                        .append(java.net.URLEncoder.encode(logIDs.getString(i), "UTF-8"));
-            }
-
-            // URL correta: usar URL base do site configurado
-            String baseUrl = connectModule.getBaseUrl(); // Deve retornar a URL configurada (ex: https://servidormagnatas.com.br)
-            String validateUrl = baseUrl + "/api/command-logs/validate";
-
-            MGTLeaderos.LOGGER.info("[LeaderOS Connect] Validando {} comandos via API...", logIDs.length());
-
-            try {
-                URL url = new URL(validateUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded"); // FORM, não JSON!
-                conn.setRequestProperty("X-Api-Key", apiKey);
-                conn.setDoOutput(true);
-
-                // Enviar form data
-                try (OutputStream os = conn.getOutputStream()) {
-                    byte[] input = formData.toString().getBytes("utf-8");
-                    os.write(input, 0, input.length);
-                }
-
-                // Ler resposta
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200 || responseCode == 201 || responseCode == 202) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    String inputLine;
-                    StringBuilder response = new StringBuilder();
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
-
-                    // Parsear resposta e extrair comandos + username
-                    JSONObject responseObj = new JSONObject(response.toString());
-                    JSONArray commandsJSON = responseObj.getJSONArray("commands");
-                    String username = "";
-                    List<String> commandsList = new ArrayList<>();
-
-                    for (int i = 0; i < commandsJSON.length(); i++) {
-                        JSONObject cmdObj = commandsJSON.getJSONObject(i);
-                        String command = cmdObj.getString("command");
-                        commandsList.add(command);
-
-                        // Extrair username (todos os comandos têm o mesmo username)
-                        if (username.isEmpty()) {
-                            username = cmdObj.getString("username");
-                        }
-                    }
+            List<String> receivedIDs = event.commandIds();
+            DeliveryMetrics.commandIdsReceived(receivedIDs.size());
 
-                    // Executar comandos validados
-                    if (!commandsList.isEmpty() && !username.isEmpty()) {
-                        MGTLeaderos.LOGGER.info("[LeaderOS Connect] Comandos validados para jogador: {}", username);
-                        executeCommands(commandsList, username);
-                    } else {
-                        MGTLeaderos.LOGGER.warn("[LeaderOS Connect] Comandos validados mas sem username ou lista vazia");
-                    }
-                } else {
-                    MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao validar comandos. Código: {}", responseCode);
-                    // Ler mensagem de erro
-                    BufferedReader errReader = new BufferedReader(new InputStreamReader(conn.getErrorStream()));
-                    String errLine;
-                    StringBuilder errResponse = new StringBuilder();
-                    while ((errLine = errReader.readLine()) != null) {
-                        errResponse.append(errLine);
-                    }
-                    errReader.close();
-                    MGTLeaderos.LOGGER.error("[LeaderOS Connect] Resposta de erro: {}", errResponse.toString());
-                }
-            } catch (Exception e) {
-                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao validar comandos via API: " + e.getMessage());
-                if (MGTLeaderos.LOGGER.isDebugEnabled()) {
-                    e.printStackTrace();
-                }
+            CommandValidator validator = connectModule.getCommandValidator();
+            if (validator == null) {
+                MGTLeaderos.LOGGER.error("[LeaderOS Connect] Validador de comandos não inicializado, ignorando {} comandos", receivedIDs.size());
+                return receivedIDs.size();
             }
+            validator.submit(receivedIDs);
+            DeliveryMetrics.record(DeliveryMetrics.Stage.FRAME, start);
+            return receivedIDs.size();
 
         } catch (Exception e) {
             MGTLeaderos.LOGGER.error("[LeaderOS Connect] Erro ao processar comandos: " + e.getMessage());
             if (MGTLeaderos.LOGGER.isDebugEnabled()) {
                 MGTLeaderos.LOGGER.error("[LeaderOS Connect] Stack trace detalhado:", e);
             }
+            return 0;
         }
     }
 
-    public abstract void executeCommands(List<String> commands, String username);
+    public abstract void executeCommands(List<String> commands, String username, DeliveryTrace.PlayerDelivery delivery);
     public abstract void subscribed();
 
+    /**
+     * Conexão fechada sem ter sido pedida pelo mod: chama a reconexão no ConnectModule
+     */
+    protected void closed(int code, String reason) {
+        if (connectModule != null) {
+            connectModule.onWebSocketClosed(code, reason);
+        }
+    }
+
     public boolean isConnected() {
         return connected && subscribed;
     }
 
+    /**
+     * Tempo desde o último frame recebido do Pusher, ou -1 se a conexão nunca abriu
+     */
+    public long getMillisSinceLastFrame() {
+        long last = lastFrameAt;
+        return last > 0 ? System.currentTimeMillis() - last : -1;
+    }
+
+    public long getActivityTimeoutMillis() {
+        return activityTimeoutMillis;
+    }
+
     public void disconnect() {
+        closing = true;
+        stopHeartbeat();
         if (client != null) {
             try {
                 client.closeBlocking(); // Aguarda fechamento completo
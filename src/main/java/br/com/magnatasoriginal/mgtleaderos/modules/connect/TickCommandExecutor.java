@@ -0,0 +1,237 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryMetrics;
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
+import br.com.magnatasoriginal.mgtleaderos.metrics.jfr.CommandDispatchEvent;
+import net.minecraft.server.MinecraftServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Executa os comandos de entrega no thread do servidor, distribuídos entre os ticks
+ *
+ * Em vez de cada lista ir inteira para server.execute (200 comandos de um jogador ou
+ * 50 logins após um restart viram um pico visível no tick), os comandos entram numa fila
+ * única e a cada tick são executados até o orçamento de tempo acabar. A fila é FIFO,
+ * então a ordem dos comandos de cada jogador é mantida. Pelo menos um comando roda por
+ * tick para a fila sempre andar, mesmo com um orçamento muito pequeno
+ *
+ * submit pode ser chamado de qualquer thread; tick e flush apenas do thread do servidor
+ *
+ * Cada comando executado gera um evento JFR (mgtleaderos.CommandDispatch) quando há uma
+ * gravação ativa, com o jogador, o comando e a espera na fila
+ */
+public class TickCommandExecutor {
+    // Thread do servidor, usado depois do flush
+    private final Executor serverThread;
+    // Executa um comando como console
+    private final Consumer<String> dispatcher;
+    private volatile long budgetNanos;
+    private final Queue<PendingCommand> backlog = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlogSize = new AtomicInteger();
+    // closed e a entrada no backlog andam juntos: um submit nunca fica para trás do flush
+    private final Object closeLock = new Object();
+    private boolean closed = false;
+
+    // Estatísticas (escritas só no thread do servidor)
+    private volatile long lastTickNanos = 0;
+    private volatile long maxTickNanos = 0;
+    private volatile int lastTickCommands = 0;
+    private volatile long executedTotal = 0;
+
+    private static final class PendingCommand {
+        private final String playerName;
+        private final String command;
+        // System.nanoTime() da entrega ao executor (métrica da etapa executed)
+        private final long submittedAt;
+        // Recebe o resultado da execução (/leaderos trace), ou null
+        private final DeliveryTrace.Tracker tracker;
+
+        private PendingCommand(String playerName, String command, long submittedAt, DeliveryTrace.Tracker tracker) {
+            this.playerName = playerName;
+            this.command = command;
+            this.submittedAt = submittedAt;
+            this.tracker = tracker;
+        }
+    }
+
+    /**
+     * Construtor do TickCommandExecutor
+     * @param server Instância do servidor Minecraft
+     * @param budgetMs Tempo máximo por tick gasto executando comandos de entrega
+     */
+    public TickCommandExecutor(MinecraftServer server, long budgetMs) {
+        // Executar como console (igual ao plugin: Bukkit.dispatchCommand)
+        this(server, command -> server.getCommands().performPrefixedCommand(server.createCommandSourceStack(), command), budgetMs);
+    }
+
+    /**
+     * Construtor sem o MinecraftServer, usado nos testes
+     * @param serverThread Executor do thread do servidor
+     * @param dispatcher Executa um comando; uma exceção conta como falha
+     * @param budgetMs Tempo máximo por tick gasto executando comandos de entrega
+     */
+    TickCommandExecutor(Executor serverThread, Consumer<String> dispatcher, long budgetMs) {
+        this.serverThread = serverThread;
+        this.dispatcher = dispatcher;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, budgetMs));
+    }
+
+    /**
+     * Enfileira os comandos de um jogador para execução nos próximos ticks
+     * @param playerName Jogador dono da entrega (usado nos logs)
+     * @param commands Comandos na ordem em que devem ser executados
+     */
+    public void submit(String playerName, List<String> commands) {
+        submit(playerName, commands, null);
+    }
+
+    /**
+     * Enfileira os comandos de um jogador para execução nos próximos ticks
+     * @param playerName Jogador dono da entrega (usado nos logs)
+     * @param commands Comandos na ordem em que devem ser executados
+     * @param tracker Recebe o resultado de cada comando, no thread do servidor (pode ser null)
+     */
+    public void submit(String playerName, List<String> commands, DeliveryTrace.Tracker tracker) {
+        long now = System.nanoTime();
+        synchronized (closeLock) {
+            if (!closed) {
+                for (String command : commands) {
+                    backlog.add(new PendingCommand(playerName, command, now, tracker));
+                }
+                backlogSize.addAndGet(commands.size());
+                return;
+            }
+        }
+        // Módulo já finalizado (ex: validação que terminou durante um reload): ninguém
+        // mais chama tick, então executa direto no thread do servidor
+        serverThread.execute(() -> commands.forEach(command -> execute(new PendingCommand(playerName, command, now, tracker))));
+    }
+
+    /**
+     * Executa comandos da fila até o orçamento do tick acabar
+     * Chamado no fim de cada tick do servidor
+     */
+    public void tick() {
+        if (backlog.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int executed = 0;
+        PendingCommand next;
+        do {
+            next = backlog.poll();
+            if (next == null) {
+                break;
+            }
+            execute(next);
+            executed++;
+        } while (System.nanoTime() - start < budgetNanos);
+
+        long elapsed = System.nanoTime() - start;
+        backlogSize.addAndGet(-executed);
+        lastTickNanos = elapsed;
+        lastTickCommands = executed;
+        maxTickNanos = Math.max(maxTickNanos, elapsed);
+        executedTotal += executed;
+    }
+
+    /**
+     * Executa tudo o que ainda está na fila, sem orçamento
+     * Usado ao desabilitar o módulo: os comandos já saíram da fila persistente e do
+     * ledger, então não podem ser descartados. Depois do flush, submit executa direto
+     */
+    public void flush() {
+        synchronized (closeLock) {
+            closed = true;
+        }
+        int executed = 0;
+        PendingCommand next;
+        while ((next = backlog.poll()) != null) {
+            execute(next);
+            executed++;
+        }
+        backlogSize.addAndGet(-executed);
+        executedTotal += executed;
+        if (executed > 0) {
+            MGTLeaderos.LOGGER.info("[LeaderOS] {} comandos restantes executados ao finalizar", executed);
+        }
+    }
+
+    private void execute(PendingCommand pending) {
+        CommandDispatchEvent event = new CommandDispatchEvent();
+        event.begin();
+        long queueWait = System.nanoTime() - pending.submittedAt;
+        boolean success = false;
+        try {
+            dispatcher.accept(pending.command);
+            success = true;
+            MGTLeaderos.LOGGER.info("[LeaderOS] Comando executado para {}: {}", pending.playerName, pending.command);
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Erro ao executar comando para " + pending.playerName + ": " + pending.command + " (" + e.getMessage() + ")");
+        }
+        DeliveryMetrics.commandExecuted(success);
+        DeliveryMetrics.record(DeliveryMetrics.Stage.EXECUTED, pending.submittedAt);
+        if (pending.tracker != null) {
+            pending.tracker.onCommandExecuted(success);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = pending.playerName;
+            event.command = pending.command;
+            event.bytes = pending.command.getBytes(StandardCharsets.UTF_8).length;
+            event.success = success;
+            event.queueWait = queueWait;
+            event.backlog = backlogSize.get();
+            event.commit();
+        }
+    }
+
+    /**
+     * Quantidade de comandos aguardando execução
+     */
+    public int getBacklogSize() {
+        return backlogSize.get();
+    }
+
+    /**
+     * Altera o orçamento por tick sem recriar o executor (reload da configuração)
+     * Vale a partir do próximo tick; comandos na fila não são afetados
+     */
+    public void setBudgetMillis(long budgetMs) {
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, budgetMs));
+    }
+
+    public long getBudgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    /**
+     * Tempo gasto executando comandos no último tick com trabalho
+     */
+    public double getLastTickMillis() {
+        return lastTickNanos / 1_000_000.0;
+    }
+
+    public double getMaxTickMillis() {
+        return maxTickNanos / 1_000_000.0;
+    }
+
+    public int getLastTickCommands() {
+        return lastTickCommands;
+    }
+
+    public long getExecutedTotal() {
+        return executedTotal;
+    }
+}
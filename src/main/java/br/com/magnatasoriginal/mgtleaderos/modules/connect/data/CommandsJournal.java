@@ -0,0 +1,233 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect.data;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Journal append-only da fila de comandos
+ * Cada adição ou remoção vira um único registro no fim do arquivo, então o custo
+ * de escrita depende do tamanho da mudança e não do tamanho da fila inteira
+ *
+ * Formato do registro: [int tamanho][int crc32][payload]
+ * Payload de OP_ADD: [byte operação][UTF jogador][int quantidade][UTF comando]*
+ * Payload de OP_ADD_UUID: [byte operação][UTF jogador][long uuid msb][long uuid lsb][int quantidade][UTF comando]*
+ * Payload de OP_REMOVE: [byte operação][UTF jogador]
+ *
+ * Não é thread-safe: deve ser usado apenas pelo executor do CommandsQueue
+ */
+public class CommandsJournal implements Closeable {
+    static final byte OP_ADD = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_ADD_UUID = 3;
+
+    private static final int HEADER_SIZE = 8;
+    // Limite de sanidade para detectar registros corrompidos durante o replay
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final File file;
+    private FileChannel channel;
+    private int recordCount = 0;
+    private long bytesWritten = 0;
+    // Bytes escritos desde o último fsync
+    private long unsyncedBytes = 0;
+    private boolean dirty = false;
+
+    /**
+     * Construtor do CommandsJournal
+     * @param file Arquivo do journal
+     */
+    public CommandsJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Abre um journal novo e vazio para receber registros
+     * Cada geração do snapshot tem o próprio journal, então o arquivo nunca é reaproveitado
+     */
+    public void open() throws IOException {
+        file.getParentFile().mkdirs();
+        channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        recordCount = 0;
+        dirty = false;
+    }
+
+    /**
+     * Aplica todos os registros válidos de um journal no índice informado (somente leitura)
+     * Um registro incompleto ou com checksum inválido no fim (servidor derrubado no meio
+     * da escrita) encerra o replay; nada depois dele foi confirmado por fsync
+     * @param file Arquivo do journal
+     * @param target Índice que recebe o estado reconstruído
+     * @return Quantidade de registros aplicados
+     */
+    public static int replay(File file, PendingCommandsIndex target) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            int applied = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            while (position + HEADER_SIZE <= size) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+
+                if (length <= 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) {
+                    break;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                channel.read(payload, position + HEADER_SIZE);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                apply(payload.array(), target);
+                position += HEADER_SIZE + length;
+                applied++;
+            }
+
+            if (position < size) {
+                MGTLeaderos.LOGGER.warn("[LeaderOS] Journal " + file.getName() + " com " + (size - position) + " bytes inválidos no fim, descartando registro incompleto");
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * Aplica um registro no índice de comandos
+     */
+    private static void apply(byte[] payload, PendingCommandsIndex target) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String playerName = in.readUTF();
+
+        if (op == OP_ADD || op == OP_ADD_UUID) {
+            UUID playerUuid = op == OP_ADD_UUID ? new UUID(in.readLong(), in.readLong()) : null;
+            int count = in.readInt();
+            List<String> commands = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                commands.add(in.readUTF());
+            }
+            target.add(playerName, playerUuid, commands);
+        } else if (op == OP_REMOVE) {
+            target.remove(playerName);
+        }
+    }
+
+    /**
+     * Registra a adição de comandos à fila de um jogador
+     * @param playerUuid UUID do jogador ou null se desconhecido
+     */
+    public void appendAdd(String playerName, UUID playerUuid, List<String> commands) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(playerUuid != null ? OP_ADD_UUID : OP_ADD);
+        out.writeUTF(playerName);
+        if (playerUuid != null) {
+            out.writeLong(playerUuid.getMostSignificantBits());
+            out.writeLong(playerUuid.getLeastSignificantBits());
+        }
+        out.writeInt(commands.size());
+        for (String command : commands) {
+            out.writeUTF(command);
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Registra a remoção da fila de um jogador
+     */
+    public void appendRemove(String playerName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(playerName);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Escreve um registro no fim do journal (sem fsync)
+     */
+    private void append(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        record.flip();
+
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        recordCount++;
+        bytesWritten += record.limit();
+        unsyncedBytes += record.limit();
+        dirty = true;
+    }
+
+    /**
+     * Força os registros pendentes para o disco (fsync em grupo)
+     */
+    public void sync() throws IOException {
+        if (dirty && channel != null && channel.isOpen()) {
+            channel.force(false);
+            dirty = false;
+            unsyncedBytes = 0;
+        }
+    }
+
+    /**
+     * Retorna a quantidade de registros gravados neste journal
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Bytes gravados neste journal (cabeçalhos incluídos)
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Bytes gravados que o próximo sync vai forçar para o disco
+     */
+    public long getUnsyncedBytes() {
+        return unsyncedBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            sync();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect.data;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Registro local das entregas já executadas, por chave de idempotência
+ * (ID do command-log do LeaderOS), para que um evento reenviado pelo Pusher, um replay
+ * após reconexão ou um /leaderos check nunca execute a mesma compra duas vezes
+ *
+ * A consulta não acessa o disco: um índice chave → timestamp dos registros de
+ * delivery_ledger.log responde com um get. Ele é montado a partir do arquivo na abertura e
+ * na compactação e atualizado a cada commit, então o arquivo só é lido nesses dois momentos.
+ * O índice guarda só as chaves dentro da retenção (as expiradas saem na compactação)
+ *
+ * Formato do registro: [int tamanho][int crc32][long timestamp][UTF chave]
+ * Registros mais antigos que a retenção deixam de contar e são removidos na compactação,
+ * que reescreve o arquivo de forma atômica e reconstrói o índice
+ *
+ * Fluxo: claim (reserva as chaves novas) → commit (grava com fsync antes de executar)
+ * ou release (validação falhou, a chave pode ser tentada de novo). Uma entrega confirmada
+ * que não chegou ao destino é desfeita com revoke, que grava um registro de remoção
+ */
+public class DeliveryLedger implements Closeable {
+    private static final String FILE_NAME = "delivery_ledger.log";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    private static final long COMPACT_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    // Timestamp do registro que desfaz uma entrega (revoke)
+    private static final long REVOKED = -1;
+
+    private final File file;
+    private volatile long retentionMillis;
+    private FileChannel channel;
+    // Chaves gravadas no arquivo → timestamp da entrega
+    private final Map<String, Long> recorded = new HashMap<>();
+    // Chaves reservadas por um claim e ainda não confirmadas
+    private final Set<String> inFlight = new HashSet<>();
+    // Chaves confirmadas cujo registro não pôde ser gravado no disco → timestamp da entrega
+    // (gravadas na próxima compactação)
+    private final Map<String, Long> unpersisted = new HashMap<>();
+    private int recordCount = 0;
+    private long lastCompaction = 0;
+    private long duplicatesBlocked = 0;
+
+    /**
+     * Construtor do DeliveryLedger
+     * @param dataFolder Pasta onde o arquivo do ledger é salvo
+     * @param retentionMillis Tempo que uma entrega continua bloqueando repetições
+     */
+    public DeliveryLedger(String dataFolder, long retentionMillis) {
+        this.file = new File(dataFolder, FILE_NAME);
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Abre o ledger: descarta registros expirados e monta o índice com os restantes
+     */
+    public synchronized void open() throws IOException {
+        file.getParentFile().mkdirs();
+        compact();
+        MGTLeaderos.LOGGER.info("[LeaderOS] Ledger de entregas carregado com " + recordCount + " registros");
+    }
+
+    /**
+     * Reserva as chaves que ainda não foram entregues nem estão em andamento
+     * @param keys Chaves recebidas no evento
+     * @return Chaves novas, na ordem recebida; as demais são descartadas como duplicadas
+     */
+    public synchronized List<String> claim(Collection<String> keys) {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        List<String> claimed = new ArrayList<>(keys.size());
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (inFlight.contains(key) || unpersisted.containsKey(key) || isRecorded(key, cutoff)) {
+                duplicatesBlocked++;
+                MGTLeaderos.LOGGER.warn("[LeaderOS] Entrega " + key + " já processada, ignorando repetição");
+                continue;
+            }
+            inFlight.add(key);
+            claimed.add(key);
+        }
+        return claimed;
+    }
+
+    /**
+     * Grava as chaves como entregues (com fsync) e encerra a reserva
+     * Deve ser chamado antes de executar os comandos: uma queda depois do commit nunca
+     * leva a uma segunda execução
+     */
+    public synchronized void commit(Collection<String> keys) {
+        long now = System.currentTimeMillis();
+        try {
+            for (String key : keys) {
+                append(key, now);
+            }
+            channel.force(false);
+            for (String key : keys) {
+                recorded.put(key, now);
+            }
+        } catch (IOException e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Falha ao gravar ledger de entregas, proteção mantida em memória até a próxima compactação: " + e.getMessage());
+            for (String key : keys) {
+                unpersisted.put(key, now);
+            }
+        }
+        inFlight.removeAll(keys);
+
+        if (now - lastCompaction >= COMPACT_INTERVAL_MS) {
+            try {
+                compact();
+            } catch (IOException e) {
+                MGTLeaderos.LOGGER.error("[LeaderOS] Falha ao compactar ledger de entregas: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Libera a reserva sem gravar (a entrega não aconteceu e pode ser tentada de novo)
+     */
+    public synchronized void release(Collection<String> keys) {
+        inFlight.removeAll(keys);
+    }
+
+    /**
+     * Desfaz o commit de chaves cuja entrega falhou depois de confirmada (ex: fila offline
+     * não gravou os comandos), para que uma nova entrega não seja bloqueada
+     */
+    public synchronized void revoke(Collection<String> keys) {
+        for (String key : keys) {
+            recorded.remove(key);
+            unpersisted.remove(key);
+            inFlight.remove(key);
+        }
+        try {
+            for (String key : keys) {
+                append(key, REVOKED);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Falha ao gravar remoção no ledger de entregas, válida só até reiniciar: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Verifica se a chave já foi entregue dentro da retenção
+     */
+    public synchronized boolean isDelivered(String key) {
+        return unpersisted.containsKey(key) || isRecorded(key, System.currentTimeMillis() - retentionMillis);
+    }
+
+    private boolean isRecorded(String key, long cutoff) {
+        Long timestamp = recorded.get(key);
+        return timestamp != null && timestamp >= cutoff;
+    }
+
+    private void append(String key, long timestamp) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(timestamp);
+        out.writeUTF(key);
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        recordCount++;
+    }
+
+    /**
+     * Percorre os registros válidos do arquivo; para no primeiro registro incompleto ou corrompido
+     */
+    private void scan(RecordVisitor visitor) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            byte[] payload = new byte[256];
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    return;
+                }
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                try {
+                    in.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    return;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                visitor.visit(record.readLong(), record.readUTF());
+            }
+        }
+    }
+
+    /**
+     * Reescreve o arquivo só com os registros dentro da retenção e reconstrói o índice
+     * temp → fsync → rename atômico, então uma queda no meio não perde o ledger
+     * Chaves que não puderam ser gravadas no commit entram no arquivo novo; só saem da
+     * memória depois que o rename deu certo
+     */
+    private void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        long cutoff = now - retentionMillis;
+        Map<String, Long> kept = new LinkedHashMap<>();
+        scan((timestamp, key) -> {
+            if (timestamp == REVOKED) {
+                kept.remove(key);
+            } else if (timestamp >= cutoff) {
+                kept.merge(key, timestamp, Math::max);
+            }
+        });
+        unpersisted.forEach((key, timestamp) -> {
+            if (timestamp >= cutoff) {
+                kept.merge(key, timestamp, Math::max);
+            }
+        });
+
+        closeChannel();
+        File temp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        channel = FileChannel.open(temp.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        recordCount = 0;
+        for (Map.Entry<String, Long> entry : kept.entrySet()) {
+            append(entry.getKey(), entry.getValue());
+        }
+        channel.force(true);
+        channel.close();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        recorded.clear();
+        recorded.putAll(kept);
+        unpersisted.clear();
+        lastCompaction = now;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.close();
+        }
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public synchronized long getDuplicatesBlocked() {
+        return duplicatesBlocked;
+    }
+
+    /**
+     * Chaves no índice em memória (dentro da retenção até a última compactação)
+     */
+    public synchronized int getIndexSize() {
+        return recorded.size();
+    }
+
+    /**
+     * Chaves entregues que ainda não foram gravadas no arquivo
+     */
+    public synchronized int getUnpersistedCount() {
+        return unpersisted.size();
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    /**
+     * Altera a retenção sem reabrir o ledger (reload da configuração)
+     * Uma retenção menor vale na hora para as consultas e libera espaço na próxima
+     * compactação; uma maior não recupera registros que já foram compactados
+     */
+    public void setRetentionMillis(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+        }
+        closeChannel();
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(long timestamp, String key) throws IOException;
+    }
+}
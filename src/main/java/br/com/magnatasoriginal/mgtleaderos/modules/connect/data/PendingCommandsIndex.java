@@ -0,0 +1,158 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Índice em memória dos comandos pendentes
+ * Chave principal: nome do jogador sem diferenciar maiúsculas (o site e o jogo nem
+ * sempre usam a mesma capitalização). Índice secundário: UUID, quando conhecido, para
+ * o login encontrar a entrada mesmo que o jogador tenha trocado de nome
+ *
+ * Thread-safe: cada jogador é um bucket do ConcurrentHashMap, então mutações de
+ * jogadores diferentes não disputam o mesmo lock. As entradas são imutáveis, então
+ * leituras de qualquer thread veem sempre uma lista completa e consistente
+ */
+public class PendingCommandsIndex {
+    private final Map<String, Entry> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, String> byUuid = new ConcurrentHashMap<>();
+
+    /**
+     * Comandos pendentes de um jogador (imutável)
+     */
+    public static final class Entry {
+        private final String playerName;
+        private final UUID playerUuid;
+        private final List<String> commands;
+
+        Entry(String playerName, UUID playerUuid, List<String> commands) {
+            this.playerName = playerName;
+            this.playerUuid = playerUuid;
+            this.commands = commands;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        public UUID getPlayerUuid() {
+            return playerUuid;
+        }
+
+        public List<String> getCommands() {
+            return commands;
+        }
+    }
+
+    static String key(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Resolve a chave do jogador: a entrada ligada ao UUID tem prioridade sobre o nome
+     */
+    private String resolveKey(String playerName, UUID playerUuid) {
+        String linkedKey = playerUuid != null ? byUuid.get(playerUuid) : null;
+        return linkedKey != null && byName.containsKey(linkedKey) ? linkedKey : key(playerName);
+    }
+
+    /**
+     * Adiciona comandos ao fim da fila do jogador, criando a entrada se necessário
+     * @param playerUuid UUID do jogador ou null se desconhecido
+     */
+    public Entry add(String playerName, UUID playerUuid, List<String> commands) {
+        return add(playerName, playerUuid, commands, null);
+    }
+
+    /**
+     * Adiciona comandos ao fim da fila do jogador
+     * @param onApplied Chamado dentro do bucket do jogador, antes de outra mutação do mesmo
+     *                  jogador, com a entrada resultante (pode ser null)
+     */
+    public Entry add(String playerName, UUID playerUuid, List<String> commands, Consumer<Entry> onApplied) {
+        String key = resolveKey(playerName, playerUuid);
+        Entry entry = byName.compute(key, (k, current) -> {
+            List<String> merged = new ArrayList<>(current != null ? current.commands.size() + commands.size() : commands.size());
+            if (current != null) {
+                merged.addAll(current.commands);
+            }
+            merged.addAll(commands);
+
+            Entry updated = current != null
+                ? new Entry(current.playerName, current.playerUuid != null ? current.playerUuid : playerUuid, List.copyOf(merged))
+                : new Entry(playerName, playerUuid, List.copyOf(merged));
+            if (onApplied != null) {
+                onApplied.accept(updated);
+            }
+            return updated;
+        });
+
+        if (entry.playerUuid != null) {
+            byUuid.put(entry.playerUuid, key);
+        }
+        return entry;
+    }
+
+    /**
+     * Remove a entrada do jogador
+     * @return Entrada removida ou null se não havia comandos
+     */
+    public Entry remove(String playerName) {
+        return remove(playerName, null, null);
+    }
+
+    /**
+     * Remove a entrada do jogador de forma atômica
+     * @param playerUuid UUID do jogador ou null (tem prioridade sobre o nome)
+     * @param onRemoved Chamado dentro do bucket do jogador com a entrada removida
+     * @return Entrada removida ou null se não havia comandos
+     */
+    public Entry remove(String playerName, UUID playerUuid, Consumer<Entry> onRemoved) {
+        String key = resolveKey(playerName, playerUuid);
+        Entry[] removed = {null};
+        byName.computeIfPresent(key, (k, current) -> {
+            removed[0] = current;
+            if (onRemoved != null) {
+                onRemoved.accept(current);
+            }
+            return null;
+        });
+
+        if (removed[0] != null && removed[0].playerUuid != null) {
+            byUuid.remove(removed[0].playerUuid, key);
+        }
+        return removed[0];
+    }
+
+    public Entry get(String playerName) {
+        return byName.get(key(playerName));
+    }
+
+    public Entry get(UUID playerUuid) {
+        String key = byUuid.get(playerUuid);
+        return key != null ? byName.get(key) : null;
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * Percorre as entradas de forma fracamente consistente (nunca lança ConcurrentModificationException)
+     */
+    public void forEach(Consumer<Entry> action) {
+        byName.values().forEach(action);
+    }
+
+    /**
+     * Copia as referências das entradas atuais (as entradas são imutáveis)
+     */
+    public List<Entry> entries() {
+        return new ArrayList<>(byName.values());
+    }
+}
@@ -0,0 +1,242 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect.data;
+
+import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Armazena os snapshots da fila de comandos em gerações com checksum
+ *
+ * Cada geração N tem dois arquivos:
+ * - commands_queue.N.snapshot: segmento binário com todas as entradas pendentes
+ * - commands_queue.N.journal: mutações gravadas depois do snapshot N
+ *
+ * Formato do snapshot (big-endian):
+ * Cabeçalho: [int magic][long geração][int entradas][long tamanho do payload][int crc32 do payload]
+ * Entrada: [string jogador][long uuid msb][long uuid lsb][int quantidade][string comando]*
+ * String: [int tamanho em bytes][UTF-8]. UUID desconhecido é gravado como 0/0
+ *
+ * A leitura é feita sobre o arquivo mapeado em memória, decodificando as entradas
+ * direto do segmento, sem carregar o arquivo inteiro num byte[] ou String intermediários
+ *
+ * O snapshot é escrito num arquivo temporário, sincronizado com fsync e só então
+ * renomeado atomicamente, então uma queda no meio da escrita nunca deixa o arquivo
+ * final pela metade. As últimas KEEP_GENERATIONS gerações ficam no disco para a
+ * recuperação voltar à anterior caso a mais nova esteja corrompida
+ */
+public class QueueSnapshotStore {
+    private static final int MAGIC = 0x4D475132; // "MGQ2"
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 8 + 4;
+    private static final int KEEP_GENERATIONS = 3;
+    private static final Pattern GENERATION_FILE = Pattern.compile("^(.+)\\.(\\d+)\\.(snapshot|journal)$");
+
+    private final File directory;
+    private final String baseName;
+
+    /**
+     * Construtor do QueueSnapshotStore
+     * @param directory Pasta onde ficam os arquivos
+     * @param baseName Prefixo dos arquivos (ex: commands_queue)
+     */
+    public QueueSnapshotStore(File directory, String baseName) {
+        this.directory = directory;
+        this.baseName = baseName;
+    }
+
+    public File snapshotFile(long generation) {
+        return new File(directory, baseName + "." + generation + ".snapshot");
+    }
+
+    public File journalFile(long generation) {
+        return new File(directory, baseName + "." + generation + ".journal");
+    }
+
+    /**
+     * Lista as gerações existentes no disco (snapshot ou journal), em ordem crescente
+     */
+    public List<Long> generations() {
+        TreeSet<Long> generations = new TreeSet<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = GENERATION_FILE.matcher(file.getName());
+                if (matcher.matches() && matcher.group(1).equals(baseName)) {
+                    generations.add(Long.parseLong(matcher.group(2)));
+                }
+            }
+        }
+        return new ArrayList<>(generations);
+    }
+
+    /**
+     * Grava o snapshot de uma geração de forma atômica
+     * temp → fsync → rename atômico → fsync da pasta
+     * @return Tamanho do snapshot gravado em bytes
+     */
+    public long write(long generation, Collection<PendingCommandsIndex.Entry> entries) throws IOException {
+        directory.mkdirs();
+        File target = snapshotFile(generation);
+        File temp = new File(directory, target.getName() + ".tmp");
+
+        long size;
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Payload primeiro, depois o cabeçalho com tamanho e checksum já conhecidos
+            channel.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), crc));
+            for (PendingCommandsIndex.Entry entry : entries) {
+                writeEntry(out, entry);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putLong(generation).putInt(entries.size())
+                .putLong(out.size()).putInt((int) crc.getValue()).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            size = HEADER_SIZE + out.size();
+        }
+
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        return size;
+    }
+
+    private static void writeEntry(DataOutputStream out, PendingCommandsIndex.Entry entry) throws IOException {
+        writeString(out, entry.getPlayerName());
+        out.writeLong(entry.getPlayerUuid() != null ? entry.getPlayerUuid().getMostSignificantBits() : 0L);
+        out.writeLong(entry.getPlayerUuid() != null ? entry.getPlayerUuid().getLeastSignificantBits() : 0L);
+        out.writeInt(entry.getCommands().size());
+        for (String command : entry.getCommands()) {
+            writeString(out, command);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Lê e valida o snapshot de uma geração, aplicando as entradas no índice
+     * O índice só é alterado se o checksum do segmento inteiro for válido
+     * @return true se o snapshot foi carregado, false se ausente ou corrompido
+     */
+    public boolean read(long generation, PendingCommandsIndex target) {
+        File file = snapshotFile(generation);
+        if (!file.exists()) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("cabeçalho ausente");
+            }
+
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (segment.getInt() != MAGIC || segment.getLong() != generation) {
+                throw new IOException("cabeçalho inválido");
+            }
+            int entries = segment.getInt();
+            long length = segment.getLong();
+            int checksum = segment.getInt();
+            if (channel.size() - HEADER_SIZE != length) {
+                throw new IOException("tamanho esperado " + length + ", encontrado " + (channel.size() - HEADER_SIZE));
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(segment.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("checksum inválido");
+            }
+
+            List<String> commands = new ArrayList<>();
+            for (int i = 0; i < entries; i++) {
+                String playerName = readString(segment);
+                long msb = segment.getLong();
+                long lsb = segment.getLong();
+                int count = segment.getInt();
+                commands.clear();
+                for (int c = 0; c < count; c++) {
+                    commands.add(readString(segment));
+                }
+                target.add(playerName, msb == 0L && lsb == 0L ? null : new UUID(msb, lsb), commands);
+            }
+            return true;
+        } catch (Exception e) {
+            MGTLeaderos.LOGGER.error("[LeaderOS] Snapshot " + file.getName() + " corrompido (" + e.getMessage() + "), mantido como .corrupt");
+            quarantine(file);
+            return false;
+        }
+    }
+
+    private static String readString(ByteBuffer segment) throws IOException {
+        int length = segment.getInt();
+        if (length < 0 || length > segment.remaining()) {
+            throw new IOException("string com tamanho inválido: " + length);
+        }
+        String value = StandardCharsets.UTF_8.decode(segment.slice().limit(length)).toString();
+        segment.position(segment.position() + length);
+        return value;
+    }
+
+    /**
+     * Remove gerações antigas, mantendo as últimas KEEP_GENERATIONS
+     */
+    public void prune(long currentGeneration) {
+        long oldestKept = currentGeneration - KEEP_GENERATIONS + 1;
+        for (long generation : generations()) {
+            if (generation < oldestKept) {
+                snapshotFile(generation).delete();
+                journalFile(generation).delete();
+            }
+        }
+    }
+
+    /**
+     * Renomeia um arquivo corrompido para não ser lido nem apagado pela limpeza de gerações
+     */
+    private void quarantine(File file) {
+        try {
+            Files.move(file.toPath(), new File(directory, file.getName() + ".corrupt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            MGTLeaderos.LOGGER.warn("[LeaderOS] Não foi possível isolar arquivo corrompido " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sincroniza a pasta para o rename sobreviver a uma queda de energia
+     * Nem todo sistema permite abrir diretórios (ex: Windows), então a falha é ignorada
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
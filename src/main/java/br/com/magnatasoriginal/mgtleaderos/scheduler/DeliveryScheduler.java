@@ -4,39 +4,160 @@ import br.com.magnatasoriginal.mgtleaderos.MGTLeaderos;
 import br.com.magnatasoriginal.mgtleaderos.delivery.DeliveryManager;
 
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /**
  * Agendador de tarefas periódicas
- * Executa verificações de entregas pendentes em intervalos regulares
+ * Verifica a fila de entregas HTTP em modo híbrido push/poll:
+ * - PUSH: com a subscrição do Pusher saudável as entregas chegam pelo WebSocket, e a fila
+ *   só é lida raramente, como rede de segurança
+ * - POLL: com o socket fora, a fila é lida em intervalo curto até o push voltar
+ *
+ * O POLL só lê a fila depois que o socket ficou sem subscrição por um intervalo inteiro:
+ * numa reconexão rápida quem recupera as entregas é o catch-up disparado pela subscrição,
+ * e a fila não é lida em paralelo com os eventos que o Pusher ainda está entregando. As
+ * leituras de segurança do PUSH podem coincidir com um send-commands; a compra não é
+ * executada duas vezes porque a fila HTTP e o WebSocket reservam os mesmos IDs de
+ * command-log no ledger (ver DeliveryManager)
+ *
+ * As leituras são condicionais (ETag/Last-Modified), então uma fila sem alterações custa
+ * um 304. O modo é reavaliado a cada verificação e também quando o estado do socket muda
+ * (onConnectionStateChanged), sem esperar o intervalo longo do modo PUSH
  */
 public class DeliveryScheduler {
+
+    public enum Mode {
+        PUSH,
+        POLL
+    }
+
     private final ScheduledExecutorService scheduler;
     private final DeliveryManager deliveryManager;
-    private final int intervalSeconds;
+    private final BooleanSupplier pushHealthy;
+    private final long pushIntervalSeconds;
+    private final long pollIntervalSeconds;
+    private ScheduledFuture<?> next;
+    private long nextRunAt = 0;
+    // Quando o socket perdeu a subscrição (0 = subscrito) e quando a fila foi lida por último
+    private volatile long unhealthySince = 0;
+    private volatile long lastPollAt = 0;
+    private volatile Mode mode = Mode.PUSH;
+    private volatile boolean stopped = false;
 
-    public DeliveryScheduler(DeliveryManager deliveryManager, int intervalSeconds) {
-        this.scheduler = Executors.newScheduledThreadPool(1);
+    /**
+     * Construtor do DeliveryScheduler
+     * @param deliveryManager Responsável por ler e entregar a fila
+     * @param pushHealthy Indica se a subscrição do WebSocket está ativa
+     * @param pushIntervalSeconds Intervalo das verificações de segurança no modo PUSH
+     * @param pollIntervalSeconds Intervalo das verificações no modo POLL (socket fora)
+     */
+    public DeliveryScheduler(DeliveryManager deliveryManager, BooleanSupplier pushHealthy,
+                             long pushIntervalSeconds, long pollIntervalSeconds) {
+        this.scheduler = Executors.newScheduledThreadPool(1, r -> {
+            Thread thread = new Thread(r, "LeaderOS-DeliveryScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
         this.deliveryManager = deliveryManager;
-        this.intervalSeconds = intervalSeconds;
+        this.pushHealthy = pushHealthy;
+        this.pushIntervalSeconds = Math.max(1, pushIntervalSeconds);
+        this.pollIntervalSeconds = Math.max(1, pollIntervalSeconds);
     }
 
     /**
-     * Inicia o agendamento de verificações periódicas
+     * Inicia o agendamento de verificações
      */
     public void start() {
-        MGTLeaderos.LOGGER.info("Iniciando verificação de entregas a cada " + intervalSeconds + " segundos.");
+        MGTLeaderos.LOGGER.info("Iniciando verificação de entregas: a cada {}s com o WebSocket ativo, {}s sem ele.",
+            pushIntervalSeconds, pollIntervalSeconds);
+        schedule(currentInterval(), false);
+    }
+
+    /**
+     * O socket conectou ou caiu: adianta a próxima verificação se o novo modo pede um
+     * intervalo menor (ex: queda no meio de um intervalo PUSH de minutos)
+     */
+    public void onConnectionStateChanged() {
+        schedule(currentInterval(), true);
+    }
+
+    private long currentInterval() {
+        boolean healthy = pushHealthy.getAsBoolean();
+        if (healthy) {
+            unhealthySince = 0;
+        } else if (unhealthySince == 0) {
+            unhealthySince = System.currentTimeMillis();
+        }
+        Mode current = healthy ? Mode.PUSH : Mode.POLL;
+        if (current != mode) {
+            mode = current;
+            MGTLeaderos.LOGGER.info("[LeaderOS] Modo de entrega: {}", current == Mode.PUSH
+                ? "push (WebSocket ativo, verificação de segurança a cada " + pushIntervalSeconds + "s)"
+                : "poll (WebSocket fora, verificando a fila a cada " + pollIntervalSeconds + "s)");
+        }
+        return current == Mode.PUSH ? pushIntervalSeconds : pollIntervalSeconds;
+    }
 
-        scheduler.scheduleAtFixedRate(() -> {
+    /**
+     * Agenda a próxima verificação
+     * @param onlyIfSooner Mantém o agendamento atual se ele já acontece antes
+     */
+    private synchronized void schedule(long delaySeconds, boolean onlyIfSooner) {
+        if (stopped) {
+            return;
+        }
+        long runAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delaySeconds);
+        if (next != null) {
+            if (onlyIfSooner && nextRunAt <= runAt) {
+                return;
+            }
+            next.cancel(false);
+        }
+        try {
+            next = scheduler.schedule(this::run, delaySeconds, TimeUnit.SECONDS);
+            nextRunAt = runAt;
+        } catch (RejectedExecutionException e) {
+            next = null;
+        }
+    }
+
+    private void run() {
+        synchronized (this) {
+            next = null;
+        }
+        long interval = currentInterval();
+        if (shouldPoll()) {
             try {
                 MGTLeaderos.LOGGER.debug("Verificando entregas pendentes...");
-                deliveryManager.checkAndDeliverPurchases();
+                lastPollAt = System.currentTimeMillis();
+                deliveryManager.requestPoll();
             } catch (Exception e) {
                 MGTLeaderos.LOGGER.error("Erro durante verificação de entregas: " + e.getMessage());
-                e.printStackTrace();
             }
-        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+        schedule(interval, false);
+    }
+
+    /**
+     * Com o socket fora, lê a fila só depois de um intervalo POLL inteiro sem subscrição;
+     * com o socket subscrito, só quando a última leitura tem um intervalo PUSH inteiro
+     * (uma verificação adiantada por uma queda que já se resolveu não conta)
+     */
+    private boolean shouldPoll() {
+        long now = System.currentTimeMillis();
+        long since = unhealthySince;
+        if (since != 0) {
+            return now - since >= TimeUnit.SECONDS.toMillis(pollIntervalSeconds);
+        }
+        return now - lastPollAt >= TimeUnit.SECONDS.toMillis(pushIntervalSeconds);
+    }
+
+    public Mode getMode() {
+        return mode;
     }
 
     /**
@@ -44,6 +165,13 @@ public class DeliveryScheduler {
      */
     public void stop() {
         MGTLeaderos.LOGGER.info("Parando verificação de entregas.");
+        synchronized (this) {
+            stopped = true;
+            if (next != null) {
+                next.cancel(false);
+                next = null;
+            }
+        }
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -54,4 +182,3 @@ public class DeliveryScheduler {
         }
     }
 }
-
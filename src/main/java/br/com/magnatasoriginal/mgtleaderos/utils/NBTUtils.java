@@ -6,14 +6,13 @@ import net.minecraft.nbt.TagParser;
 
 /**
  * Utilitário para manipulação de NBT
- * TODO: Implementar suporte a DataComponents do Minecraft 1.21.1
- * Por enquanto, NBT não é processado (o plugin original usa ItemStack simples)
+ * Os componentes dos itens entregues (DataComponents do 1.21.1) são tratados pelo
+ * ComponentPatchCompiler, no pacote delivery
  */
 public class NBTUtils {
 
     /**
      * Converte uma string NBT em CompoundTag
-     * TODO: Adaptar para DataComponents quando necessário
      */
     public static CompoundTag parseNBT(String nbtString) {
         try {
@@ -0,0 +1,137 @@
+package br.com.magnatasoriginal.mgtleaderos.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Transporte compartilhado contra um servidor HTTP local: gzip nos três modos de envio
+ * e timeout por endpoint
+ *
+ * O HttpTransport é um singleton, então os timeouts alterados aqui voltam ao padrão no fim
+ */
+class HttpTransportTest {
+    private static final String BODY = "{\"commands\":[{\"command\":\"give Notch diamond\",\"username\":\"Notch\"}]}";
+
+    private final HttpTransport transport = HttpTransport.shared();
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/gzip", exchange -> respond(exchange, true, 0));
+        server.createContext("/plain", exchange -> respond(exchange, false, 0));
+        server.createContext("/slow", exchange -> respond(exchange, false, 2000));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        for (HttpTransport.Endpoint endpoint : HttpTransport.Endpoint.values()) {
+            transport.setTimeout(endpoint, endpoint.getDefaultTimeout());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, boolean gzip, long delayMillis) throws IOException {
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    @Test
+    void gzipBodyIsDecodedInEverySendMode() throws Exception {
+        HttpTransport.Endpoint endpoint = HttpTransport.Endpoint.SERVER_QUEUE;
+
+        HttpResponse<String> text = transport.send(endpoint, transport.request(endpoint, uri("/gzip")).GET().build());
+        assertEquals(BODY, text.body());
+
+        HttpResponse<InputStream> streaming = transport.sendStreaming(endpoint, transport.request(endpoint, uri("/gzip")).GET().build());
+        try (InputStream in = HttpTransport.body(streaming)) {
+            assertEquals(BODY, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        HttpResponse<InputStream> buffered = transport.sendBufferedAsync(endpoint, transport.request(endpoint, uri("/gzip")).GET().build())
+            .get(5, TimeUnit.SECONDS);
+        try (InputStream in = HttpTransport.body(buffered)) {
+            assertEquals(BODY, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void plainBodyIsReturnedAsIs() throws Exception {
+        HttpTransport.Endpoint endpoint = HttpTransport.Endpoint.SERVER_QUEUE;
+        HttpResponse<String> response = transport.send(endpoint, transport.request(endpoint, uri("/plain")).GET().build());
+        assertEquals(BODY, response.body());
+    }
+
+    @Test
+    void requestsUseTheEndpointTimeout() {
+        assertEquals(Duration.ofSeconds(15), transport.getTimeout(HttpTransport.Endpoint.SERVER_QUEUE));
+
+        transport.setTimeout(HttpTransport.Endpoint.COMMAND_VALIDATE, Duration.ofMillis(1234));
+        assertEquals(Duration.ofMillis(1234), transport.request(HttpTransport.Endpoint.COMMAND_VALIDATE, uri("/plain")).build().timeout().orElseThrow());
+        assertEquals(Duration.ofSeconds(10), transport.request(HttpTransport.Endpoint.PUSHER_AUTH, uri("/plain")).build().timeout().orElseThrow());
+    }
+
+    /**
+     * Endpoint mais lento que o próprio timeout falha; outro endpoint com timeout maior espera
+     */
+    @Test
+    void slowEndpointFailsAfterItsTimeout() throws Exception {
+        transport.setTimeout(HttpTransport.Endpoint.COMMAND_VALIDATE, Duration.ofMillis(300));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> transport.sendAsync(HttpTransport.Endpoint.COMMAND_VALIDATE,
+            transport.request(HttpTransport.Endpoint.COMMAND_VALIDATE, uri("/slow")).GET().build()).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, error.getCause());
+
+        HttpResponse<String> response = transport.sendAsync(HttpTransport.Endpoint.SERVER_QUEUE,
+            transport.request(HttpTransport.Endpoint.SERVER_QUEUE, uri("/slow")).GET().build()).get(5, TimeUnit.SECONDS);
+        assertEquals(BODY, response.body());
+    }
+}
@@ -0,0 +1,46 @@
+package br.com.magnatasoriginal.mgtleaderos.api;
+
+import br.com.magnatasoriginal.mgtleaderos.api.model.Purchase;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Leitura em streaming da fila de entregas, comparada com o modelo montado pela árvore JSON
+ */
+class PurchaseDecoderTest {
+    private static final String QUEUE = "{\"data\":["
+        + "{\"id\":1,\"player_uuid\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\",\"player_name\":\"Notch\","
+        + "\"commands\":[\"give {player} diamond\"],\"command_logs\":[\"101\",{\"id\":102}],\"extra\":{\"a\":1}},"
+        + "{\"id\":2,\"player_uuid\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\",\"player_name\":\"Notch\","
+        + "\"items\":[{\"item\":\"minecraft:stone\"}],\"command_logs\":null}"
+        + "],\"total\":2}";
+
+    @Test
+    void commandLogIdsAreReadFromBothShapes() throws Exception {
+        List<Purchase> purchases = PurchaseDecoder.readQueue(new StringReader(QUEUE));
+        assertEquals(2, purchases.size());
+        assertEquals(List.of("101", "102"), purchases.get(0).getCommandLogIds());
+        assertEquals(List.of(), purchases.get(1).getCommandLogIds());
+    }
+
+    @Test
+    void streamingMatchesTreeModel() throws Exception {
+        List<Purchase> streamed = PurchaseDecoder.readQueue(new StringReader(QUEUE));
+        JsonArray data = JsonParser.parseString(QUEUE).getAsJsonObject().getAsJsonArray("data");
+        for (int i = 0; i < streamed.size(); i++) {
+            Purchase tree = new Purchase(data.get(i).getAsJsonObject());
+            Purchase stream = streamed.get(i);
+            assertEquals(tree.getId(), stream.getId());
+            assertEquals(tree.getPlayerName(), stream.getPlayerName());
+            assertEquals(tree.getCommands(), stream.getCommands());
+            assertEquals(tree.getItems(), stream.getItems());
+            assertEquals(tree.getCommandLogIds(), stream.getCommandLogIds());
+        }
+    }
+}
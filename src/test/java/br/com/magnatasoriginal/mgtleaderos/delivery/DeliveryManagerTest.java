@@ -0,0 +1,43 @@
+package br.com.magnatasoriginal.mgtleaderos.delivery;
+
+import br.com.magnatasoriginal.mgtleaderos.api.model.Purchase;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Chaves do ledger usadas pela sincronização de recuperação para cada compra da fila HTTP
+ */
+class DeliveryManagerTest {
+    private static Purchase purchase(String json) {
+        return new Purchase(JsonParser.parseString(json).getAsJsonObject());
+    }
+
+    @Test
+    void commandLogIdsAreTheKeys() {
+        Purchase purchase = purchase("{\"id\":1,\"player_uuid\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\",\"player_name\":\"Notch\","
+            + "\"commands\":[\"give {player} diamond\"],\"command_logs\":[\"101\",\"102\"]}");
+        assertEquals(List.of("101", "102"), DeliveryManager.ledgerKeys(purchase));
+    }
+
+    @Test
+    void itemOnlyPurchaseIsKeyedById() {
+        Purchase purchase = purchase("{\"id\":2,\"player_uuid\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\",\"player_name\":\"Notch\","
+            + "\"items\":[{\"item\":\"minecraft:stone\"}]}");
+        assertEquals(List.of("purchase:2"), DeliveryManager.ledgerKeys(purchase));
+    }
+
+    /**
+     * Comandos sem command-log não têm chave estável: a compra não é executada automaticamente
+     */
+    @Test
+    void commandsWithoutCommandLogsHaveNoKeys() {
+        Purchase purchase = purchase("{\"id\":3,\"player_uuid\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\",\"player_name\":\"Notch\","
+            + "\"commands\":[\"give {player} diamond\"]}");
+        assertNull(DeliveryManager.ledgerKeys(purchase));
+    }
+}
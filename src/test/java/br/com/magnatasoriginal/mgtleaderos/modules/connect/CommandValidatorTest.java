@@ -0,0 +1,338 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import br.com.magnatasoriginal.mgtleaderos.modules.connect.data.DeliveryLedger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pipeline de validação contra um /api/command-logs/validate local
+ *
+ * O servidor falso responde um comando "run <id>" por ID recebido, para o jogador informado
+ * em players (ou "Steve"), e pode segurar o corpo da resposta depois dos cabeçalhos
+ */
+class CommandValidatorTest {
+    private static final Pattern COMMAND_ID = Pattern.compile("commands\\[\\d+\\]=([^&]+)");
+
+    private HttpServer server;
+    private ExecutorService serverThread;
+    private final Map<String, String> players = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private volatile long bodyDelayMillis = 0;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @TempDir
+    File dir;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/command-logs/validate", this::validate);
+        server.start();
+        serverThread = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverThread.shutdownNow();
+    }
+
+    private void validate(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        respond(exchange);
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        StringBuilder json = new StringBuilder("{\"commands\":[");
+        Matcher matcher = COMMAND_ID.matcher(form);
+        int count = 0;
+        while (matcher.find()) {
+            String id = matcher.group(1);
+            if (count++ > 0) {
+                json.append(',');
+            }
+            json.append("{\"command\":\"run ").append(id).append("\",\"username\":\"")
+                .append(players.getOrDefault(id, "Steve")).append("\"}");
+        }
+        batchSizes.add(count);
+        byte[] body = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+
+        // Corpo em chunks: cabeçalhos e o primeiro byte chegam antes, o resto só depois da espera
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, 0, 1);
+            out.flush();
+            if (bodyDelayMillis > 0) {
+                try {
+                    Thread.sleep(bodyDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // Antes do último byte: depois dele o cliente já pode iniciar a próxima validação
+            inFlight.decrementAndGet();
+            out.write(body, 1, body.length - 1);
+        }
+    }
+
+    private CommandValidator validator(CommandValidator.Handler handler, long windowMs, int maxBatch) {
+        return validator(null, handler, windowMs, maxBatch);
+    }
+
+    private CommandValidator validator(DeliveryLedger ledger, CommandValidator.Handler handler, long windowMs, int maxBatch) {
+        return validator(ledger, serverThread, handler, windowMs, maxBatch);
+    }
+
+    private CommandValidator validator(DeliveryLedger ledger, Executor serverExecutor, CommandValidator.Handler handler, long windowMs, int maxBatch) {
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new CommandValidator(baseUrl, "key", "token", ledger, serverExecutor, handler, windowMs, maxBatch);
+    }
+
+    private DeliveryLedger openLedger() throws IOException {
+        DeliveryLedger ledger = new DeliveryLedger(dir.getPath(), TimeUnit.HOURS.toMillis(1));
+        ledger.open();
+        return ledger;
+    }
+
+    private static CommandValidator.Handler countingDown(CountDownLatch delivered) {
+        return (commands, username, delivery) -> {
+            delivered.countDown();
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private int totalIds() {
+        int total = 0;
+        for (int size : batchSizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Mais validações com corpo lento do que threads no HttpTransport: todas terminam e
+     * cada jogador recebe o comando do seu ID
+     */
+    @Test
+    void slowBodiesAreDeliveredComplete() throws Exception {
+        bodyDelayMillis = 500;
+        int batches = 8;
+        CountDownLatch delivered = new CountDownLatch(batches);
+        Map<String, List<String>> received = new ConcurrentHashMap<>();
+        CommandValidator validator = validator((commands, username, delivery) -> {
+            received.put(username, commands);
+            delivered.countDown();
+            return CompletableFuture.completedFuture(null);
+        }, 0, 1);
+        for (int i = 0; i < batches; i++) {
+            players.put("slow" + i, "player" + i);
+            validator.submit(List.of("slow" + i));
+        }
+        assertTrue(delivered.await(15, TimeUnit.SECONDS), "validações não concluídas: " + delivered.getCount());
+        for (int i = 0; i < batches; i++) {
+            assertEquals(List.of("run slow" + i), received.get("player" + i));
+        }
+        validator.shutdown();
+    }
+
+    @Test
+    void everyIdIsValidatedOnce() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        CommandValidator validator = validator(countingDown(delivered), 0, 10);
+        validator.submit(List.of("a", "b", "c"));
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(3, totalIds());
+        assertEquals(1, requests.get());
+        validator.shutdown();
+    }
+
+    /**
+     * O submit só reserva e enfileira: a thread do WebSocket não espera o site responder
+     */
+    @Test
+    void submitDoesNotWaitForTheSite() throws Exception {
+        bodyDelayMillis = 1000;
+        CountDownLatch delivered = new CountDownLatch(1);
+        CommandValidator validator = validator(countingDown(delivered), 0, 10);
+
+        long start = System.nanoTime();
+        validator.submit(List.of("a"));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs < 200, "submit levou " + elapsedMs + "ms");
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        validator.shutdown();
+    }
+
+    @Test
+    void concurrentValidationsAreBounded() throws Exception {
+        bodyDelayMillis = 200;
+        int batches = 12;
+        CountDownLatch delivered = new CountDownLatch(batches);
+        CommandValidator validator = validator(countingDown(delivered), 0, 1);
+        for (int i = 0; i < batches; i++) {
+            players.put("id" + i, "player" + i);
+            validator.submit(List.of("id" + i));
+        }
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS), "validações não concluídas: " + delivered.getCount());
+        assertTrue(maxInFlight.get() <= 4, "requisições simultâneas: " + maxInFlight.get());
+        assertEquals(batches, requests.get());
+        validator.shutdown();
+    }
+
+    /**
+     * IDs já reservados ou entregues no ledger não voltam a ser validados
+     */
+    @Test
+    void ledgerDropsRepeatedIds() throws Exception {
+        DeliveryLedger ledger = openLedger();
+        CountDownLatch delivered = new CountDownLatch(1);
+        CommandValidator validator = validator(ledger, countingDown(delivered), 0, 10);
+
+        validator.submit(List.of("a"));
+        validator.submit(List.of("a"));
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, totalIds());
+        validator.shutdown();
+        ledger.close();
+    }
+
+    /**
+     * Validação em andamento no shutdown: o shutdown espera a resposta e entrega o lote ele
+     * mesmo, sem depender do thread do servidor (ocupado com o próprio shutdown)
+     */
+    @Test
+    void shutdownDeliversInFlightValidations() throws Exception {
+        bodyDelayMillis = 500;
+        DeliveryLedger ledger = openLedger();
+        Map<String, List<String>> received = new ConcurrentHashMap<>();
+        CommandValidator validator = validator(ledger, task -> { }, (commands, username, delivery) -> {
+            received.put(username, commands);
+            return CompletableFuture.completedFuture(null);
+        }, 0, 10);
+
+        validator.submit(List.of("a"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        validator.shutdown();
+
+        assertEquals(List.of("run a"), received.get("Steve"));
+        assertTrue(ledger.isDelivered("a"));
+        ledger.close();
+    }
+
+    /**
+     * Comandos que o Handler não conseguiu guardar não deixam o ID bloqueado no ledger
+     */
+    @Test
+    void failedHandOffRevokesTheLedgerCommit() throws Exception {
+        DeliveryLedger ledger = openLedger();
+        CountDownLatch delivered = new CountDownLatch(1);
+        CommandValidator validator = validator(ledger, (commands, username, delivery) -> {
+            delivered.countDown();
+            return CompletableFuture.failedFuture(new IOException("journal indisponível"));
+        }, 0, 10);
+
+        validator.submit(List.of("a"));
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        // A liberação roda logo depois do Handler, na mesma thread
+        serverThread.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        validator.shutdown();
+        assertFalse(ledger.isDelivered("a"));
+        ledger.close();
+
+        DeliveryLedger reopened = openLedger();
+        assertEquals(List.of("a"), reopened.claim(List.of("a")));
+        reopened.close();
+    }
+
+    /**
+     * Eventos dentro da janela viram uma única requisição
+     */
+    @Test
+    void burstWithinWindowIsOneRequest() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        CommandValidator validator = validator(countingDown(delivered), 300, 50);
+        for (int i = 0; i < 5; i++) {
+            validator.submit(List.of("a" + i, "b" + i));
+        }
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(10), batchSizes);
+        assertEquals(10.0, validator.getAverageBatchSize());
+        validator.shutdown();
+    }
+
+    @Test
+    void maxBatchSizeClosesTheBatchEarly() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(3);
+        CommandValidator validator = validator(countingDown(delivered), 300, 3);
+        for (int i = 0; i < 7; i++) {
+            validator.submit(List.of("id" + i));
+        }
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(3, 3, 1), batchSizes);
+        validator.shutdown();
+    }
+
+    /**
+     * Um lote com vários jogadores chama o Handler uma vez por jogador, na ordem dos comandos
+     */
+    @Test
+    void batchIsSplitPerPlayer() throws Exception {
+        players.put("a1", "Alice");
+        players.put("b1", "Bob");
+        players.put("a2", "Alice");
+        Map<String, List<String>> received = new ConcurrentHashMap<>();
+        CountDownLatch delivered = new CountDownLatch(2);
+        CommandValidator validator = validator((commands, username, delivery) -> {
+            received.put(username, commands);
+            delivered.countDown();
+            return CompletableFuture.completedFuture(null);
+        }, 0, 10);
+
+        validator.submit(List.of("a1", "b1", "a2"));
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("run a1", "run a2"), received.get("Alice"));
+        assertEquals(List.of("run b1"), received.get("Bob"));
+        assertEquals(1, requests.get());
+        validator.shutdown();
+    }
+}
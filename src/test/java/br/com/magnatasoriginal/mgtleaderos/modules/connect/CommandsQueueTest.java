@@ -0,0 +1,311 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Queda do servidor e arquivos corrompidos na fila de comandos persistente
+ *
+ * A "queda" é simulada derrubando o executor da fila sem o shutdown(), ou seja, sem a
+ * compactação final: no disco fica só o que já tinha sido confirmado. A regra verificada
+ * em todos os casos é a mesma: nenhuma mutação cujo future completou pode sumir
+ */
+class CommandsQueueTest {
+    // SYNC_INTERVAL_MS + SYNC_BUDGET_MS do CommandsQueue
+    private static final long ACK_BUDGET_MS = 100;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void acknowledgedAddsSurviveCrash() throws Exception {
+        CommandsQueue queue = new CommandsQueue(dir.getPath());
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        for (int player = 0; player < 10; player++) {
+            for (int i = 0; i < 5; i++) {
+                acks.add(queue.addCommands("player" + player, List.of("give player" + player + " diamond " + i)));
+            }
+        }
+        acks.add(queue.removeCommands("player9"));
+        awaitAll(acks);
+        crash(queue);
+
+        CommandsQueue recovered = new CommandsQueue(dir.getPath());
+        for (int player = 0; player < 9; player++) {
+            List<String> commands = recovered.getCommands("player" + player);
+            assertEquals(5, commands.size(), "player" + player);
+            assertEquals("give player" + player + " diamond 4", commands.get(4));
+        }
+        assertNull(recovered.getCommands("player9"));
+        crash(recovered);
+    }
+
+    @Test
+    void corruptLatestSnapshotRecoversFromPreviousGeneration() throws Exception {
+        CommandsQueue first = new CommandsQueue(dir.getPath());
+        first.addCommands("Alice", List.of("give Alice diamond")).get(5, TimeUnit.SECONDS);
+        shutdown(first);
+
+        CommandsQueue second = new CommandsQueue(dir.getPath());
+        second.addCommands("Bob", List.of("give Bob emerald")).get(5, TimeUnit.SECONDS);
+        crash(second);
+
+        File latest = latestSnapshot();
+        flipLastByte(latest);
+
+        CommandsQueue recovered = new CommandsQueue(dir.getPath());
+        assertEquals(List.of("give Alice diamond"), recovered.getCommands("Alice"));
+        assertEquals(List.of("give Bob emerald"), recovered.getCommands("Bob"));
+        assertTrue(new File(dir, latest.getName() + ".corrupt").exists(), "snapshot corrompido deve ficar isolado");
+        crash(recovered);
+    }
+
+    @Test
+    void tornJournalTailKeepsAcknowledgedRecords() throws Exception {
+        CommandsQueue queue = new CommandsQueue(dir.getPath());
+        queue.addCommands("Alice", List.of("give Alice diamond")).get(5, TimeUnit.SECONDS);
+        queue.addCommands("Alice", List.of("give Alice emerald")).get(5, TimeUnit.SECONDS);
+        crash(queue);
+
+        // Registro pela metade no fim: tamanho declarado maior do que os bytes gravados
+        File journal = latestJournal();
+        Files.write(journal.toPath(), new byte[]{0, 0, 0, 64, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+
+        CommandsQueue recovered = new CommandsQueue(dir.getPath());
+        assertEquals(List.of("give Alice diamond", "give Alice emerald"), recovered.getCommands("Alice"));
+        crash(recovered);
+    }
+
+    @Test
+    void leftoverTempSnapshotIsIgnored() throws Exception {
+        CommandsQueue queue = new CommandsQueue(dir.getPath());
+        queue.addCommands("Alice", List.of("give Alice diamond")).get(5, TimeUnit.SECONDS);
+        crash(queue);
+
+        // Queda no meio da escrita de um snapshot: só o .tmp fica para trás
+        File temp = new File(dir, latestSnapshot().getName().replaceFirst("\\.\\d+\\.", ".99.") + ".tmp");
+        Files.write(temp.toPath(), new byte[]{1, 2, 3});
+
+        CommandsQueue recovered = new CommandsQueue(dir.getPath());
+        assertEquals(List.of("give Alice diamond"), recovered.getCommands("Alice"));
+        crash(recovered);
+    }
+
+    @Test
+    void drainIsDurable() throws Exception {
+        CommandsQueue queue = new CommandsQueue(dir.getPath());
+        queue.addCommands("Alice", List.of("give Alice diamond")).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("give Alice diamond"), queue.drain("alice"));
+        // O drain não devolve future: um add depois dele só é confirmado com o remove já gravado
+        queue.addCommands("Bob", List.of("give Bob emerald")).get(5, TimeUnit.SECONDS);
+        crash(queue);
+
+        CommandsQueue recovered = new CommandsQueue(dir.getPath());
+        assertNull(recovered.getCommands("Alice"));
+        assertEquals(List.of("give Bob emerald"), recovered.getCommands("Bob"));
+        crash(recovered);
+    }
+
+    @Test
+    void acknowledgementStaysWithinBudget() throws Exception {
+        CommandsQueue queue = new CommandsQueue(dir.getPath());
+        long[] latencies = new long[50];
+        for (int i = 0; i < latencies.length; i++) {
+            long start = System.nanoTime();
+            queue.addCommands("player" + (i % 10), List.of("give diamond " + i)).get(5, TimeUnit.SECONDS);
+            latencies[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        Arrays.sort(latencies);
+        long median = latencies[latencies.length / 2];
+        assertTrue(median <= ACK_BUDGET_MS, "mediana de " + median + "ms acima do orçamento de " + ACK_BUDGET_MS + "ms");
+        crash(queue);
+    }
+
+    /**
+     * O shutdown só retorna com a compactação final gravada: uma fila aberta logo depois na
+     * mesma pasta (reconexão) vê todos os comandos, mesmo os que ainda não tinham confirmação
+     */
+    @Test
+    void shutdownWaitsForFinalCompaction() throws Exception {
+        CommandsQueue queue = new CommandsQueue(dir.getPath());
+        for (int i = 0; i < 500; i++) {
+            queue.addCommands("player" + (i % 10), List.of("give diamond " + i));
+        }
+        queue.shutdown();
+        assertTrue(queue.getExecutor().isTerminated(), "executor ainda rodando após o shutdown");
+
+        CommandsQueue reopened = new CommandsQueue(dir.getPath());
+        assertEquals(500, reopened.getPendingCommandCount());
+        crash(reopened);
+    }
+
+    /**
+     * Adições, logins (drain) e leituras de várias threads nos mesmos jogadores, com o journal
+     * compactado várias vezes no meio. Depois da queda, com o snapshot mais novo corrompido,
+     * cada comando confirmado e não retirado tem que voltar exatamente uma vez
+     */
+    @Test
+    void concurrentMutationsSurviveCompactionAndCorruptSnapshot() throws Exception {
+        int threads = 8;
+        int operations = 600;
+        int players = 16;
+        CommandsQueue queue = new CommandsQueue(dir.getPath());
+        UUID[] uuids = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            uuids[i] = UUID.nameUUIDFromBytes(("player" + i).getBytes());
+        }
+
+        List<CompletableFuture<Void>> acks = new CopyOnWriteArrayList<>();
+        Set<String> added = ConcurrentHashMap.newKeySet();
+        Set<String> drained = ConcurrentHashMap.newKeySet();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // Leitor contínuo: percorre o índice enquanto ele muda
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    queue.forEachPlayerWithPendingCommands((name, commands) -> commands.size());
+                    queue.getPendingCommandCount();
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        });
+        reader.start();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < operations; i++) {
+                        int player = (thread * 7 + i) % players;
+                        if (i % 5 == 4) {
+                            drained.addAll(queue.drain(uuids[player], "player" + player));
+                        } else {
+                            String command = "give t" + thread + " item " + i;
+                            added.add(command);
+                            acks.add(queue.addCommands("player" + player, uuids[player], List.of(command)));
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        running.set(false);
+        reader.join();
+
+        // O executor é FIFO: confirmar uma última adição garante que os drains também foram gravados
+        added.add("give final");
+        acks.add(queue.addCommands("final", List.of("give final")));
+        awaitAll(acks);
+        assertTrue(errors.isEmpty(), "erros concorrentes: " + errors);
+
+        Set<String> expected = new HashSet<>(added);
+        expected.removeAll(drained);
+        assertEquals(expected, commandsIn(queue));
+        crash(queue);
+
+        File latest = latestSnapshot();
+        // Geração 1 é a da abertura; a partir da 2 houve compactação com mutações ainda na fila
+        assertTrue(Long.parseLong(latest.getName().split("\\.")[1]) >= 2, "o teste deve compactar o journal");
+        flipLastByte(latest);
+
+        CommandsQueue recovered = new CommandsQueue(dir.getPath());
+        assertEquals(expected, commandsIn(recovered));
+        crash(recovered);
+    }
+
+    /**
+     * Todos os comandos pendentes da fila, verificando que nenhum aparece duas vezes
+     */
+    private static Set<String> commandsIn(CommandsQueue queue) {
+        List<String> all = new ArrayList<>();
+        queue.forEachPlayerWithPendingCommands((name, commands) -> all.addAll(commands));
+        Set<String> result = new HashSet<>(all);
+        assertEquals(all.size(), result.size(), "comando duplicado na fila");
+        return result;
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> acks) throws Exception {
+        CompletableFuture.allOf(acks.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Derruba o executor sem compactar, como um kill do processo depois das confirmações
+     */
+    static void crash(CommandsQueue queue) throws InterruptedException {
+        queue.getExecutor().shutdownNow();
+        assertTrue(queue.getExecutor().awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void shutdown(CommandsQueue queue) throws InterruptedException {
+        queue.shutdown();
+        assertTrue(queue.getExecutor().awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private File latestSnapshot() {
+        return latest(".snapshot");
+    }
+
+    private File latestJournal() {
+        return latest(".journal");
+    }
+
+    private File latest(String suffix) {
+        File latest = null;
+        long latestGeneration = -1;
+        File[] files = dir.listFiles((d, name) -> name.endsWith(suffix));
+        for (File file : files != null ? files : new File[0]) {
+            String[] parts = file.getName().split("\\.");
+            long generation = Long.parseLong(parts[parts.length - 2]);
+            if (generation > latestGeneration) {
+                latestGeneration = generation;
+                latest = file;
+            }
+        }
+        assertTrue(latest != null, "nenhum arquivo " + suffix);
+        return latest;
+    }
+
+    static void flipLastByte(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int value = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(value ^ 0xFF);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import br.com.magnatasoriginal.mgtleaderos.metrics.DeliveryTrace;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reconexão do SocketClient contra um servidor Pusher local
+ *
+ * O servidor falso fala o mínimo do protocolo: connection_established ao abrir e
+ * subscription_succeeded a cada pusher:subscribe. A autenticação do canal é trocada por
+ * um PusherAuth que devolve o valor de auth (null = recusada)
+ */
+class ReconnectControllerTest {
+    private static final long AWAIT_MS = 10_000;
+
+    private int port;
+    private FakePusherServer server;
+    private ScheduledExecutorService scheduler;
+    private final AtomicReference<String> auth = new AtomicReference<>("key:signature");
+    private TestSocketClient socket;
+    private ReconnectController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = FakePusherServer.start(port);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (controller != null) {
+            controller.stop();
+        }
+        if (socket != null) {
+            socket.disconnect();
+        }
+        if (server != null) {
+            server.stop(1000);
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Queda do servidor: backoff até o circuito abrir, e a tentativa de teste depois que o
+     * servidor volta fecha o circuito com uma nova subscrição
+     */
+    @Test
+    void outageOpensCircuitAndRecoveryClosesIt() throws Exception {
+        connect(20, 100, 3, 500);
+        await(() -> socket.isConnected(), "primeira subscrição");
+        assertEquals(1, controller.getSuccesses());
+
+        server.stop(1000);
+        server = null;
+        await(() -> controller.getState() == ReconnectController.State.OPEN, "circuito aberto");
+        assertTrue(controller.getFailures() >= 3, "falhas: " + controller.getFailures());
+        assertFalse(socket.isConnected());
+
+        server = FakePusherServer.start(port);
+        await(() -> controller.getState() == ReconnectController.State.CLOSED && socket.isConnected(), "circuito fechado");
+        assertEquals(2, controller.getSuccesses());
+        assertEquals(1, controller.getCircuitOpens());
+        assertEquals(0, controller.getConsecutiveFailures());
+        assertEquals(1, server.subscriptions.get(), "uma subscrição no servidor novo");
+    }
+
+    /**
+     * Auth recusada: a conexão é fechada e conta como falha, em vez de ficar aberta sem canal
+     */
+    @Test
+    void refusedAuthClosesTheConnectionAndRetries() throws Exception {
+        auth.set(null);
+        connect(20, 100, 100, 500);
+        await(() -> controller.getFailures() >= 2, "tentativas com auth recusada");
+        assertEquals(0, controller.getSuccesses());
+        assertEquals(0, server.subscriptions.get());
+
+        auth.set("key:signature");
+        await(() -> socket.isConnected(), "subscrição com auth aceita");
+        assertEquals(1, controller.getSuccesses());
+        assertEquals(ReconnectController.State.CLOSED, controller.getState());
+    }
+
+    private void connect(long baseDelayMs, long maxDelayMs, int failureThreshold, long openMs) {
+        PusherAuth pusherAuth = new PusherAuth("key") {
+            @Override
+            public String authorize(String channelName, String socketId) {
+                return auth.get();
+            }
+        };
+        URI uri = URI.create("ws://127.0.0.1:" + port + "/app/leaderos-connect?protocol=7");
+        socket = new TestSocketClient(uri, pusherAuth);
+        controller = new ReconnectController(scheduler, socket::connect, baseDelayMs, maxDelayMs, failureThreshold, openMs);
+        socket.controller = controller;
+        controller.start();
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "tempo esgotado esperando: " + description);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Cliente ligado direto ao controlador, no lugar do ConnectModule
+     */
+    private static final class TestSocketClient extends SocketClient {
+        private volatile ReconnectController controller;
+
+        private TestSocketClient(URI uri, PusherAuth pusherAuth) {
+            super("key", "token", null, uri, pusherAuth);
+        }
+
+        @Override
+        public void executeCommands(List<String> commands, String username, DeliveryTrace.PlayerDelivery delivery) {
+        }
+
+        @Override
+        public void subscribed() {
+            controller.onConnected();
+        }
+
+        @Override
+        protected void closed(int code, String reason) {
+            controller.onDisconnected();
+        }
+    }
+
+    /**
+     * Servidor Pusher mínimo
+     */
+    private static final class FakePusherServer extends WebSocketServer {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final AtomicInteger subscriptions = new AtomicInteger();
+
+        private FakePusherServer(int port) {
+            super(new InetSocketAddress("127.0.0.1", port));
+            setReuseAddr(true);
+        }
+
+        static FakePusherServer start(int port) throws InterruptedException, IOException {
+            FakePusherServer server = new FakePusherServer(port);
+            server.start();
+            if (!server.started.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("servidor Pusher falso não iniciou na porta " + port);
+            }
+            return server;
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            JSONObject data = new JSONObject().put("socket_id", "123.456").put("activity_timeout", 120);
+            conn.send(new JSONObject().put("event", "pusher:connection_established").put("data", data.toString()).toString());
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            JSONObject frame = new JSONObject(message);
+            if (frame.optString("event").equals("pusher:subscribe")) {
+                subscriptions.incrementAndGet();
+                String channel = frame.getJSONObject("data").getString("channel");
+                conn.send(new JSONObject().put("event", "pusher_internal:subscription_succeeded")
+                    .put("channel", channel).put("data", "{}").toString());
+            }
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Orçamento por tick do executor de comandos, com um dispatcher que só registra os comandos
+ * no lugar do MinecraftServer. Os ticks são chamados direto pelo teste
+ */
+class TickCommandExecutorTest {
+    private final List<String> dispatched = new CopyOnWriteArrayList<>();
+    private final List<Runnable> serverTasks = new CopyOnWriteArrayList<>();
+
+    private TickCommandExecutor executor(long budgetMs, long commandMillis) {
+        Consumer<String> dispatcher = command -> {
+            sleep(commandMillis);
+            if (command.startsWith("fail")) {
+                throw new IllegalStateException("comando inválido");
+            }
+            dispatched.add(command);
+        };
+        return new TickCommandExecutor(serverTasks::add, dispatcher, budgetMs);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> commands(String prefix, int count) {
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            commands.add(prefix + " " + i);
+        }
+        return commands;
+    }
+
+    /**
+     * Uma entrega grande é distribuída entre vários ticks, na ordem em que chegou
+     */
+    @Test
+    void largeDeliveryIsSpreadAcrossTicks() {
+        TickCommandExecutor executor = executor(10, 2);
+        List<String> alice = commands("give Alice", 30);
+        List<String> bob = commands("give Bob", 10);
+        executor.submit("Alice", alice);
+        executor.submit("Bob", bob);
+        assertEquals(40, executor.getBacklogSize());
+
+        int ticks = 0;
+        while (executor.getBacklogSize() > 0) {
+            executor.tick();
+            ticks++;
+            assertTrue(executor.getLastTickCommands() < 40, "tick executou a fila inteira");
+        }
+
+        assertTrue(ticks > 1, "ticks: " + ticks);
+        List<String> expected = new ArrayList<>(alice);
+        expected.addAll(bob);
+        assertEquals(expected, dispatched);
+        assertEquals(40, executor.getExecutedTotal());
+    }
+
+    /**
+     * Com o orçamento menor que um comando, cada tick ainda executa um para a fila andar
+     */
+    @Test
+    void everyTickRunsAtLeastOneCommand() {
+        TickCommandExecutor executor = executor(1, 3);
+        executor.submit("Alice", commands("give Alice", 3));
+
+        for (int tick = 1; tick <= 3; tick++) {
+            executor.tick();
+            assertEquals(1, executor.getLastTickCommands());
+            assertEquals(3 - tick, executor.getBacklogSize());
+        }
+    }
+
+    @Test
+    void failedCommandDoesNotStopTheQueue() {
+        TickCommandExecutor executor = executor(50, 0);
+        executor.submit("Alice", List.of("give Alice 1", "fail", "give Alice 2"));
+        executor.tick();
+
+        assertEquals(List.of("give Alice 1", "give Alice 2"), dispatched);
+        assertEquals(0, executor.getBacklogSize());
+        assertEquals(3, executor.getExecutedTotal());
+    }
+
+    /**
+     * O flush executa tudo sem orçamento; depois dele o submit vai direto para o thread do servidor
+     */
+    @Test
+    void flushRunsBacklogAndLaterSubmitsGoToServerThread() {
+        TickCommandExecutor executor = executor(1, 3);
+        executor.submit("Alice", commands("give Alice", 5));
+        executor.flush();
+        assertEquals(commands("give Alice", 5), dispatched);
+        assertEquals(0, executor.getBacklogSize());
+
+        executor.submit("Bob", List.of("give Bob 0"));
+        assertEquals(0, executor.getBacklogSize());
+        assertEquals(1, serverTasks.size());
+        serverTasks.get(0).run();
+        assertEquals("give Bob 0", dispatched.get(dispatched.size() - 1));
+    }
+
+    /**
+     * Submits de outras threads durante o flush: cada comando roda uma vez, pelo flush ou
+     * direto no thread do servidor, e nenhum fica esquecido no backlog
+     */
+    @Test
+    void submitsRacingFlushAreNeverLeftBehind() throws Exception {
+        TickCommandExecutor executor = executor(1, 0);
+        int threads = 4;
+        int submits = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String player = "player" + t;
+            Thread submitter = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < submits; i++) {
+                    executor.submit(player, List.of("give " + player + " " + i));
+                }
+            });
+            submitters.add(submitter);
+            submitter.start();
+        }
+        start.countDown();
+        executor.flush();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        serverTasks.forEach(Runnable::run);
+
+        assertEquals(0, executor.getBacklogSize());
+        assertEquals(threads * submits, dispatched.size());
+        assertEquals(threads * submits, new HashSet<>(dispatched).size());
+    }
+
+    @Test
+    void budgetChangeAppliesToNextTick() {
+        TickCommandExecutor executor = executor(1, 2);
+        executor.submit("Alice", commands("give Alice", 20));
+        executor.tick();
+        assertEquals(1, executor.getLastTickCommands());
+
+        executor.setBudgetMillis(1000);
+        assertEquals(1000, executor.getBudgetMillis());
+        executor.tick();
+        assertEquals(19, executor.getLastTickCommands());
+    }
+}
@@ -0,0 +1,125 @@
+package br.com.magnatasoriginal.mgtleaderos.modules.connect.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Deduplicação por command-log ID: reserva, confirmação, retenção e reabertura do ledger
+ */
+class DeliveryLedgerTest {
+    private static final long RETENTION_MS = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    File dir;
+
+    @Test
+    void committedKeysAreNeverClaimedAgain() throws Exception {
+        DeliveryLedger ledger = open(RETENTION_MS);
+        assertEquals(List.of("a", "b"), ledger.claim(List.of("a", "b", "a")));
+        ledger.commit(List.of("a", "b"));
+
+        assertEquals(List.of("c"), ledger.claim(List.of("a", "b", "c")));
+        assertTrue(ledger.isDelivered("a"));
+        assertFalse(ledger.isDelivered("c"));
+        assertEquals(2, ledger.getDuplicatesBlocked());
+        ledger.close();
+    }
+
+    @Test
+    void inFlightKeysBlockUntilReleased() throws Exception {
+        DeliveryLedger ledger = open(RETENTION_MS);
+        assertEquals(List.of("a"), ledger.claim(List.of("a")));
+        assertEquals(List.of(), ledger.claim(List.of("a")));
+
+        ledger.release(List.of("a"));
+        assertEquals(List.of("a"), ledger.claim(List.of("a")));
+        assertEquals(1, ledger.getInFlightCount());
+        ledger.close();
+    }
+
+    @Test
+    void deliveriesSurviveReopen() throws Exception {
+        DeliveryLedger ledger = open(RETENTION_MS);
+        ledger.claim(List.of("a", "b"));
+        ledger.commit(List.of("a", "b"));
+        ledger.close();
+
+        // Registro pela metade no fim do arquivo, como numa queda durante o commit
+        File file = new File(dir, "delivery_ledger.log");
+        Files.write(file.toPath(), new byte[]{0, 0, 0, 32, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        DeliveryLedger reopened = open(RETENTION_MS);
+        assertEquals(2, reopened.getRecordCount());
+        assertEquals(List.of("c"), reopened.claim(List.of("a", "b", "c")));
+        reopened.close();
+    }
+
+    @Test
+    void expiredDeliveriesCanRunAgain() throws Exception {
+        DeliveryLedger ledger = open(RETENTION_MS);
+        ledger.claim(List.of("a"));
+        ledger.commit(List.of("a"));
+
+        ledger.setRetentionMillis(1);
+        Thread.sleep(5);
+        assertFalse(ledger.isDelivered("a"));
+        assertEquals(List.of("a"), ledger.claim(List.of("a")));
+        ledger.close();
+    }
+
+    /**
+     * As consultas usam só o índice em memória: sem o arquivo, a chave continua bloqueada
+     */
+    @Test
+    void lookupsDoNotReadTheFile() throws Exception {
+        DeliveryLedger ledger = open(RETENTION_MS);
+        ledger.claim(List.of("a"));
+        ledger.commit(List.of("a"));
+
+        assertTrue(new File(dir, "delivery_ledger.log").delete());
+        assertEquals(List.of(), ledger.claim(List.of("a")));
+        assertEquals(1, ledger.getIndexSize());
+        ledger.close();
+    }
+
+    /**
+     * Uma chave cujo registro falhou no commit continua bloqueada e entra no arquivo na
+     * compactação seguinte, em vez de ser esquecida
+     */
+    @Test
+    void unpersistedKeysAreWrittenByCompaction() throws Exception {
+        DeliveryLedger ledger = open(RETENTION_MS);
+        ledger.claim(List.of("a"));
+        // Canal fechado: o commit falha ao gravar
+        ledger.close();
+        ledger.commit(List.of("a"));
+        assertEquals(1, ledger.getUnpersistedCount());
+        assertTrue(ledger.isDelivered("a"));
+
+        // open() compacta
+        ledger.open();
+        assertEquals(0, ledger.getUnpersistedCount());
+        assertTrue(ledger.isDelivered("a"));
+        ledger.close();
+
+        DeliveryLedger reopened = open(RETENTION_MS);
+        assertEquals(List.of(), reopened.claim(List.of("a")));
+        reopened.close();
+    }
+
+    private DeliveryLedger open(long retentionMillis) throws Exception {
+        DeliveryLedger ledger = new DeliveryLedger(dir.getPath(), retentionMillis);
+        ledger.open();
+        return ledger;
+    }
+}